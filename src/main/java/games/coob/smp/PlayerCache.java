@@ -1,8 +1,16 @@
 package games.coob.smp;
 
 import games.coob.smp.config.ConfigFile;
+import games.coob.smp.config.SaveQueue;
+import games.coob.smp.settings.Settings;
+import games.coob.smp.storage.PlayerJournal;
+import games.coob.smp.storage.PlayerSchema;
+import games.coob.smp.storage.Storage;
+import games.coob.smp.storage.YamlStorageBackend;
 import games.coob.smp.tracking.MarkerColor;
 import games.coob.smp.tracking.TrackedTarget;
+import games.coob.smp.tracking.TrackingRegistry;
+import games.coob.smp.util.SchedulerUtil;
 import lombok.Getter;
 import lombok.Setter;
 import org.bukkit.Bukkit;
@@ -11,16 +19,37 @@ import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
 
 @Getter
 public final class PlayerCache extends ConfigFile {
 
-	private static final Map<UUID, PlayerCache> cacheMap = new HashMap<>();
+	/** How often offline players are checked for eviction, in ticks */
+	private static final long EVICTION_PERIOD_TICKS = 20 * 60;
+
+	/**
+	 * Loaded players. Loads run outside the map so a slow read never blocks
+	 * lookups of other players; the future lets a join wait for its prefetch.
+	 */
+	private static final Map<UUID, CompletableFuture<PlayerCache>> cacheMap = new ConcurrentHashMap<>();
+
+	private static final AtomicLong cacheHits = new AtomicLong();
+	private static final AtomicLong cacheMisses = new AtomicLong();
+	private static final AtomicLong cacheEvictions = new AtomicLong();
+	private static final AtomicLong prefetches = new AtomicLong();
 
 	private final UUID uniqueId;
 
@@ -44,21 +73,20 @@ public final class PlayerCache extends ConfigFile {
 	public static final int MAX_PLAYERS_TO_TRACK = 10;
 
 	/**
-	 * Multi-tracking: list of tracked targets (players and/or death location).
+	 * Multi-tracking: list of tracked targets (players, teams and/or death location).
 	 * Players have customizable colors; death location is always dark red.
 	 */
 	@Getter
 	private final List<TrackedTarget> trackedTargets = new ArrayList<>();
 
-	/** Legacy field for backward compatibility - use trackedTargets instead */
-	@Deprecated
-	@Getter
-	private String trackingLocation;
+	/**
+	 * Members of the tracked teams this player is in the reverse index of
+	 * {@link TrackingRegistry} for, follows team changes on every locator refresh
+	 */
+	private final Set<UUID> indexedTeamMembers = new HashSet<>();
 
-	/** Legacy field for backward compatibility - use trackedTargets instead */
-	@Deprecated
-	@Getter
-	private UUID targetByUUID;
+	/** Last time this was looked up, the idle time before eviction counts from here */
+	private volatile long lastAccess;
 
 	@Getter
 	@Setter
@@ -78,11 +106,9 @@ public final class PlayerCache extends ConfigFile {
 
 	// Combat punishment state
 	@Getter
-	@Setter
 	private long pvpLockoutExpiry;
 
 	@Getter
-	@Setter
 	private long debuffExpiry;
 
 	// Duel state (transient - not persisted)
@@ -98,17 +124,6 @@ public final class PlayerCache extends ConfigFile {
 	@Setter
 	private java.util.UUID activeDuelId;
 
-	/**
-	 * Transient: cached portal location for cross-dimension tracking.
-	 * Not persisted to disk - recalculated on dimension change.
-	 * 
-	 * @deprecated Use TrackedTarget.getCachedPortalTarget() instead
-	 */
-	@Deprecated
-	@Getter
-	@Setter
-	private Location cachedPortalTarget;
-
 	//
 	// Store any custom saveable data here
 	//
@@ -117,118 +132,89 @@ public final class PlayerCache extends ConfigFile {
 	 * Creates a new player cache (see the bottom)
 	 */
 	private PlayerCache(final String name, final UUID uniqueId) {
-		super("data.yml");
+		super(YamlStorageBackend.getPlayerFileName(uniqueId), false);
 
 		this.playerName = name;
 		this.uniqueId = uniqueId;
 
-		// Load player-specific data after uniqueId is set
-		loadPlayerData();
+		// Load once uniqueId is set, it decides what readContents() returns
+		load();
 	}
 
 	/**
-	 * Load player-specific data from the config file
+	 * Player data is kept by the configured storage backend rather than in a file of our own
 	 */
-	private void loadPlayerData() {
-		if (uniqueId == null)
-			return;
-
-		String path = "Players." + uniqueId.toString() + ".";
-		this.deathLocation = getConfig().getLocation(path + "Death_Location");
-		this.portalLocation = getConfig().getLocation(path + "Portal_Location");
-		this.overworldNetherPortalLocation = getConfig().getLocation(path + "Overworld_Nether_Portal");
-		this.overworldEndPortalLocation = getConfig().getLocation(path + "Overworld_End_Portal");
-
-		// Load tracked targets (new multi-tracking system)
-		trackedTargets.clear();
-		if (getConfig().contains(path + "Tracked_Targets")) {
-			List<?> targetList = getConfig().getList(path + "Tracked_Targets");
-			if (targetList != null) {
-				for (Object obj : targetList) {
-					if (obj instanceof Map) {
-						@SuppressWarnings("unchecked")
-						Map<String, Object> map = (Map<String, Object>) obj;
-						String type = (String) map.get("Type");
-						if ("Death".equals(type)) {
-							trackedTargets.add(TrackedTarget.death());
-						} else if ("Player".equals(type)) {
-							String uuidStr = (String) map.get("UUID");
-							String colorStr = (String) map.get("Color");
-							if (uuidStr != null) {
-								try {
-									UUID targetUUID = UUID.fromString(uuidStr);
-									MarkerColor color = MarkerColor.WHITE;
-									if (colorStr != null) {
-										try {
-											color = MarkerColor.valueOf(colorStr);
-										} catch (IllegalArgumentException ignored) {
-										}
-									}
-									trackedTargets.add(TrackedTarget.player(targetUUID, color));
-								} catch (IllegalArgumentException ignored) {
-								}
-							}
-						}
-					}
-				}
-			}
-		}
-
-		// Legacy loading (backward compatibility)
-		this.trackingLocation = getConfig().getString(path + "Tracking_Location");
-		String uuidStr = getConfig().getString(path + "Track_Player");
-		if (uuidStr != null) {
-			try {
-				this.targetByUUID = UUID.fromString(uuidStr);
-			} catch (IllegalArgumentException e) {
-				this.targetByUUID = null;
-			}
-		}
+	@Override
+	protected String readContents() throws IOException {
+		return Storage.getBackend().loadPlayer(uniqueId);
+	}
 
-		// Load combat punishment state
-		this.pvpLockoutExpiry = getConfig().getLong(path + "PvP_Lockout_Expiry", 0);
-		this.debuffExpiry = getConfig().getLong(path + "Debuff_Expiry", 0);
+	@Override
+	protected void writeContents(final String contents) throws IOException {
+		Storage.getBackend().savePlayer(uniqueId, contents);
 	}
 
 	/**
 	 * Automatically called when loading data from disk.
-	 * Note: This is called before uniqueId is set, so we load player data
-	 * separately.
 	 */
 	@Override
 	protected void onLoad() {
-		// Don't load player-specific data here since uniqueId isn't set yet
-		// Player data is loaded in loadPlayerData() after uniqueId is set
+		this.deathLocation = getConfig().getLocation("Death_Location");
+		this.portalLocation = getConfig().getLocation("Portal_Location");
+		this.overworldNetherPortalLocation = getConfig().getLocation("Overworld_Nether_Portal");
+		this.overworldEndPortalLocation = getConfig().getLocation("Overworld_End_Portal");
+
+		// Documents not upgraded by the startup migration yet are upgraded here and stored again, see PlayerSchema
+		if (PlayerSchema.upgrade(getConfig()))
+			save();
+
+		trackedTargets.clear();
+		for (Map<?, ?> map : getConfig().getMapList("Tracked_Targets")) {
+			TrackedTarget target = TrackedTarget.deserialize(map);
+			if (target != null) {
+				trackedTargets.add(target);
+			}
+		}
+
+		// Load combat punishment state
+		this.pvpLockoutExpiry = getConfig().getLong("PvP_Lockout_Expiry", 0);
+		this.debuffExpiry = getConfig().getLong("Debuff_Expiry", 0);
 	}
 
 	@Override
 	protected void onSave() {
-		String path = "Players." + uniqueId.toString() + ".";
-		getConfig().set(path + "Death_Location", deathLocation);
-		getConfig().set(path + "Portal_Location", portalLocation);
-		getConfig().set(path + "Overworld_Nether_Portal", overworldNetherPortalLocation);
-		getConfig().set(path + "Overworld_End_Portal", overworldEndPortalLocation);
+		getConfig().set(PlayerSchema.VERSION_KEY, PlayerSchema.CURRENT_VERSION);
+		getConfig().set("Death_Location", deathLocation);
+		getConfig().set("Portal_Location", portalLocation);
+		getConfig().set("Overworld_Nether_Portal", overworldNetherPortalLocation);
+		getConfig().set("Overworld_End_Portal", overworldEndPortalLocation);
 
 		// Save tracked targets (new multi-tracking system)
+		getConfig().set("Tracked_Targets", serializeTrackedTargets());
+
+		// Save combat punishment state
+		getConfig().set("PvP_Lockout_Expiry", pvpLockoutExpiry);
+		getConfig().set("Debuff_Expiry", debuffExpiry);
+	}
+
+	private List<Map<String, Object>> serializeTrackedTargets() {
 		List<Map<String, Object>> targetList = new ArrayList<>();
 		for (TrackedTarget target : trackedTargets) {
-			Map<String, Object> map = new HashMap<>();
-			map.put("Type", target.getType());
-			if (target.isPlayer()) {
-				map.put("UUID", target.getTargetUUID().toString());
-				map.put("Color", target.getColor().name());
-			}
-			targetList.add(map);
+			targetList.add(target.serialize());
 		}
-		getConfig().set(path + "Tracked_Targets", targetList);
+		return targetList;
+	}
 
-		// Legacy fields (for backward compatibility, will be removed later)
-		getConfig().set(path + "Tracking_Location", trackingLocation);
-		getConfig().set(path + "Track_Player", targetByUUID != null ? targetByUUID.toString() : null);
+	/**
+	 * Append a single change to the player journal instead of rewriting the
+	 * whole document, see {@link PlayerJournal}. The path must match onSave().
+	 */
+	private void journal(final String path, final Object value) {
+		PlayerJournal.getInstance().append(this, uniqueId, path, value);
+	}
 
-		// Save combat punishment state
-		getConfig().set(path + "PvP_Lockout_Expiry", pvpLockoutExpiry);
-		getConfig().set(path + "Debuff_Expiry", debuffExpiry);
+	private void journalTrackedTargets() {
+		journal("Tracked_Targets", serializeTrackedTargets());
 	}
 
 	/**
@@ -245,9 +231,7 @@ public final class PlayerCache extends ConfigFile {
 	 * Remove this cached data from memory if it exists
 	 */
 	public void removeFromMemory() {
-		synchronized (cacheMap) {
-			cacheMap.remove(this.uniqueId);
-		}
+		cacheMap.remove(this.uniqueId);
 	}
 
 	@Override
@@ -258,34 +242,32 @@ public final class PlayerCache extends ConfigFile {
 	public void setDeathLocation(final Location deathLocation) {
 		this.deathLocation = deathLocation;
 
-		save();
+		journal("Death_Location", deathLocation);
 	}
 
 	public void setPortalLocation(final Location portalLocation) {
 		this.portalLocation = portalLocation;
-		save();
+		journal("Portal_Location", portalLocation);
 	}
 
 	public void setOverworldNetherPortalLocation(final Location overworldNetherPortalLocation) {
 		this.overworldNetherPortalLocation = overworldNetherPortalLocation;
-		save();
+		journal("Overworld_Nether_Portal", overworldNetherPortalLocation);
 	}
 
 	public void setOverworldEndPortalLocation(final Location overworldEndPortalLocation) {
 		this.overworldEndPortalLocation = overworldEndPortalLocation;
-		save();
+		journal("Overworld_End_Portal", overworldEndPortalLocation);
 	}
 
-	@Deprecated
-	public void setTrackingLocation(final String trackingLocation) {
-		this.trackingLocation = trackingLocation;
-		save();
+	public void setPvpLockoutExpiry(final long pvpLockoutExpiry) {
+		this.pvpLockoutExpiry = pvpLockoutExpiry;
+		journal("PvP_Lockout_Expiry", pvpLockoutExpiry);
 	}
 
-	@Deprecated
-	public void setTargetByUUID(final UUID targetByUUID) {
-		this.targetByUUID = targetByUUID;
-		save();
+	public void setDebuffExpiry(final long debuffExpiry) {
+		this.debuffExpiry = debuffExpiry;
+		journal("Debuff_Expiry", debuffExpiry);
 	}
 
 	// -------------------------------------------------------------------------
@@ -316,7 +298,8 @@ public final class PlayerCache extends ConfigFile {
 		// Remove existing if already tracking
 		trackedTargets.removeIf(t -> t.isPlayer() && playerUUID.equals(t.getTargetUUID()));
 		trackedTargets.add(TrackedTarget.player(playerUUID, color));
-		save();
+		TrackingRegistry.addTracker(playerUUID, uniqueId);
+		journalTrackedTargets();
 	}
 
 	/**
@@ -333,7 +316,7 @@ public final class PlayerCache extends ConfigFile {
 	public void startTrackingDeath() {
 		if (!isTrackingDeath()) {
 			trackedTargets.add(TrackedTarget.death());
-			save();
+			journalTrackedTargets();
 		}
 	}
 
@@ -342,7 +325,68 @@ public final class PlayerCache extends ConfigFile {
 	 */
 	public void stopTrackingDeath() {
 		trackedTargets.removeIf(TrackedTarget::isDeath);
-		save();
+		journalTrackedTargets();
+	}
+
+	/**
+	 * Start tracking every member of a scoreboard team as one target.
+	 */
+	public void startTrackingTeam(String teamName) {
+		if (getTrackedTeam(teamName) == null) {
+			trackedTargets.add(TrackedTarget.team(teamName));
+			journalTrackedTargets();
+		}
+	}
+
+	/**
+	 * Stop tracking the teams matching the predicate.
+	 */
+	public void removeTrackedTeamsIf(Predicate<String> filter) {
+		if (trackedTargets.removeIf(t -> t.isTeam() && filter.test(t.getTeamName()))) {
+			// Members of the teams still tracked are indexed again on the next refresh
+			unindexTeamMembers();
+			journalTrackedTargets();
+		}
+	}
+
+	/**
+	 * Index this player as a tracker of the given members of their tracked
+	 * teams, so the members see them in "Who's tracking me", and drop the
+	 * members no longer in those teams.
+	 */
+	public void indexTeamMembers(Set<UUID> members) {
+		for (Iterator<UUID> iterator = indexedTeamMembers.iterator(); iterator.hasNext();) {
+			UUID member = iterator.next();
+
+			if (!members.contains(member)) {
+				iterator.remove();
+
+				if (getTrackedTarget(member) == null) {
+					TrackingRegistry.removeTracker(member, uniqueId);
+				}
+			}
+		}
+
+		for (UUID member : members) {
+			if (indexedTeamMembers.add(member)) {
+				TrackingRegistry.addTracker(member, uniqueId);
+			}
+		}
+	}
+
+	private void unindexTeamMembers() {
+		indexTeamMembers(Collections.emptySet());
+	}
+
+	/**
+	 * Get the tracked target of a team if it is tracked.
+	 */
+	@Nullable
+	public TrackedTarget getTrackedTeam(String teamName) {
+		return trackedTargets.stream()
+				.filter(t -> t.isTeam() && teamName.equals(t.getTeamName()))
+				.findFirst()
+				.orElse(null);
 	}
 
 	/**
@@ -357,15 +401,45 @@ public final class PlayerCache extends ConfigFile {
 	 */
 	public void removeTrackedPlayer(UUID playerUUID) {
 		trackedTargets.removeIf(t -> t.isPlayer() && playerUUID.equals(t.getTargetUUID()));
-		save();
+		if (!indexedTeamMembers.contains(playerUUID)) {
+			TrackingRegistry.removeTracker(playerUUID, uniqueId);
+		}
+		journalTrackedTargets();
 	}
 
 	/**
 	 * Stop all tracking.
 	 */
 	public void clearAllTracking() {
+		unindexTrackedPlayers();
 		trackedTargets.clear();
-		save();
+		journalTrackedTargets();
+	}
+
+	/**
+	 * Add this player's tracked players to the reverse index in
+	 * {@link TrackingRegistry} (call on join). Only online trackers are indexed.
+	 */
+	public void indexTrackedPlayers() {
+		for (TrackedTarget target : trackedTargets) {
+			if (target.isPlayer()) {
+				TrackingRegistry.addTracker(target.getTargetUUID(), uniqueId);
+			}
+		}
+	}
+
+	/**
+	 * Remove this player's tracked players and team members from the reverse
+	 * index (call on quit).
+	 */
+	public void unindexTrackedPlayers() {
+		unindexTeamMembers();
+
+		for (TrackedTarget target : trackedTargets) {
+			if (target.isPlayer()) {
+				TrackingRegistry.removeTracker(target.getTargetUUID(), uniqueId);
+			}
+		}
 	}
 
 	/**
@@ -414,7 +488,7 @@ public final class PlayerCache extends ConfigFile {
 		TrackedTarget target = getTrackedTarget(playerUUID);
 		if (target != null) {
 			target.setColor(color);
-			save();
+			journalTrackedTargets();
 		}
 	}
 
@@ -429,25 +503,99 @@ public final class PlayerCache extends ConfigFile {
 	 */
 
 	/**
-	 * Return or create new player cache for the given player
+	 * Return or create new player cache for the given player. Usually the data was
+	 * already loaded by {@link #prefetch(UUID, String)} while the player was logging in.
 	 *
 	 * @param player
 	 * @return
 	 */
 	public static PlayerCache from(final Player player) {
-		synchronized (cacheMap) {
-			final UUID uniqueId = player.getUniqueId();
-			final String playerName = player.getName();
+		final UUID uniqueId = player.getUniqueId();
+		final CompletableFuture<PlayerCache> loaded = cacheMap.get(uniqueId);
+		final PlayerCache cache;
+
+		if (loaded != null && loaded.isDone() && !loaded.isCompletedExceptionally()) {
+			cacheHits.incrementAndGet();
+			cache = loaded.join();
+		} else {
+			cacheMisses.incrementAndGet();
+			cache = load(uniqueId, player.getName());
+		}
 
-			PlayerCache cache = cacheMap.get(uniqueId);
+		cache.lastAccess = System.currentTimeMillis();
+		return cache;
+	}
 
-			if (cache == null) {
-				cache = new PlayerCache(playerName, uniqueId);
+	/**
+	 * Load the data of a player who is logging in, so it is ready once they join.
+	 * Called from {@link org.bukkit.event.player.AsyncPlayerPreLoginEvent}, off the main thread.
+	 */
+	public static void prefetch(final UUID uniqueId, final String playerName) {
+		try {
+			load(uniqueId, playerName).lastAccess = System.currentTimeMillis();
+			prefetches.incrementAndGet();
+		} catch (final RuntimeException e) {
+			// from() tries again on join
+			SMPPlugin.getInstance().getLogger().log(Level.WARNING, "Could not prefetch data of " + playerName, e);
+		}
+	}
 
-				cacheMap.put(uniqueId, cache);
-			}
+	/**
+	 * Return the cached data or load it on the calling thread. When another
+	 * thread is loading the same player already, wait for it instead.
+	 */
+	private static PlayerCache load(final UUID uniqueId, final String playerName) {
+		final CompletableFuture<PlayerCache> loading = new CompletableFuture<>();
+		final CompletableFuture<PlayerCache> existing = cacheMap.putIfAbsent(uniqueId, loading);
+
+		if (existing != null)
+			return existing.join();
+
+		try {
+			// Upgraded in onLoad() instead of waiting for the whole startup migration
+			PlayerSchema.claimPlayer(uniqueId);
+
+			loading.complete(new PlayerCache(playerName, uniqueId));
 
-			return cache;
+		} catch (final RuntimeException e) {
+			cacheMap.remove(uniqueId, loading);
+			loading.completeExceptionally(e);
+
+			throw e;
+		}
+
+		return loading.join();
+	}
+
+	/**
+	 * Start removing players from memory once they have been offline for the
+	 * configured idle time (call on plugin enable)
+	 */
+	public static void startEviction() {
+		SchedulerUtil.runTimer(EVICTION_PERIOD_TICKS, EVICTION_PERIOD_TICKS, PlayerCache::evictIdle);
+	}
+
+	/**
+	 * Remove offline players who were idle long enough. Their pending changes are
+	 * saved first and the entry is only dropped once nothing of it is left to
+	 * write, so loading the player again always reads their latest data.
+	 */
+	private static void evictIdle() {
+		final long idleMillis = Settings.StorageSection.CACHE_IDLE_MINUTES * 60_000L;
+		final long now = System.currentTimeMillis();
+
+		for (final Map.Entry<UUID, CompletableFuture<PlayerCache>> entry : cacheMap.entrySet()) {
+			final PlayerCache cache = entry.getValue().getNow(null);
+
+			if (cache == null || now - cache.lastAccess < idleMillis || Bukkit.getPlayer(entry.getKey()) != null)
+				continue;
+
+			// Try again on the next run, once the snapshot is written
+			if (PlayerJournal.getInstance().saveSnapshot(entry.getKey()) || SaveQueue.getInstance().isPending(cache))
+				continue;
+
+			if (cacheMap.remove(entry.getKey(), entry.getValue()))
+				cacheEvictions.incrementAndGet();
 		}
 	}
 
@@ -455,8 +603,32 @@ public final class PlayerCache extends ConfigFile {
 	 * Clear the entire cache map
 	 */
 	public static void clearCache() {
-		synchronized (cacheMap) {
-			cacheMap.clear();
-		}
+		cacheMap.clear();
+	}
+
+	public static int getCachedPlayers() {
+		return cacheMap.size();
+	}
+
+	/**
+	 * Lookups that found the player loaded already
+	 */
+	public static long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	/**
+	 * Lookups that had to load the player, or wait for a prefetch to finish
+	 */
+	public static long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	public static long getCacheEvictions() {
+		return cacheEvictions.get();
+	}
+
+	public static long getPrefetches() {
+		return prefetches.get();
 	}
 }
@@ -5,6 +5,7 @@ import games.coob.smp.command.SMPCommand;
 import games.coob.smp.command.SpawnCommand;
 import games.coob.smp.command.TrackCommand;
 import games.coob.smp.command.TpCommand;
+import games.coob.smp.config.SaveQueue;
 import games.coob.smp.hologram.HologramRegistry;
 import games.coob.smp.listener.DeathChestListener;
 import games.coob.smp.listener.LocatorListener;
@@ -12,13 +13,19 @@ import games.coob.smp.listener.SMPListener;
 import games.coob.smp.model.DeathChestRegistry;
 import games.coob.smp.model.Effects;
 import games.coob.smp.settings.Settings;
+import games.coob.smp.storage.PlayerJournal;
+import games.coob.smp.storage.PlayerSchema;
+import games.coob.smp.storage.Storage;
+import games.coob.smp.storage.YamlStorageBackend;
 import games.coob.smp.task.HologramTask;
 import games.coob.smp.task.LocatorTask;
 import games.coob.smp.tracking.PortalCache;
+import games.coob.smp.tracking.PortalStore;
 import games.coob.smp.tracking.TrackingRegistry;
 import games.coob.smp.tracking.WaypointColorManager;
 import games.coob.smp.tracking.WaypointPacketSender;
 import games.coob.smp.util.PluginUtil;
+import games.coob.smp.util.PlayerPositions;
 import games.coob.smp.util.SchedulerUtil;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -33,12 +40,39 @@ public final class SMPPlugin extends JavaPlugin {
         // Load settings
         Settings.loadSettings();
 
+        // Start writing data files in the background
+        SaveQueue.getInstance().start();
+
         // Initialize waypoint packet sender (uses reflection, logs debug info)
         WaypointPacketSender.initialize();
 
         // Reset any leftover name tag colors from previous runs
         WaypointColorManager.resetAllNameTagColors();
 
+        // Split legacy player data out of data.yml before anything reads it, the database
+        // gets it through /smp migrate-storage which runs on the YAML backend
+        if (Settings.StorageSection.BACKEND == Settings.StorageSection.StorageType.YAML) {
+            YamlStorageBackend.migrateSharedData();
+        }
+
+        // Open the configured storage backend, nothing can be loaded without it
+        if (!Storage.open()) {
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+
+        // Apply player changes journaled before a crash, then journal new ones
+        PlayerJournal.getInstance().start();
+
+        // Upgrade player data written by older versions, loads wait until it is done
+        PlayerSchema.migrateAll();
+
+        // Drop players who left a while ago from memory
+        PlayerCache.startEviction();
+
+        // Restore the portal index saved last time, or build it from the worlds' POI files
+        PortalStore.getInstance().start();
+
         // Initialize registries
         SchedulerUtil.runLater(1, () -> {
             DeathChestRegistry.getInstance();
@@ -52,6 +86,7 @@ public final class SMPPlugin extends JavaPlugin {
 
         // Register commands
         getCommand("smp").setExecutor(new SMPCommand());
+        getCommand("smp").setTabCompleter(new SMPCommand());
         getCommand("inv").setExecutor(new InvEditCommand());
         getCommand("inventory").setExecutor(new InvEditCommand());
         getCommand("spawn").setExecutor(new SpawnCommand());
@@ -83,18 +118,18 @@ public final class SMPPlugin extends JavaPlugin {
         // Start duel queue system
         games.coob.smp.duel.DuelQueueManager.getInstance().start();
 
-        // Start tasks (40 ticks = 2 seconds for locator updates)
-        SchedulerUtil.runTimer(40, new LocatorTask());
+        // Start tasks (the locator runs every tick but only updates the waypoints that are due)
+        // Player positions are captured first so the tasks of the same tick read them
+        PlayerPositions.start();
+        SchedulerUtil.runTimer(1, new LocatorTask());
         SchedulerUtil.runTimer(20, new HologramTask());
     }
 
     @Override
     public void onDisable() {
-        // Save data
-        DeathChestRegistry.getInstance().save();
-
         // Clean up tracking
         TrackingRegistry.clear();
+        PortalStore.getInstance().shutdown();
         PortalCache.clear();
         WaypointPacketSender.clearAll();
         LocatorTask.cleanupAll();
@@ -109,12 +144,16 @@ public final class SMPPlugin extends JavaPlugin {
         games.coob.smp.duel.DuelQueueManager.getInstance().stop();
         games.coob.smp.duel.NaturalTeleporter.clearExploredCache();
         games.coob.smp.duel.model.ArenaRegistry.getInstance().save();
-        games.coob.smp.duel.model.DuelStatistics.getInstance().save();
 
         // Disable effects
         if (PluginUtil.isPluginEnabled("EffectLib")) {
             Effects.disable();
         }
+
+        // Write everything still queued before the server stops
+        PlayerJournal.getInstance().shutdown();
+        SaveQueue.getInstance().shutdown();
+        Storage.close();
     }
 
     @Override
@@ -0,0 +1,143 @@
+package games.coob.smp.benchmark;
+
+import games.coob.smp.hologram.Hologram;
+import games.coob.smp.hologram.HologramProvider;
+import games.coob.smp.hologram.PacketHologram;
+import games.coob.smp.util.ColorUtil;
+import games.coob.smp.util.MathUtil;
+import games.coob.smp.util.SchedulerUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the server tick time with the given number of death chest
+ * holograms around the sender, first as armor stands, then as packet text
+ * displays, against the tick time without any. Each phase runs for
+ * {@link #SAMPLE_TICKS} ticks and the holograms are removed afterwards.
+ * Run in game with /smp bench hologram [chests].
+ */
+public final class HologramBenchmark {
+
+	/** Ticks each phase runs for, the server keeps the times of the last 100 */
+	private static final int SAMPLE_TICKS = 100;
+
+	/** Ticks between removing one set of holograms and spawning the next */
+	private static final int SETTLE_TICKS = 20;
+
+	private static final double SPACING = 2;
+
+	private static boolean running;
+
+	private HologramBenchmark() {
+	}
+
+	public static void run(final CommandSender sender, final int chests) {
+		if (running) {
+			ColorUtil.sendMessage(sender, "&cA hologram benchmark is already running.");
+			return;
+		}
+
+		running = true;
+
+		final Location origin = (sender instanceof final Player player ? player.getLocation() : Bukkit.getWorlds().get(0).getSpawnLocation())
+				.add(0, 2, 0);
+
+		ColorUtil.sendMessage(sender, "&7Measuring " + chests + " holograms over " + SAMPLE_TICKS + " ticks per backend, this takes about "
+				+ (3 * SAMPLE_TICKS + 2 * SETTLE_TICKS) / 20 + " seconds...");
+
+		SchedulerUtil.runLater(SAMPLE_TICKS, () -> {
+			final double baseline = getAverageTickMillis();
+
+			measure(sender, origin, chests, HologramProvider.Backend.ENTITY, (entityMillis, entitySpawnMillis) ->
+					SchedulerUtil.runLater(SETTLE_TICKS, () -> {
+						if (!PacketHologram.isAvailable()) {
+							report(sender, chests, baseline, entityMillis, entitySpawnMillis, -1, -1);
+							return;
+						}
+
+						measure(sender, origin, chests, HologramProvider.Backend.PACKET, (packetMillis, packetSpawnMillis) ->
+								report(sender, chests, baseline, entityMillis, entitySpawnMillis, packetMillis, packetSpawnMillis));
+					}));
+		});
+	}
+
+	/**
+	 * Spawn the holograms in a grid around the origin, show them to the sender,
+	 * and pass the average tick time and the spawn time once the phase is over
+	 */
+	private static void measure(final CommandSender sender, final Location origin, final int chests,
+			final HologramProvider.Backend backend, final Result result) {
+		final List<Hologram> holograms = new ArrayList<>(chests);
+		final int side = (int) Math.ceil(Math.sqrt(chests));
+		final Player viewer = sender instanceof final Player player ? player : null;
+
+		final long start = System.nanoTime();
+
+		for (int i = 0; i < chests; i++) {
+			final Location location = origin.clone().add((i % side - side / 2) * SPACING, 0, (i / side - side / 2) * SPACING);
+			final Hologram hologram = HologramProvider.createHologram(backend);
+
+			hologram.ensureCreated(location, "&6Benchmark's loot");
+			if (viewer != null)
+				hologram.show(location, viewer, hologram.getLines());
+
+			holograms.add(hologram);
+		}
+
+		final double spawnMillis = (System.nanoTime() - start) / 1_000_000D;
+
+		SchedulerUtil.runLater(SAMPLE_TICKS, () -> {
+			final double tickMillis = getAverageTickMillis();
+
+			for (final Hologram hologram : holograms)
+				hologram.removeAll();
+
+			result.accept(tickMillis, spawnMillis);
+		});
+	}
+
+	private static void report(final CommandSender sender, final int chests, final double baseline, final double entityMillis,
+			final double entitySpawnMillis, final double packetMillis, final double packetSpawnMillis) {
+		running = false;
+
+		ColorUtil.sendMessage(sender, "&6&l=== Hologram Benchmark ===");
+		ColorUtil.sendMessage(sender, "&7" + chests + " holograms, average of the last " + SAMPLE_TICKS + " ticks");
+		ColorUtil.sendMessage(sender, "&eNo holograms&7: &f" + MathUtil.formatTwoDigits(baseline) + "ms &7per tick");
+		sendResult(sender, "Armor stands", baseline, entityMillis, entitySpawnMillis);
+
+		if (packetMillis < 0)
+			ColorUtil.sendMessage(sender, "&ePacket text displays&7: &cnot available on this server");
+		else
+			sendResult(sender, "Packet text displays", baseline, packetMillis, packetSpawnMillis);
+	}
+
+	private static void sendResult(final CommandSender sender, final String name, final double baseline, final double tickMillis,
+			final double spawnMillis) {
+		ColorUtil.sendMessage(sender, "&e" + name + "&7: &f" + MathUtil.formatTwoDigits(tickMillis) + "ms &7per tick (&f"
+				+ (tickMillis >= baseline ? "+" : "") + MathUtil.formatTwoDigits(tickMillis - baseline) + "ms&7), spawned in &f"
+				+ MathUtil.formatTwoDigits(spawnMillis) + "ms");
+	}
+
+	/**
+	 * Average time of the last 100 server ticks
+	 */
+	private static double getAverageTickMillis() {
+		final long[] tickTimes = Bukkit.getTickTimes();
+		long total = 0;
+
+		for (final long tickTime : tickTimes)
+			total += tickTime;
+
+		return tickTimes.length == 0 ? 0 : total / (double) tickTimes.length / 1_000_000D;
+	}
+
+	@FunctionalInterface
+	private interface Result {
+		void accept(double tickMillis, double spawnMillis);
+	}
+}
@@ -0,0 +1,136 @@
+package games.coob.smp.benchmark;
+
+import games.coob.smp.util.ColorUtil;
+import games.coob.smp.util.InventoryCodec;
+import games.coob.smp.util.InventorySerialization;
+import games.coob.smp.util.ItemCreator;
+import games.coob.smp.util.MathUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.command.CommandSender;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the legacy Base64 death chest format with {@link InventoryCodec}:
+ * encode time, decode time and size on disk for the same inventory.
+ * Run in game with /smp bench inventory [iterations].
+ */
+public final class InventoryCodecBenchmark {
+
+	private static final int WARMUP_ITERATIONS = 200;
+
+	private InventoryCodecBenchmark() {
+	}
+
+	public static void run(final CommandSender sender, final int iterations) {
+		final Inventory inventory = createSample(sender);
+
+		try {
+			for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+				InventorySerialization.fromBase64(InventorySerialization.toBase64(inventory));
+				InventoryCodec.decode(InventoryCodec.encode(inventory, InventoryCodec.Compression.NONE));
+				InventoryCodec.decode(InventoryCodec.encode(inventory, InventoryCodec.Compression.DEFLATE));
+			}
+
+			ColorUtil.sendMessage(sender, "&6&l=== Inventory Codec Benchmark ===");
+			ColorUtil.sendMessage(sender, "&7" + countItems(inventory) + " items in " + inventory.getSize() + " slots, " + iterations + " iterations");
+
+			// Legacy: Java object serialization + Base64 lines in YAML
+			String base64 = null;
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				base64 = InventorySerialization.toBase64(inventory);
+			final long legacyEncode = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				InventorySerialization.fromBase64(base64);
+			final long legacyDecode = System.nanoTime() - start;
+
+			sendResult(sender, "Base64 (legacy)", legacyEncode, legacyDecode, iterations, base64.getBytes(StandardCharsets.UTF_8).length);
+
+			for (final InventoryCodec.Compression compression : InventoryCodec.Compression.values()) {
+				byte[] encoded = null;
+				start = System.nanoTime();
+				for (int i = 0; i < iterations; i++)
+					encoded = InventoryCodec.encode(inventory, compression);
+				final long encode = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (int i = 0; i < iterations; i++)
+					InventoryCodec.decode(encoded);
+				final long decode = System.nanoTime() - start;
+
+				sendResult(sender, "Binary " + compression.name().toLowerCase(), encode, decode, iterations, encoded.length);
+			}
+
+		} catch (final IOException e) {
+			ColorUtil.sendMessage(sender, "&cBenchmark failed: " + e.getMessage());
+		}
+	}
+
+	private static void sendResult(final CommandSender sender, final String name, final long encodeNanos, final long decodeNanos,
+			final int iterations, final int bytes) {
+		ColorUtil.sendMessage(sender, "&e" + name + "&7: encode &f" + micros(encodeNanos, iterations) + "µs&7, decode &f"
+				+ micros(decodeNanos, iterations) + "µs&7, size &f" + bytes + " bytes");
+	}
+
+	private static String micros(final long nanos, final int iterations) {
+		return MathUtil.formatTwoDigits(nanos / (double) iterations / 1000D);
+	}
+
+	private static int countItems(final Inventory inventory) {
+		int count = 0;
+
+		for (final ItemStack item : inventory.getContents())
+			if (item != null && !item.getType().isAir())
+				count++;
+
+		return count;
+	}
+
+	/**
+	 * Use the player's own inventory when possible, it is the most realistic
+	 * death chest content. Otherwise build a mixed sample.
+	 */
+	private static Inventory createSample(final CommandSender sender) {
+		final Inventory inventory = Bukkit.createInventory(null, 45);
+
+		if (sender instanceof final Player player && !player.getInventory().isEmpty()) {
+			int slot = 0;
+
+			for (final ItemStack item : player.getInventory().getContents())
+				if (item != null && !item.getType().isAir() && slot < inventory.getSize())
+					inventory.setItem(slot++, item.clone());
+
+			return inventory;
+		}
+
+		final Material[] stacks = { Material.COBBLESTONE, Material.OAK_LOG, Material.TORCH, Material.COOKED_BEEF,
+				Material.IRON_INGOT, Material.REDSTONE, Material.ARROW, Material.DIRT };
+
+		for (int slot = 0; slot < 36; slot++) {
+			if (slot % 4 == 3)
+				continue; // Leave gaps like a real inventory
+
+			final ItemStack item;
+
+			if (slot < 4) {
+				item = ItemCreator.of(Material.DIAMOND_SWORD, "&bSword #" + slot, "&7Benchmark item").make();
+				item.addUnsafeEnchantment(Enchantment.SHARPNESS, 5);
+				item.addUnsafeEnchantment(Enchantment.UNBREAKING, 3);
+			} else
+				item = new ItemStack(stacks[slot % stacks.length], 64);
+
+			inventory.setItem(slot, item);
+		}
+
+		return inventory;
+	}
+}
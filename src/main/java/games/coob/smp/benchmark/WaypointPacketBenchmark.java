@@ -0,0 +1,161 @@
+package games.coob.smp.benchmark;
+
+import games.coob.smp.tracking.WaypointPacketSender;
+import games.coob.smp.util.ColorUtil;
+import games.coob.smp.util.MathUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.util.UUID;
+
+/**
+ * Compares building a waypoint update packet through plain reflection, as
+ * {@link WaypointPacketSender} used to, with the method handles it uses now.
+ * When run by a player, also compares looking up their connection on every
+ * packet with the cached one. Nothing is sent to the client.
+ * Run in game with /smp bench waypoint [iterations].
+ */
+public final class WaypointPacketBenchmark {
+
+	private static final int WARMUP_ITERATIONS = 10_000;
+
+	/** The packet class WaypointPacketSender finds on Mojang-mapped servers */
+	private static final String PACKET_CLASS = "net.minecraft.network.protocol.game.ClientboundTrackedWaypointPacket";
+
+	/** Keeps the results reachable so the JIT can't drop the calls */
+	private static Object sink;
+
+	private WaypointPacketBenchmark() {
+	}
+
+	public static void run(final CommandSender sender, final int iterations) {
+		if (!WaypointPacketSender.isAvailable()) {
+			ColorUtil.sendMessage(sender, "&cWaypoint packets are not available on this server.");
+			return;
+		}
+
+		final UUID waypointId = UUID.randomUUID();
+		final Location location = sender instanceof final Player player
+				? player.getLocation()
+				: Bukkit.getWorlds().get(0).getSpawnLocation();
+
+		try {
+			final Method updateMethod = findUpdateMethod();
+
+			if (updateMethod == null || WaypointPacketSender.createUpdatePacket(waypointId, location) == null) {
+				ColorUtil.sendMessage(sender, "&cThis server has no waypoint update packet to benchmark.");
+				return;
+			}
+
+			final Object icon = getDefaultIcon(updateMethod.getParameterTypes()[1]);
+
+			for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+				sink = createUpdatePacketReflectively(updateMethod, icon, waypointId, location);
+				sink = WaypointPacketSender.createUpdatePacket(waypointId, location);
+			}
+
+			ColorUtil.sendMessage(sender, "&6&l=== Waypoint Packet Benchmark ===");
+			ColorUtil.sendMessage(sender, "&7" + iterations + " iterations");
+
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				sink = createUpdatePacketReflectively(updateMethod, icon, waypointId, location);
+			final long reflective = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				sink = WaypointPacketSender.createUpdatePacket(waypointId, location);
+			final long handles = System.nanoTime() - start;
+
+			sendResult(sender, "Packet, reflection", reflective, iterations);
+			sendResult(sender, "Packet, method handles", handles, iterations);
+
+			if (sender instanceof final Player player && WaypointPacketSender.getConnection(player) != null) {
+				for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+					sink = lookupConnectionReflectively(player);
+					sink = WaypointPacketSender.getConnection(player);
+				}
+
+				start = System.nanoTime();
+				for (int i = 0; i < iterations; i++)
+					sink = lookupConnectionReflectively(player);
+				final long lookup = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (int i = 0; i < iterations; i++)
+					sink = WaypointPacketSender.getConnection(player);
+				final long cached = System.nanoTime() - start;
+
+				sendResult(sender, "Connection, reflection", lookup, iterations);
+				sendResult(sender, "Connection, cached", cached, iterations);
+			}
+
+		} catch (final Throwable t) {
+			ColorUtil.sendMessage(sender, "&cBenchmark failed: " + t);
+		}
+	}
+
+	/**
+	 * The static factory of the update packet, null if this server has none
+	 */
+	@Nullable
+	private static Method findUpdateMethod() {
+		try {
+			for (final Method method : Class.forName(PACKET_CLASS).getMethods()) {
+				final Class<?>[] params = method.getParameterTypes();
+
+				if ((method.getName().equals("updateWaypointPosition") || method.getName().equals("updatePos"))
+						&& params.length == 3 && params[0] == UUID.class)
+					return method;
+			}
+
+		} catch (final ClassNotFoundException ignored) {
+		}
+
+		return null;
+	}
+
+	private static Object getDefaultIcon(final Class<?> iconClass) throws ReflectiveOperationException {
+		try {
+			return iconClass.getField("NULL").get(null);
+		} catch (final NoSuchFieldException e) {
+			return iconClass.getField("DEFAULT").get(null);
+		}
+	}
+
+	/**
+	 * How WaypointPacketSender built the packet before method handles, looking
+	 * the position's constructor up on every call
+	 */
+	private static Object createUpdatePacketReflectively(final Method updateMethod, final Object icon, final UUID waypointId,
+			final Location location) throws ReflectiveOperationException {
+		final Object position = updateMethod.getParameterTypes()[2].getConstructor(int.class, int.class, int.class)
+				.newInstance(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+
+		return updateMethod.invoke(null, waypointId, icon, position);
+	}
+
+	/**
+	 * What every packet used to do before it could be sent
+	 */
+	private static Object lookupConnectionReflectively(final Player player) throws ReflectiveOperationException {
+		final Object handle = player.getClass().getMethod("getHandle").invoke(player);
+		final Object connection = handle.getClass().getField("connection").get(handle);
+
+		for (final Method method : connection.getClass().getMethods())
+			if (method.getName().equals("send") && method.getParameterCount() == 1) {
+				sink = method;
+				break;
+			}
+
+		return connection;
+	}
+
+	private static void sendResult(final CommandSender sender, final String name, final long nanos, final int iterations) {
+		ColorUtil.sendMessage(sender, "&e" + name + "&7: &f" + MathUtil.formatTwoDigits(nanos / (double) iterations) + "ns &7per call");
+	}
+}
@@ -1,7 +1,28 @@
 package games.coob.smp.command;
 
+import games.coob.smp.PlayerCache;
+import games.coob.smp.benchmark.HologramBenchmark;
+import games.coob.smp.benchmark.InventoryCodecBenchmark;
+import games.coob.smp.benchmark.WaypointPacketBenchmark;
+import games.coob.smp.config.SaveQueue;
+import games.coob.smp.storage.PlayerJournal;
+import games.coob.smp.storage.Storage;
+import games.coob.smp.storage.StorageMigration;
+import games.coob.smp.task.LocatorTask;
+import games.coob.smp.tracking.LodScheduler;
+import games.coob.smp.tracking.PortalCache;
+import games.coob.smp.tracking.PortalLocator;
+import games.coob.smp.tracking.PortalRouter;
+import games.coob.smp.tracking.PortalStore;
+import games.coob.smp.tracking.TargetChannel;
+import games.coob.smp.tracking.WaypointPacketSender;
+import games.coob.smp.tracking.WaypointUpdateFilter;
 import games.coob.smp.util.ColorUtil;
+import games.coob.smp.util.MathUtil;
 import games.coob.smp.util.Messenger;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -17,8 +38,56 @@ import java.util.List;
  */
 public class SMPCommand implements CommandExecutor, TabCompleter {
 
+	private static final String METRICS_PERMISSION = "smp.admin.metrics";
+
+	private static final String STORAGE_PERMISSION = "smp.admin.storage";
+
+	private static final String PORTALS_PERMISSION = "smp.admin.portals";
+
+	private static final List<String> BENCHMARKS = List.of("inventory", "waypoint", "hologram");
+
 	@Override
 	public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+		if (args.length > 0 && args[0].equalsIgnoreCase("metrics")) {
+			if (!sender.hasPermission(METRICS_PERMISSION)) {
+				ColorUtil.sendMessage(sender, "&cYou don't have permission to use this command.");
+				return true;
+			}
+
+			sendMetrics(sender);
+			return true;
+		}
+
+		if (args.length > 0 && args[0].equalsIgnoreCase("bench")) {
+			if (!sender.hasPermission(METRICS_PERMISSION)) {
+				ColorUtil.sendMessage(sender, "&cYou don't have permission to use this command.");
+				return true;
+			}
+
+			runBenchmark(sender, args);
+			return true;
+		}
+
+		if (args.length > 0 && args[0].equalsIgnoreCase("migrate-storage")) {
+			if (!sender.hasPermission(STORAGE_PERMISSION)) {
+				ColorUtil.sendMessage(sender, "&cYou don't have permission to use this command.");
+				return true;
+			}
+
+			StorageMigration.migrate(sender);
+			return true;
+		}
+
+		if (args.length > 0 && args[0].equalsIgnoreCase("portals")) {
+			if (!sender.hasPermission(PORTALS_PERMISSION)) {
+				ColorUtil.sendMessage(sender, "&cYou don't have permission to use this command.");
+				return true;
+			}
+
+			handlePortals(sender, args);
+			return true;
+		}
+
 		// Send header
 		ColorUtil.sendMessage(sender, "&6&l=== SMP Plugin Help ===");
 		ColorUtil.sendMessage(sender, "");
@@ -32,6 +101,10 @@ public class SMPCommand implements CommandExecutor, TabCompleter {
 		ColorUtil.sendMessage(sender, "&6&lCommands:");
 		ColorUtil.sendMessage(sender, "");
 		ColorUtil.sendMessage(sender, "&e/smp &7- Show this help (all players)");
+		ColorUtil.sendMessage(sender, "&7  &7/smp metrics &7- Show internal performance counters (admin)");
+		ColorUtil.sendMessage(sender, "&7  &7/smp bench <name> [iterations] &7- Run an in-game benchmark (admin)");
+		ColorUtil.sendMessage(sender, "&7  &7/smp migrate-storage &7- Copy YAML data into the SQLite database (admin)");
+		ColorUtil.sendMessage(sender, "&7  &7/smp portals [rebuild [world]] &7- Show or rebuild the portal index (admin)");
 		ColorUtil.sendMessage(sender, "");
 		ColorUtil.sendMessage(sender, "&e/spawn &7- Teleport to spawn");
 		ColorUtil.sendMessage(sender, "&7  &7/spawn locate &7- Show spawn coordinates");
@@ -92,6 +165,9 @@ public class SMPCommand implements CommandExecutor, TabCompleter {
 		ColorUtil.sendMessage(sender, "&7- &esmp.duel &7- Use /duel command");
 		ColorUtil.sendMessage(sender, "&7- &esmp.duel.queue &7- Use duel queue matchmaking");
 		ColorUtil.sendMessage(sender, "&7- &esmp.admin.arena &7- Arena management (create, edit, delete)");
+		ColorUtil.sendMessage(sender, "&7- &esmp.admin.metrics &7- View performance counters and run benchmarks");
+		ColorUtil.sendMessage(sender, "&7- &esmp.admin.storage &7- Migrate data between storage backends");
+		ColorUtil.sendMessage(sender, "&7- &esmp.admin.portals &7- View and rebuild the portal index");
 		ColorUtil.sendMessage(sender, "");
 
 		ColorUtil.sendMessage(sender, "&6&l=== === ===");
@@ -99,8 +175,168 @@ public class SMPCommand implements CommandExecutor, TabCompleter {
 		return true;
 	}
 
+	/**
+	 * Print the counters of the internal services
+	 */
+	private void sendMetrics(CommandSender sender) {
+		ColorUtil.sendMessage(sender, "&6&l=== SMP Metrics ===");
+		ColorUtil.sendMessage(sender, "&eStorage: &f" + Storage.getBackend().getName());
+
+		SaveQueue saveQueue = SaveQueue.getInstance();
+		ColorUtil.sendMessage(sender, "&eSave queue:");
+		ColorUtil.sendMessage(sender, "&7  Queue depth: &f" + saveQueue.getQueueDepth());
+		ColorUtil.sendMessage(sender, "&7  Saves requested: &f" + saveQueue.getRequestedSaves()
+				+ " &7(coalesced: &f" + saveQueue.getCoalescedSaves() + "&7)");
+		ColorUtil.sendMessage(sender, "&7  Writes: &f" + saveQueue.getCompletedWrites()
+				+ " &7(failed: &f" + saveQueue.getFailedWrites() + "&7)");
+		ColorUtil.sendMessage(sender, "&7  Write latency: &f" + MathUtil.formatTwoDigits(saveQueue.getAverageWriteMillis())
+				+ "ms avg&7, &f" + MathUtil.formatTwoDigits(saveQueue.getMaxWriteMillis()) + "ms max");
+
+		ColorUtil.sendMessage(sender, "&eWaypoints: &f" + WaypointUpdateFilter.getSentUpdates() + " &7sent, &f"
+				+ WaypointUpdateFilter.getSuppressedUpdates() + " &7suppressed as unchanged");
+		ColorUtil.sendMessage(sender, "&7  Locator runs: &f" + LocatorTask.getRuns() + "&7, packets per run: &f"
+				+ MathUtil.formatTwoDigits(LocatorTask.getAveragePacketsPerRun()) + "&7 in &f"
+				+ MathUtil.formatTwoDigits(LocatorTask.getAverageWritesPerRun()) + "&7 writes (last run: &f"
+				+ LocatorTask.getLastRunPackets() + "&7 in &f" + LocatorTask.getLastRunWrites() + "&7)");
+		ColorUtil.sendMessage(sender, "&7  Locator time: &f" + MathUtil.formatTwoDigits(LocatorTask.getAverageRunMillis()) + "ms avg&7, &f"
+				+ MathUtil.formatTwoDigits(LocatorTask.getMaxRunMillis()) + "ms max&7, over budget: &f" + LocatorTask.getBudgetOverruns()
+				+ "&7 runs (&f" + LocatorTask.getCarriedOverWork() + "&7 items carried over, &f" + LocatorTask.getPendingWork() + "&7 pending)");
+
+		ColorUtil.sendMessage(sender, "&7  Boss bars: &f" + LocatorTask.getBossBarTitleUpdates() + "&7 title updates, &f"
+				+ LocatorTask.getSkippedBossBarUpdates() + "&7 updates skipped as unchanged");
+		ColorUtil.sendMessage(sender, "&7  Level of detail: &f" + LodScheduler.getScheduledPairs() + "&7 waypoints scheduled, &f"
+				+ LodScheduler.getProcessedPairs() + "&7 updates, average interval &f"
+				+ MathUtil.formatTwoDigits(LodScheduler.getAverageInterval()) + "&7 ticks");
+		ColorUtil.sendMessage(sender, "&7  Target channels: &f" + TargetChannel.getReads() + "&7 reads served by &f"
+				+ TargetChannel.getRefreshes() + "&7 lookups, &f" + WaypointPacketSender.getEncodedPackets() + "&7 packets encoded for &f"
+				+ WaypointPacketSender.getSentPackets() + "&7 sent");
+		ColorUtil.sendMessage(sender, "&7  Portal routes: &f" + PortalRouter.getComputedRoutes() + "&7 computed, &f"
+				+ PortalRouter.getCachedRoutes() + "&7 from cache");
+		ColorUtil.sendMessage(sender, "&7  Portal searches: &f" + PortalLocator.getSearches() + "&7 (&f" + PortalLocator.getScannedChunks()
+				+ "&7 chunks scanned), joined while running: &f" + PortalLocator.getSharedSearches());
+
+		ColorUtil.sendMessage(sender, "&ePlayer cache:");
+		ColorUtil.sendMessage(sender, "&7  Loaded players: &f" + PlayerCache.getCachedPlayers()
+				+ "&7, prefetched on login: &f" + PlayerCache.getPrefetches());
+		ColorUtil.sendMessage(sender, "&7  Hits: &f" + PlayerCache.getCacheHits() + "&7, misses: &f" + PlayerCache.getCacheMisses()
+				+ "&7, evictions: &f" + PlayerCache.getCacheEvictions());
+
+		PlayerJournal journal = PlayerJournal.getInstance();
+		ColorUtil.sendMessage(sender, "&ePlayer journal:" + (journal.isRunning() ? "" : " &c(not running)"));
+		ColorUtil.sendMessage(sender, "&7  Records: &f" + journal.getAppendedRecords()
+				+ " &7(&f" + journal.getAppendedBytes() + "&7 bytes, failed writes: &f" + journal.getFailedWrites() + "&7)");
+		ColorUtil.sendMessage(sender, "&7  Syncs: &f" + journal.getSyncs() + "&7, compactions: &f" + journal.getCompactions()
+				+ "&7, replayed on start: &f" + journal.getReplayedRecords());
+	}
+
+	/**
+	 * Show the indexed portals per world, or rebuild the index of one or all
+	 * worlds from their POI files: /smp portals [rebuild [world]]
+	 */
+	private void handlePortals(CommandSender sender, String[] args) {
+		if (args.length < 2 || !args[1].equalsIgnoreCase("rebuild")) {
+			ColorUtil.sendMessage(sender, "&6&l=== Portal Index ===");
+
+			for (World world : Bukkit.getWorlds())
+				ColorUtil.sendMessage(sender, "&e" + world.getName() + "&7: &f" + PortalCache.getPortalCount(world, Material.NETHER_PORTAL)
+						+ " &7nether, &f" + PortalCache.getPortalCount(world, Material.END_PORTAL) + " &7end portal(s)");
+
+			ColorUtil.sendMessage(sender, "&7Use &f/smp portals rebuild [world] &7to index the nether portals in the POI files.");
+			return;
+		}
+
+		List<World> worlds = new ArrayList<>();
+
+		if (args.length > 2) {
+			World world = Bukkit.getWorld(args[2]);
+
+			if (world == null) {
+				ColorUtil.sendMessage(sender, "&cUnknown world: " + args[2]);
+				return;
+			}
+
+			worlds.add(world);
+		} else
+			worlds.addAll(Bukkit.getWorlds());
+
+		for (World world : worlds) {
+			if (PortalStore.getInstance().rebuild(world, sender))
+				ColorUtil.sendMessage(sender, "&7Reading the POI files of &f" + world.getName() + "&7...");
+			else
+				ColorUtil.sendMessage(sender, "&cThe portal index of " + world.getName() + " is already being rebuilt.");
+		}
+	}
+
+	/**
+	 * Run one of the in-game benchmarks: /smp bench <name> [iterations]
+	 */
+	private void runBenchmark(CommandSender sender, String[] args) {
+		if (args.length < 2) {
+			ColorUtil.sendMessage(sender, "&cUsage: /smp bench <" + String.join("|", BENCHMARKS) + "> [iterations]");
+			return;
+		}
+
+		int iterations = 1000;
+		if (args.length > 2) {
+			try {
+				iterations = Math.max(1, Integer.parseInt(args[2]));
+			} catch (NumberFormatException e) {
+				ColorUtil.sendMessage(sender, "&cIterations must be a number.");
+				return;
+			}
+		}
+
+		switch (args[1].toLowerCase()) {
+			case "inventory" -> InventoryCodecBenchmark.run(sender, iterations);
+			case "waypoint" -> WaypointPacketBenchmark.run(sender, iterations);
+			case "hologram" -> HologramBenchmark.run(sender, iterations);
+			default -> ColorUtil.sendMessage(sender, "&cUnknown benchmark. Choose one of: " + String.join(", ", BENCHMARKS));
+		}
+	}
+
 	@Override
 	public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
-		return new ArrayList<>();
+		List<String> completions = new ArrayList<>();
+
+		if (args.length == 1) {
+			List<String> subcommands = new ArrayList<>();
+
+			if (sender.hasPermission(METRICS_PERMISSION)) {
+				subcommands.add("metrics");
+				subcommands.add("bench");
+			}
+
+			if (sender.hasPermission(STORAGE_PERMISSION)) {
+				subcommands.add("migrate-storage");
+			}
+
+			if (sender.hasPermission(PORTALS_PERMISSION)) {
+				subcommands.add("portals");
+			}
+
+			for (String sub : subcommands) {
+				if (sub.startsWith(args[0].toLowerCase())) {
+					completions.add(sub);
+				}
+			}
+		} else if (args.length == 2 && args[0].equalsIgnoreCase("bench") && sender.hasPermission(METRICS_PERMISSION)) {
+			for (String benchmark : BENCHMARKS) {
+				if (benchmark.startsWith(args[1].toLowerCase())) {
+					completions.add(benchmark);
+				}
+			}
+		} else if (args.length == 2 && args[0].equalsIgnoreCase("portals") && sender.hasPermission(PORTALS_PERMISSION)) {
+			if ("rebuild".startsWith(args[1].toLowerCase())) {
+				completions.add("rebuild");
+			}
+		} else if (args.length == 3 && args[0].equalsIgnoreCase("portals") && sender.hasPermission(PORTALS_PERMISSION)) {
+			for (World world : Bukkit.getWorlds()) {
+				if (world.getName().toLowerCase().startsWith(args[2].toLowerCase())) {
+					completions.add(world.getName());
+				}
+			}
+		}
+
+		return completions;
 	}
 }
@@ -2,8 +2,11 @@ package games.coob.smp.command;
 
 import games.coob.smp.PlayerCache;
 import games.coob.smp.menu.LocatorMenu;
+import games.coob.smp.settings.Settings;
 import games.coob.smp.task.LocatorTask;
 import games.coob.smp.tracking.LocatorBarManager;
+import games.coob.smp.tracking.TargetChannel;
+import games.coob.smp.tracking.TrackedTarget;
 import games.coob.smp.tracking.TrackingRegistry;
 import games.coob.smp.tracking.TrackingRequestManager;
 import games.coob.smp.tracking.WaypointPacketSender;
@@ -16,6 +19,7 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Team;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,10 +31,11 @@ import java.util.List;
  * Usage:
  *   /track - Opens the tracking menu
  *   /track death - Tracks your death location
+ *   /track team - Tracks every member of your scoreboard team
  *   /track accept <player> - Accept a tracking request (used by chat button)
  *   /track deny <player> - Deny a tracking request (used by chat button)
  *   /track stop - Stop all tracking
- *   /track stop <player> - Stop tracking a specific player
+ *   /track stop <player|team> - Stop tracking a specific player or team
  */
 public class TrackCommand implements CommandExecutor, TabCompleter {
 
@@ -51,6 +56,7 @@ public class TrackCommand implements CommandExecutor, TabCompleter {
 
         switch (subCommand) {
             case "death" -> handleDeathTracking(player);
+            case "team" -> handleTeamTracking(player);
             case "accept" -> {
                 if (args.length < 2) {
                     ColorUtil.sendMessage(sender, "&cUsage: /track accept <player>");
@@ -74,7 +80,7 @@ public class TrackCommand implements CommandExecutor, TabCompleter {
                     handleStopAllTracking(player);
                 }
             }
-            default -> ColorUtil.sendMessage(sender, "&cUnknown subcommand. Use: /track, /track death, /track stop");
+            default -> ColorUtil.sendMessage(sender, "&cUnknown subcommand. Use: /track, /track death, /track team, /track stop");
         }
 
         return true;
@@ -106,7 +112,40 @@ public class TrackCommand implements CommandExecutor, TabCompleter {
         Messenger.success(player, "You are now tracking your death location.");
     }
 
+    private void handleTeamTracking(Player player) {
+        if (!Settings.LocatorSection.ALLOW_TEAM_TRACKING) {
+            Messenger.info(player, "Team tracking is disabled on this server.");
+            return;
+        }
+
+        Team team = TargetChannel.getTrackableTeam(player);
+
+        if (team == null) {
+            Messenger.info(player, "You are not on a team.");
+            return;
+        }
+
+        PlayerCache cache = PlayerCache.from(player);
+        if (cache.getTrackedTeam(team.getName()) != null) {
+            Messenger.info(player, "You are already tracking your team.");
+            return;
+        }
+
+        // One target for the whole team, its members are looked up on every update
+        cache.startTrackingTeam(team.getName());
+        TrackingRegistry.startTracking(player.getUniqueId());
+        LocatorBarManager.enableReceive(player);
+
+        Messenger.success(player, "You are now tracking team " + team.getName() + ".");
+    }
+
     private void handleStopTrackingPlayer(Player player, String targetName) {
+        PlayerCache trackerCache = PlayerCache.from(player);
+        if (trackerCache.getTrackedTeam(targetName) != null) {
+            handleStopTrackingTeam(player, targetName);
+            return;
+        }
+
         Player target = Bukkit.getPlayer(targetName);
         if (target == null) {
             ColorUtil.sendMessage(player, "&cPlayer not found.");
@@ -121,7 +160,7 @@ public class TrackCommand implements CommandExecutor, TabCompleter {
 
         cache.removeTrackedPlayer(target.getUniqueId());
         WaypointPacketSender.removeWaypoint(player,
-                WaypointPacketSender.generateWaypointId(player.getUniqueId(), target.getUniqueId()));
+                WaypointPacketSender.generateWaypointId(target.getUniqueId()));
 
         if (!cache.isTracking()) {
             TrackingRegistry.stopTracking(player.getUniqueId());
@@ -134,6 +173,28 @@ public class TrackCommand implements CommandExecutor, TabCompleter {
         ColorUtil.sendMessage(player, "&aStopped tracking &3" + target.getName() + "&a.");
     }
 
+    private void handleStopTrackingTeam(Player player, String teamName) {
+        PlayerCache cache = PlayerCache.from(player);
+        cache.removeTrackedTeamsIf(teamName::equals);
+
+        // Members also tracked on their own keep their waypoint
+        for (Player member : TargetChannel.getTeamMembers(teamName)) {
+            if (cache.getTrackedTarget(member.getUniqueId()) == null) {
+                WaypointPacketSender.removeWaypoint(player, WaypointPacketSender.generateWaypointId(member.getUniqueId()));
+            }
+        }
+
+        if (!cache.isTracking()) {
+            TrackingRegistry.stopTracking(player.getUniqueId());
+            LocatorBarManager.disableReceive(player);
+            LocatorBarManager.clearTarget(player);
+            LocatorTask.cleanupPlayer(player.getUniqueId());
+            WaypointPacketSender.clearWaypoint(player);
+        }
+
+        ColorUtil.sendMessage(player, "&aStopped tracking team &3" + teamName + "&a.");
+    }
+
     private void handleStopAllTracking(Player player) {
         PlayerCache cache = PlayerCache.from(player);
         
@@ -155,7 +216,9 @@ public class TrackCommand implements CommandExecutor, TabCompleter {
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (args.length == 1) {
-            return Arrays.asList("death", "accept", "deny", "stop");
+            return Settings.LocatorSection.ALLOW_TEAM_TRACKING
+                    ? Arrays.asList("death", "team", "accept", "deny", "stop")
+                    : Arrays.asList("death", "accept", "deny", "stop");
         }
         if (args.length == 2) {
             if (args[0].equalsIgnoreCase("accept") || args[0].equalsIgnoreCase("deny") || args[0].equalsIgnoreCase("stop")) {
@@ -163,6 +226,13 @@ public class TrackCommand implements CommandExecutor, TabCompleter {
                 for (Player p : Bukkit.getOnlinePlayers()) {
                     players.add(p.getName());
                 }
+                if (args[0].equalsIgnoreCase("stop") && sender instanceof Player player) {
+                    for (TrackedTarget target : PlayerCache.from(player).getTrackedTargets()) {
+                        if (target.isTeam()) {
+                            players.add(target.getTeamName());
+                        }
+                    }
+                }
                 return players;
             }
         }
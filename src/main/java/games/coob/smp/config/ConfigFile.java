@@ -1,6 +1,7 @@
 package games.coob.smp.config;
 
 import games.coob.smp.SMPPlugin;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 
@@ -19,21 +20,60 @@ public abstract class ConfigFile {
 	protected FileConfiguration config;
 
 	protected ConfigFile(String fileName) {
+		this(fileName, true);
+	}
+
+	/**
+	 * @param fileName The file, relative to the plugin folder
+	 * @param loadNow  False for subclasses that need their own fields set before
+	 *                 loading, they call {@link #load()} themselves
+	 */
+	protected ConfigFile(String fileName, boolean loadNow) {
 		this.file = new File(SMPPlugin.getInstance().getDataFolder(), fileName);
-		load();
+
+		if (loadNow)
+			load();
 	}
 
 	/**
 	 * Load the configuration file
 	 */
 	public void load() {
+		config = new YamlConfiguration();
+
+		try {
+			String contents = readContents();
+
+			// Files without a bundled default (e.g. per-player data) start out empty
+			if (contents != null)
+				config.loadFromString(contents);
+		} catch (IOException | InvalidConfigurationException e) {
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not load config: " + file.getName(), e);
+		}
+
+		onLoad();
+	}
+
+	/**
+	 * Read the raw YAML, from the backing file by default
+	 *
+	 * @return The contents, or null if nothing was stored yet
+	 */
+	protected String readContents() throws IOException {
 		if (!file.exists()) {
 			file.getParentFile().mkdirs();
 			saveDefaultConfig();
 		}
 
-		config = YamlConfiguration.loadConfiguration(file);
-		onLoad();
+		return file.exists() ? Files.readString(file.toPath()) : null;
+	}
+
+	/**
+	 * Persist the raw YAML, to the backing file by default. Called on the
+	 * {@link SaveQueue} writer thread for queued saves.
+	 */
+	protected void writeContents(String contents) throws IOException {
+		SaveQueue.writeAtomically(file, contents);
 	}
 
 	/**
@@ -51,17 +91,34 @@ public abstract class ConfigFile {
 	}
 
 	/**
-	 * Save the configuration file
+	 * Queue the configuration file for saving. Repeated calls before the next
+	 * flush are coalesced into one write, see {@link SaveQueue}.
 	 */
 	public void save() {
+		SaveQueue.getInstance().markDirty(this);
+	}
+
+	/**
+	 * Save the configuration file right away on the calling thread
+	 */
+	public void saveNow() {
 		try {
 			onSave();
-			config.save(file);
+			writeContents(config.saveToString());
 		} catch (IOException e) {
 			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not save config: " + file.getName(), e);
 		}
 	}
 
+	/**
+	 * Prepare the config for saving and copy its values, so they can be
+	 * serialized off the main thread
+	 */
+	YamlConfiguration snapshot() {
+		onSave();
+		return SaveQueue.copyOf(config);
+	}
+
 	/**
 	 * Reload the configuration file
 	 */
@@ -69,6 +126,15 @@ public abstract class ConfigFile {
 		load();
 	}
 
+	/**
+	 * Get the backing file
+	 *
+	 * @return The file
+	 */
+	public File getFile() {
+		return file;
+	}
+
 	/**
 	 * Get the FileConfiguration
 	 *
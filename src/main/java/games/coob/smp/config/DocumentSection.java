@@ -0,0 +1,98 @@
+package games.coob.smp.config;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The part of a shared YAML file owned by one subsystem: everything under a
+ * single top-level key. Sections of the same file share one parsed document,
+ * see {@link SharedDocument}.
+ * <p>
+ * Subclasses read their key when constructed and put their state back in
+ * {@link #onSave()}, like a {@link ConfigFile} would for the whole file.
+ * Main thread only.
+ */
+public class DocumentSection {
+
+	private final SharedDocument document;
+
+	private final String key;
+
+	private boolean dirty;
+
+	/**
+	 * @param fileName The shared file, relative to the plugin folder
+	 * @param key      The top-level key this section owns
+	 */
+	public DocumentSection(String fileName, String key) {
+		this.key = key;
+		this.document = SharedDocument.acquire(fileName, this);
+	}
+
+	/**
+	 * Return true if the file has a value under our key
+	 */
+	public boolean exists() {
+		return document.getConfig().contains(key);
+	}
+
+	/**
+	 * Get the value under our key as a section, creating it if needed
+	 */
+	public ConfigurationSection getSection() {
+		ConfigurationSection section = document.getConfig().getConfigurationSection(key);
+
+		return section != null ? section : document.getConfig().createSection(key);
+	}
+
+	/**
+	 * Get the value under our key as a list of maps, empty if missing
+	 */
+	public List<Map<?, ?>> getMapList() {
+		return document.getConfig().getMapList(key);
+	}
+
+	/**
+	 * Replace the value under our key, null removes it
+	 */
+	public void set(Object value) {
+		document.getConfig().set(key, value);
+	}
+
+	/**
+	 * Queue this section for saving together with the other changed sections of the file
+	 */
+	public void save() {
+		dirty = true;
+		document.save();
+	}
+
+	/**
+	 * Stop using this section. The file is written one last time if this
+	 * section still had changes and dropped once no section uses it.
+	 */
+	public void release() {
+		document.release(this);
+	}
+
+	boolean isDirty() {
+		return dirty;
+	}
+
+	void writeChanges() {
+		dirty = false;
+		onSave();
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Called before the file is saved when this section changed
+	 */
+	protected void onSave() {
+	}
+}
@@ -0,0 +1,307 @@
+package games.coob.smp.config;
+
+import games.coob.smp.SMPPlugin;
+import games.coob.smp.util.SchedulerUtil;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Write-behind persistence for {@link ConfigFile}s.
+ * <p>
+ * {@link ConfigFile#save()} only marks a file dirty. Once per flush period all
+ * dirty files are snapshotted on the main thread (so any burst of mutations is
+ * coalesced into a single write), then serialized and written on a dedicated
+ * thread through a temporary file that is atomically renamed over the target.
+ */
+public final class SaveQueue {
+
+	private static final SaveQueue instance = new SaveQueue();
+
+	/** How often dirty files are flushed, in ticks */
+	private static final long FLUSH_PERIOD_TICKS = 20;
+
+	/** Files that changed since the last flush */
+	private final Set<ConfigFile> dirtyFiles = ConcurrentHashMap.newKeySet();
+
+	/** Files with snapshots handed to the writer thread, by number of snapshots not yet written */
+	private final Map<ConfigFile, Integer> unwrittenFiles = new ConcurrentHashMap<>();
+
+	private ExecutorService writer;
+	private BukkitTask flushTask;
+
+	// Metrics
+	private final AtomicInteger pendingWrites = new AtomicInteger();
+	private final AtomicLong requestedSaves = new AtomicLong();
+	private final AtomicLong coalescedSaves = new AtomicLong();
+	private final AtomicLong completedWrites = new AtomicLong();
+	private final AtomicLong failedWrites = new AtomicLong();
+	private final AtomicLong totalWriteNanos = new AtomicLong();
+	private final AtomicLong maxWriteNanos = new AtomicLong();
+
+	private SaveQueue() {
+	}
+
+	public static SaveQueue getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Start the writer thread and the periodic flush (call on plugin enable)
+	 */
+	public void start() {
+		if (isRunning())
+			return;
+
+		writer = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "SMP Save Queue");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flushTask = SchedulerUtil.runTimer(FLUSH_PERIOD_TICKS, FLUSH_PERIOD_TICKS, this::flush);
+	}
+
+	/**
+	 * Flush every dirty file and wait for all pending writes (call on plugin disable).
+	 * Saves requested afterwards are written synchronously.
+	 */
+	public void shutdown() {
+		if (!isRunning())
+			return;
+
+		flushTask.cancel();
+		flush();
+
+		writer.shutdown();
+		try {
+			if (!writer.awaitTermination(30, TimeUnit.SECONDS))
+				SMPPlugin.getInstance().getLogger().severe("Timed out waiting for " + pendingWrites.get() + " pending data file write(s)");
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		writer = null;
+		flushTask = null;
+	}
+
+	public boolean isRunning() {
+		return writer != null && !writer.isShutdown();
+	}
+
+	/**
+	 * Mark a file as changed; it is written on the next flush
+	 */
+	public void markDirty(final ConfigFile file) {
+		if (!isRunning()) {
+			file.saveNow();
+			return;
+		}
+
+		requestedSaves.incrementAndGet();
+
+		if (!dirtyFiles.add(file))
+			coalescedSaves.incrementAndGet();
+	}
+
+	/**
+	 * Write raw bytes to the given file on the writer thread, in order with all
+	 * other queued writes (synchronously when the queue is not running)
+	 */
+	public void write(final File target, final byte[] data) {
+		if (!isRunning()) {
+			try {
+				writeAtomically(target, data);
+			} catch (final IOException e) {
+				SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not save data file: " + target.getName(), e);
+			}
+
+			return;
+		}
+
+		pendingWrites.incrementAndGet();
+		writer.execute(() -> timedWrite(target, () -> writeAtomically(target, data)));
+	}
+
+	/**
+	 * Delete the given file on the writer thread, after all writes queued before
+	 */
+	public void delete(final File target) {
+		if (!isRunning()) {
+			target.delete();
+			return;
+		}
+
+		writer.execute(target::delete);
+	}
+
+	/**
+	 * Flush, then run the task on the writer thread once every write queued so
+	 * far is done (right away when the queue is not running)
+	 */
+	public void afterPendingWrites(final Runnable task) {
+		if (!isRunning()) {
+			task.run();
+			return;
+		}
+
+		flush();
+		writer.execute(task);
+	}
+
+	/**
+	 * Snapshot every dirty file on the calling (main) thread and hand the
+	 * snapshots over to the writer thread
+	 */
+	public void flush() {
+		for (final ConfigFile file : dirtyFiles) {
+			dirtyFiles.remove(file);
+
+			final YamlConfiguration snapshot = file.snapshot();
+
+			pendingWrites.incrementAndGet();
+			unwrittenFiles.merge(file, 1, Integer::sum);
+			writer.execute(() -> {
+				timedWrite(file.getFile(), () -> file.writeContents(snapshot.saveToString()));
+				unwrittenFiles.computeIfPresent(file, (key, count) -> count == 1 ? null : count - 1);
+			});
+		}
+	}
+
+	/**
+	 * Return true if the file is dirty or a snapshot of it has not been written yet
+	 */
+	public boolean isPending(final ConfigFile file) {
+		return dirtyFiles.contains(file) || unwrittenFiles.containsKey(file);
+	}
+
+	private void timedWrite(final File target, final FileWrite write) {
+		final long start = System.nanoTime();
+
+		try {
+			write.run();
+
+			final long elapsed = System.nanoTime() - start;
+
+			completedWrites.incrementAndGet();
+			totalWriteNanos.addAndGet(elapsed);
+			maxWriteNanos.accumulateAndGet(elapsed, Math::max);
+
+		} catch (final IOException e) {
+			failedWrites.incrementAndGet();
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not save data file: " + target.getName(), e);
+
+		} finally {
+			pendingWrites.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Write the content to a temporary file next to the target and rename it
+	 * over the target, so a crash never leaves a half-written file behind
+	 */
+	public static void writeAtomically(final File target, final String content) throws IOException {
+		writeAtomically(target, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static void writeAtomically(final File target, final byte[] content) throws IOException {
+		final File parent = target.getParentFile();
+
+		if (parent != null)
+			parent.mkdirs();
+
+		final File temp = new File(parent, target.getName() + ".tmp");
+		Files.write(temp.toPath(), content);
+
+		try {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Copy the leaf values of the given configuration into a new one, so it can
+	 * be serialized while the original keeps being modified
+	 */
+	static YamlConfiguration copyOf(final FileConfiguration config) {
+		final YamlConfiguration copy = new YamlConfiguration();
+
+		copy.options().setHeader(config.options().getHeader());
+
+		for (final Map.Entry<String, Object> entry : config.getValues(true).entrySet()) {
+			final String path = entry.getKey();
+
+			if (!(entry.getValue() instanceof ConfigurationSection))
+				copy.set(path, entry.getValue());
+			else if (!copy.isConfigurationSection(path))
+				copy.createSection(path);
+
+			copy.setComments(path, config.getComments(path));
+			copy.setInlineComments(path, config.getInlineComments(path));
+		}
+
+		return copy;
+	}
+
+	@FunctionalInterface
+	private interface FileWrite {
+		void run() throws IOException;
+	}
+
+	// -------------------------------------------------------------------------
+	// Metrics
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Files waiting for the next flush plus snapshots waiting to be written
+	 */
+	public int getQueueDepth() {
+		return dirtyFiles.size() + pendingWrites.get();
+	}
+
+	public long getRequestedSaves() {
+		return requestedSaves.get();
+	}
+
+	/**
+	 * Saves that were absorbed by a file that was already dirty
+	 */
+	public long getCoalescedSaves() {
+		return coalescedSaves.get();
+	}
+
+	public long getCompletedWrites() {
+		return completedWrites.get();
+	}
+
+	public long getFailedWrites() {
+		return failedWrites.get();
+	}
+
+	public double getAverageWriteMillis() {
+		final long writes = completedWrites.get();
+
+		return writes == 0 ? 0 : totalWriteNanos.get() / (double) writes / 1_000_000D;
+	}
+
+	public double getMaxWriteMillis() {
+		return maxWriteNanos.get() / 1_000_000D;
+	}
+}
@@ -0,0 +1,65 @@
+package games.coob.smp.config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A YAML file used by several subsystems at once. It is parsed once and kept
+ * while any {@link DocumentSection} references it; on save the sections that
+ * changed write into the one in-memory document, which is then written as a
+ * whole, so no subsystem can overwrite another with a stale copy.
+ * <p>
+ * Main thread only.
+ */
+final class SharedDocument extends ConfigFile {
+
+	private static final Map<String, SharedDocument> documents = new HashMap<>();
+
+	private final String fileName;
+
+	private final List<DocumentSection> sections = new ArrayList<>();
+
+	private SharedDocument(String fileName) {
+		super(fileName);
+
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Return the document for the given file, parsing it only if no other
+	 * section holds it, and count the section as a reference
+	 */
+	static SharedDocument acquire(String fileName, DocumentSection section) {
+		SharedDocument document = documents.computeIfAbsent(fileName, SharedDocument::new);
+
+		document.sections.add(section);
+		return document;
+	}
+
+	/**
+	 * Drop the reference of the given section. Once nobody references the document
+	 * it is forgotten, unless it still has a save pending: then it stays so the
+	 * next section for this file sees the unwritten changes instead of a stale parse.
+	 */
+	void release(DocumentSection section) {
+		if (!sections.remove(section))
+			return;
+
+		if (section.isDirty()) {
+			section.writeChanges();
+			save();
+		}
+
+		if (sections.isEmpty() && !SaveQueue.getInstance().isPending(this))
+			documents.remove(fileName, this);
+	}
+
+	@Override
+	protected void onSave() {
+		for (DocumentSection section : sections)
+			if (section.isDirty())
+				section.writeChanges();
+	}
+}
@@ -2,6 +2,7 @@ package games.coob.smp.duel;
 
 import games.coob.smp.settings.Settings;
 import games.coob.smp.util.ColorUtil;
+import games.coob.smp.util.PlayerPositions;
 import games.coob.smp.util.SchedulerUtil;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -144,7 +145,7 @@ public class DuelBorder {
 			if (!player.isOnline())
 				continue;
 
-			double distance = getHorizontalDistance(player.getLocation(), center);
+			double distance = getHorizontalDistance(player);
 			double distanceFromBorder = currentRadius - distance;
 
 			if (distanceFromBorder < 0) {
@@ -186,11 +187,12 @@ public class DuelBorder {
 	}
 
 	/**
-	 * Gets horizontal distance between two locations (ignoring Y).
+	 * Gets horizontal distance (ignoring Y) between the player and the center,
+	 * from the positions captured this tick.
 	 */
-	private double getHorizontalDistance(Location loc1, Location loc2) {
-		double dx = loc1.getX() - loc2.getX();
-		double dz = loc1.getZ() - loc2.getZ();
+	private double getHorizontalDistance(Player player) {
+		double dx = PlayerPositions.getX(player) - center.getX();
+		double dz = PlayerPositions.getZ(player) - center.getZ();
 		return Math.sqrt(dx * dx + dz * dz);
 	}
 
@@ -198,7 +200,7 @@ public class DuelBorder {
 	 * Checks if a player is inside the border.
 	 */
 	public boolean isInsideBorder(Player player) {
-		return getHorizontalDistance(player.getLocation(), center) <= currentRadius;
+		return getHorizontalDistance(player) <= currentRadius;
 	}
 
 	/**
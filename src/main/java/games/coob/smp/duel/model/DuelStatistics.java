@@ -1,91 +1,93 @@
 package games.coob.smp.duel.model;
 
-import games.coob.smp.config.ConfigFile;
+import games.coob.smp.SMPPlugin;
+import games.coob.smp.storage.DuelStatsRecord;
+import games.coob.smp.storage.Storage;
+import games.coob.smp.storage.StorageBackend;
 import lombok.Getter;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.logging.Level;
 
 /**
  * Tracks win/loss statistics for duels.
- * Persists to duel-stats.yml.
+ * Persisted through the configured {@link StorageBackend}, each player's stats
+ * are read once and then served from memory.
  */
-public class DuelStatistics extends ConfigFile {
+public class DuelStatistics {
 
 	@Getter
 	private static final DuelStatistics instance = new DuelStatistics();
 
+	private final Map<UUID, DuelStatsRecord> statsCache = new HashMap<>();
+
 	private DuelStatistics() {
-		super("duel-stats.yml");
 	}
 
-	@Override
-	protected void onLoad() {
-		// Stats are loaded on demand from config
+	private DuelStatsRecord getStats(UUID playerId) {
+		DuelStatsRecord stats = statsCache.get(playerId);
+
+		if (stats == null) {
+			try {
+				stats = Storage.getBackend().loadDuelStats(playerId);
+				statsCache.put(playerId, stats);
+			} catch (IOException e) {
+				SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not load duel stats of " + playerId, e);
+				return DuelStatsRecord.empty(playerId);
+			}
+		}
+
+		return stats;
 	}
 
-	@Override
-	protected void onSave() {
-		// Stats are saved immediately when modified
+	private void setStats(DuelStatsRecord stats) {
+		statsCache.put(stats.uniqueId(), stats);
+		Storage.getBackend().saveDuelStats(stats);
 	}
 
 	/**
 	 * Get wins for a player.
 	 */
 	public int getWins(UUID playerId) {
-		return getConfig().getInt("Players." + playerId.toString() + ".wins", 0);
+		return getStats(playerId).wins();
 	}
 
 	/**
 	 * Get losses for a player.
 	 */
 	public int getLosses(UUID playerId) {
-		return getConfig().getInt("Players." + playerId.toString() + ".losses", 0);
+		return getStats(playerId).losses();
 	}
 
 	/**
 	 * Get current win streak for a player.
 	 */
 	public int getWinStreak(UUID playerId) {
-		return getConfig().getInt("Players." + playerId.toString() + ".streak", 0);
+		return getStats(playerId).streak();
 	}
 
 	/**
 	 * Get best win streak for a player.
 	 */
 	public int getBestStreak(UUID playerId) {
-		return getConfig().getInt("Players." + playerId.toString() + ".best_streak", 0);
+		return getStats(playerId).bestStreak();
 	}
 
 	/**
 	 * Add a win for a player.
 	 */
 	public void addWin(UUID playerId) {
-		String path = "Players." + playerId.toString();
-		int wins = getConfig().getInt(path + ".wins", 0) + 1;
-		int streak = getConfig().getInt(path + ".streak", 0) + 1;
-		int bestStreak = getConfig().getInt(path + ".best_streak", 0);
-
-		getConfig().set(path + ".wins", wins);
-		getConfig().set(path + ".streak", streak);
-
-		if (streak > bestStreak) {
-			getConfig().set(path + ".best_streak", streak);
-		}
-
-		save();
+		setStats(getStats(playerId).withWin());
 	}
 
 	/**
 	 * Add a loss for a player.
 	 */
 	public void addLoss(UUID playerId) {
-		String path = "Players." + playerId.toString();
-		int losses = getConfig().getInt(path + ".losses", 0) + 1;
-
-		getConfig().set(path + ".losses", losses);
-		getConfig().set(path + ".streak", 0); // Reset streak on loss
-
-		save();
+		setStats(getStats(playerId).withLoss()); // Resets the streak
 	}
 
 	/**
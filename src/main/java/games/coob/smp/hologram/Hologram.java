@@ -0,0 +1,153 @@
+package games.coob.smp.hologram;
+
+import games.coob.smp.config.Serializable;
+import games.coob.smp.util.IntHashMap;
+import games.coob.smp.util.ValidationUtil;
+import lombok.Getter;
+import lombok.Setter;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+
+/**
+ * A hologram shown to individual players. Keeps the location, the lines and
+ * who sees it; how it is displayed is up to the backend, see
+ * {@link HologramProvider#createHologram()}.
+ * <p>
+ * Viewers are kept by entity id, both in each hologram and in a shared index
+ * from a player to the holograms they see, so checking, showing, hiding and
+ * cleaning up after a player who quit do not scan other holograms.
+ */
+public abstract class Hologram implements Serializable {
+
+	@Getter
+	private final UUID uniqueId;
+	private Location location;
+	@Setter
+	private String[] lines;
+	/** Players seeing this hologram by entity id */
+	private final IntHashMap<Player> viewers = new IntHashMap<>();
+
+	/** Holograms each player sees, by the player's entity id */
+	private static final IntHashMap<Set<Hologram>> visibleByViewer = new IntHashMap<>();
+
+	protected Hologram() {
+		this(UUID.randomUUID(), null, null);
+	}
+
+	protected Hologram(UUID uniqueId, Location location, String[] lines) {
+		this.uniqueId = uniqueId;
+		this.location = location;
+		this.lines = lines;
+	}
+
+	/**
+	 * Initialize hologram location and lines without showing to any player.
+	 * Used for non-persistent holograms that are shown only when players enter
+	 * range.
+	 */
+	public void ensureCreated(Location location, String... linesOfText) {
+		if (this.location != null)
+			return;
+		this.location = location.clone();
+		this.lines = linesOfText;
+		create(this.location, linesOfText);
+	}
+
+	public void show(Location location, Player player, String... linesOfText) {
+		// Set location and lines if not already set (first time)
+		ensureCreated(location, linesOfText);
+
+		if (player == null || viewers.put(player.getEntityId(), player) != null)
+			return;
+
+		Set<Hologram> visible = visibleByViewer.get(player.getEntityId());
+		if (visible == null) {
+			visible = new HashSet<>();
+			visibleByViewer.put(player.getEntityId(), visible);
+		}
+
+		visible.add(this);
+		showTo(player);
+	}
+
+	public void hide(Player player) {
+		if (viewers.remove(player.getEntityId()) == null)
+			return;
+
+		final Set<Hologram> visible = visibleByViewer.get(player.getEntityId());
+		if (visible != null && visible.remove(this) && visible.isEmpty())
+			visibleByViewer.remove(player.getEntityId());
+
+		hideFrom(player);
+	}
+
+	public boolean isVisibleTo(Player player) {
+		return viewers.containsKey(player.getEntityId());
+	}
+
+	/**
+	 * Forget the player in every hologram they see without sending anything
+	 * (call on quit, the client drops them anyway)
+	 */
+	public static void removeViewer(Player player) {
+		final Set<Hologram> visible = visibleByViewer.remove(player.getEntityId());
+
+		if (visible != null)
+			for (Hologram hologram : visible)
+				hologram.viewers.remove(player.getEntityId());
+	}
+
+	public void remove(Player player) {
+		hide(player);
+	}
+
+	/**
+	 * Remove this hologram completely (for all players)
+	 */
+	public void removeAll() {
+		// Hide from all players
+		for (Player player : viewers.values()) {
+			hide(player);
+		}
+
+		destroy();
+	}
+
+	/**
+	 * Set up the display at the location, called once before it is shown
+	 */
+	protected abstract void create(Location location, String[] lines);
+
+	protected abstract void showTo(Player player);
+
+	protected abstract void hideFrom(Player player);
+
+	/**
+	 * Release what {@link #create(Location, String[])} set up, after it was
+	 * hidden from everyone
+	 */
+	protected abstract void destroy();
+
+	public Location getLocation() {
+		ValidationUtil.checkBoolean(location != null, "Cannot call getLocation when location is not set");
+		return location.clone();
+	}
+
+	public String[] getLines() {
+		return lines != null ? lines.clone() : new String[0];
+	}
+
+	@Override
+	public Map<String, Object> serialize() {
+		ValidationUtil.checkBoolean(location != null, "Cannot save hologram without location");
+		ValidationUtil.checkBoolean(lines != null, "Cannot save hologram without lines");
+
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("UUID", this.uniqueId.toString());
+		map.put("Lines", Arrays.asList(this.lines));
+		map.put("Last_Location", this.location);
+		return map;
+	}
+}
@@ -1,5 +1,6 @@
 package games.coob.smp.hologram;
 
+import games.coob.smp.settings.Settings;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 
@@ -8,12 +9,35 @@ import org.bukkit.entity.Player;
  */
 public final class HologramProvider {
 
+	/**
+	 * How holograms are displayed, set with Death_Storage.Hologram_Backend
+	 */
+	public enum Backend {
+
+		/** Invisible armor stands, one real entity per line */
+		ENTITY,
+
+		/** Client-side TextDisplay packets, no entity on the server */
+		PACKET
+	}
+
 	public static void sendTo(final Location location, final Player player, final String... linesOfText) {
-		final BukkitHologram hologram = new BukkitHologram();
+		final Hologram hologram = createHologram();
 		hologram.show(location, player, linesOfText);
 	}
 
-	public static BukkitHologram createHologram() {
+	/**
+	 * Create a hologram of the configured backend, armor stands when packets
+	 * are not available on this server
+	 */
+	public static Hologram createHologram() {
+		return createHologram(Settings.DeathStorageSection.HOLOGRAM_BACKEND);
+	}
+
+	public static Hologram createHologram(final Backend backend) {
+		if (backend == Backend.PACKET && PacketHologram.isAvailable())
+			return new PacketHologram();
+
 		return new BukkitHologram();
 	}
 }
@@ -1,6 +1,5 @@
 package games.coob.smp.hologram;
 
-import games.coob.smp.config.ConfigFile;
 import games.coob.smp.util.ValidationUtil;
 
 import java.util.ArrayList;
@@ -11,7 +10,7 @@ import java.util.UUID;
 /**
  * Registry for managing holograms using Paper 1.21+ API
  */
-public class HologramRegistry extends ConfigFile {
+public class HologramRegistry {
 
 	private static final HologramRegistry instance = new HologramRegistry();
 
@@ -22,13 +21,9 @@ public class HologramRegistry extends ConfigFile {
 	/**
 	 * Represents currently loaded Holograms
 	 */
-	private List<BukkitHologram> loadedHolograms = new ArrayList<>();
+	private List<Hologram> loadedHolograms = new ArrayList<>();
 
-	/**
-	 * Create a new registry and load
-	 */
 	private HologramRegistry() {
-		super("data.yml");
 	}
 
 
@@ -43,7 +38,7 @@ public class HologramRegistry extends ConfigFile {
 	/**
 	 * Registers a hologram in memory only (not persisted).
 	 */
-	public void register(final BukkitHologram hologram) {
+	public void register(final Hologram hologram) {
 		ValidationUtil.checkBoolean(!this.isRegistered(hologram), hologram + " is already registered!");
 		this.loadedHolograms.add(hologram);
 	}
@@ -51,28 +46,23 @@ public class HologramRegistry extends ConfigFile {
 	/**
 	 * Unregisters a hologram from memory (not persisted).
 	 */
-	public void unregister(final BukkitHologram hologram) {
+	public void unregister(final Hologram hologram) {
 		this.loadedHolograms.remove(hologram);
 	}
 
-	public boolean isRegistered(final BukkitHologram hologram) {
+	public boolean isRegistered(final Hologram hologram) {
 		return this.isRegistered(hologram.getUniqueId());
 	}
 
 	public boolean isRegistered(final UUID entityUniqueId) {
-		for (final BukkitHologram hologram : this.loadedHolograms)
+		for (final Hologram hologram : this.loadedHolograms)
 			if (hologram != null && hologram.getUniqueId().equals(entityUniqueId))
 				return true;
 
 		return false;
 	}
 
-	public List<BukkitHologram> getLoadedHolograms() {
+	public List<Hologram> getLoadedHolograms() {
 		return Collections.unmodifiableList(loadedHolograms);
 	}
-
-	@Override
-	protected void onSave() {
-		// Holograms are non-persistent; do not save to disk
-	}
 }
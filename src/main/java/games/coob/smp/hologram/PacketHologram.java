@@ -0,0 +1,170 @@
+package games.coob.smp.hologram;
+
+import games.coob.smp.SMPPlugin;
+import games.coob.smp.tracking.WaypointPacketSender;
+import games.coob.smp.util.ColorUtil;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * Hologram made of a virtual TextDisplay that only exists on the clients it
+ * is shown to. The server has no entity for it: nothing is ticked, saved with
+ * the chunk or followed by the entity tracker. Showing it sends the spawn and
+ * metadata packets to the player, hiding it the destroy packet.
+ * <p>
+ * The packets are built once per hologram through NMS classes found by
+ * reflection and called through method handles, and sent through the player
+ * connections {@link WaypointPacketSender} resolves. When they cannot be found,
+ * {@link #isAvailable()} is false and {@link HologramProvider} falls back to
+ * {@link BukkitHologram}.
+ */
+public class PacketHologram extends Hologram {
+
+	/** Display billboard constraint facing the viewer, like a name tag */
+	private static final byte BILLBOARD_CENTER = 3;
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static MethodHandle addEntityHandle;
+	private static MethodHandle setEntityDataHandle;
+	private static MethodHandle removeEntitiesHandle;
+	private static MethodHandle dataValueHandle;
+	private static MethodHandle asVanillaHandle;
+	private static Object textDisplayType;
+	private static Object zeroVelocity;
+	private static Object textAccessor;
+	private static Object billboardAccessor;
+
+	private static boolean initialized = false;
+	private static boolean available = false;
+
+	private final int entityId;
+	private Object spawnPacket;
+	private Object dataPacket;
+	private Object destroyPacket;
+
+	@SuppressWarnings("deprecation")
+	public PacketHologram() {
+		this.entityId = Bukkit.getUnsafe().nextEntityId();
+	}
+
+	/**
+	 * Check if this server has the classes needed for packet holograms.
+	 */
+	public static boolean isAvailable() {
+		if (!initialized)
+			initialize();
+		return available;
+	}
+
+	private static void initialize() {
+		initialized = true;
+
+		try {
+			final Class<?> entityTypeClass = Class.forName("net.minecraft.world.entity.EntityType");
+			final Class<?> vec3Class = Class.forName("net.minecraft.world.phys.Vec3");
+			textDisplayType = entityTypeClass.getField("TEXT_DISPLAY").get(null);
+			zeroVelocity = vec3Class.getField("ZERO").get(null);
+
+			final Class<?> addEntityClass = Class.forName("net.minecraft.network.protocol.game.ClientboundAddEntityPacket");
+			addEntityHandle = LOOKUP.unreflectConstructor(addEntityClass.getConstructor(int.class, UUID.class, double.class,
+							double.class, double.class, float.class, float.class, entityTypeClass, int.class, vec3Class, double.class))
+					.asType(MethodType.methodType(Object.class, int.class, UUID.class, double.class, double.class, double.class,
+							float.class, float.class, Object.class, int.class, Object.class, double.class));
+
+			final Class<?> setEntityDataClass = Class.forName("net.minecraft.network.protocol.game.ClientboundSetEntityDataPacket");
+			setEntityDataHandle = LOOKUP.unreflectConstructor(setEntityDataClass.getConstructor(int.class, List.class))
+					.asType(MethodType.methodType(Object.class, int.class, List.class));
+
+			final Class<?> removeEntitiesClass = Class.forName("net.minecraft.network.protocol.game.ClientboundRemoveEntitiesPacket");
+			removeEntitiesHandle = LOOKUP.unreflectConstructor(removeEntitiesClass.getConstructor(int[].class))
+					.asType(MethodType.methodType(Object.class, int[].class));
+
+			final Class<?> accessorClass = Class.forName("net.minecraft.network.syncher.EntityDataAccessor");
+			final Class<?> dataValueClass = Class.forName("net.minecraft.network.syncher.SynchedEntityData$DataValue");
+			dataValueHandle = LOOKUP.unreflect(dataValueClass.getMethod("create", accessorClass, Object.class))
+					.asType(MethodType.methodType(Object.class, Object.class, Object.class));
+
+			textAccessor = readStaticField(Class.forName("net.minecraft.world.entity.Display$TextDisplay"), "DATA_TEXT_ID");
+			billboardAccessor = readStaticField(Class.forName("net.minecraft.world.entity.Display"), "DATA_BILLBOARD_RENDER_CONSTRAINTS_ID");
+
+			final Class<?> adventureClass = Class.forName("io.papermc.paper.adventure.PaperAdventure");
+			asVanillaHandle = LOOKUP.unreflect(adventureClass.getMethod("asVanilla", Component.class))
+					.asType(MethodType.methodType(Object.class, Component.class));
+
+			available = true;
+
+		} catch (final ReflectiveOperationException | RuntimeException e) {
+			SMPPlugin.getInstance().getLogger().log(Level.INFO, "Packet holograms are not available on this server, using armor stands: " + e);
+		}
+	}
+
+	private static Object readStaticField(final Class<?> owner, final String name) throws ReflectiveOperationException {
+		final Field field = owner.getDeclaredField(name);
+		field.setAccessible(true);
+		return field.get(null);
+	}
+
+	@Override
+	protected void create(final Location location, final String[] lines) {
+		final List<Component> components = new ArrayList<>(lines.length);
+		for (final String line : lines)
+			components.add(ColorUtil.toComponent(line));
+
+		try {
+			spawnPacket = (Object) addEntityHandle.invokeExact(entityId, UUID.randomUUID(), location.getX(), location.getY(),
+					location.getZ(), 0F, 0F, textDisplayType, 0, zeroVelocity, 0D);
+
+			final Object text = (Object) asVanillaHandle.invokeExact(Component.join(JoinConfiguration.newlines(), components));
+			final List<Object> data = List.of(
+					(Object) dataValueHandle.invokeExact(textAccessor, text),
+					(Object) dataValueHandle.invokeExact(billboardAccessor, (Object) BILLBOARD_CENTER));
+			dataPacket = (Object) setEntityDataHandle.invokeExact(entityId, (List<?>) data);
+
+			destroyPacket = (Object) removeEntitiesHandle.invokeExact(new int[] { entityId });
+
+		} catch (final Throwable t) {
+			SMPPlugin.getInstance().getLogger().log(Level.WARNING, "Could not create hologram packets", t);
+		}
+	}
+
+	@Override
+	protected void showTo(final Player player) {
+		if (spawnPacket != null) {
+			send(player, spawnPacket);
+			send(player, dataPacket);
+		}
+	}
+
+	@Override
+	protected void hideFrom(final Player player) {
+		if (destroyPacket != null && player.isOnline())
+			send(player, destroyPacket);
+	}
+
+	@Override
+	protected void destroy() {
+		// Nothing exists on the server
+	}
+
+	/**
+	 * Send through the waypoint sender's cached connections. When that fails,
+	 * new holograms fall back to armor stands instead of failing on every packet.
+	 */
+	private static void send(final Player player, final Object packet) {
+		if (!WaypointPacketSender.sendRawPacket(player, packet) && available) {
+			available = false;
+			SMPPlugin.getInstance().getLogger().warning("Could not send hologram packets, new holograms use armor stands");
+		}
+	}
+}
@@ -1,10 +1,12 @@
 package games.coob.smp.listener;
 
 import games.coob.smp.PlayerCache;
-import games.coob.smp.hologram.BukkitHologram;
+import games.coob.smp.hologram.Hologram;
 import games.coob.smp.hologram.HologramProvider;
+import games.coob.smp.model.DeathChestData;
 import games.coob.smp.model.DeathChestRegistry;
 import games.coob.smp.settings.Settings;
+import games.coob.smp.util.PlayerPositions;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -22,10 +24,13 @@ import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.entity.PlayerDeathEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.WorldLoadEvent;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
 
@@ -77,7 +82,7 @@ public final class DeathChestListener implements Listener {
 			final Block block = location.getBlock();
 			final PlayerCache cache = PlayerCache.from(player);
 			final DeathChestRegistry registry = DeathChestRegistry.getInstance();
-			final BukkitHologram hologram = HologramProvider.createHologram();
+			final Hologram hologram = HologramProvider.createHologram();
 
 			if (player.getWorld().getEnvironment() == World.Environment.NORMAL)
 				cache.setDeathLocation(location);
@@ -110,13 +115,12 @@ public final class DeathChestListener implements Listener {
 			String hologramLine = chestOwnerMessage(Settings.DeathStorageSection.HOLOGRAM_TEXT, player);
 			hologram.ensureCreated(hologramLocation, hologramLine);
 
-			for (final Player closePlayer : Bukkit.getOnlinePlayers()) {
-				if (closePlayer.getWorld().equals(block.getWorld())
-						&& closePlayer.getLocation()
-								.distance(hologramLocation) <= Settings.DeathStorageSection.HOLOGRAM_VISIBLE_RANGE) {
-					hologram.show(hologramLocation, closePlayer, hologramLine);
-				}
-			}
+			final List<Player> closePlayers = new ArrayList<>();
+			PlayerPositions.getPlayersWithin(block.getWorld(), hologramLocation.getX(), hologramLocation.getY(), hologramLocation.getZ(),
+					Settings.DeathStorageSection.HOLOGRAM_VISIBLE_RANGE, closePlayers);
+
+			for (final Player closePlayer : closePlayers)
+				hologram.show(hologramLocation, closePlayer, hologramLine);
 
 			inventory.setContents(drops);
 			cache.setDeathChestInventory(inventory);
@@ -141,21 +145,19 @@ public final class DeathChestListener implements Listener {
 		if (human instanceof Player) {
 			final DeathChestRegistry registry = DeathChestRegistry.getInstance();
 
-			for (final Location location : registry.getLocations()) {
-				final Block block = registry.getBlock(location);
+			// Items may have been taken out, rewrite that chest's stored inventory
+			registry.markInventoryChanged(event.getInventory());
 
-				if (registry.getInventory(block).isEmpty()) {
-					block.setType(Material.AIR);
+			// Only the chest of the closed inventory can have been emptied
+			final DeathChestData deathChestData = registry.getDeathChestData(event.getInventory());
 
-					final BukkitHologram hologram = registry.getHologram(block);
-					if (hologram != null) {
-						// Hide from all players and remove armor stands
-						hologram.removeAll();
-					}
+			if (deathChestData != null && deathChestData.getInventory().isEmpty()) {
+				final Block block = deathChestData.getLocation().getBlock();
 
-					registry.unregister(block);
-				}
+				block.setType(Material.AIR);
 
+				// Also hides its hologram from all players
+				registry.unregister(block);
 			}
 		}
 	}
@@ -183,4 +185,10 @@ public final class DeathChestListener implements Listener {
 			}
 		}
 	}
+
+	@EventHandler
+	public void onWorldLoad(final WorldLoadEvent event) {
+		// Chests of worlds loaded after startup (e.g. by a world manager)
+		DeathChestRegistry.getInstance().loadWorld(event.getWorld());
+	}
 }
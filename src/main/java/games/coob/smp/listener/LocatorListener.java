@@ -4,20 +4,26 @@ import games.coob.smp.PlayerCache;
 import games.coob.smp.SMPPlugin;
 import games.coob.smp.settings.Settings;
 import games.coob.smp.tracking.PortalCache;
+import games.coob.smp.tracking.PortalStore;
 import games.coob.smp.tracking.TrackedTarget;
 import games.coob.smp.tracking.TrackingRegistry;
+import games.coob.smp.util.SchedulerUtil;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerPortalEvent;
 import org.bukkit.event.world.PortalCreateEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 
 import java.util.logging.Level;
 
@@ -63,11 +69,7 @@ public final class LocatorListener implements Listener {
         }
 
         // Invalidate cached portals for anyone tracking this player
-        for (java.util.UUID trackerUUID : TrackingRegistry.getActiveTrackers()) {
-            Player tracker = org.bukkit.Bukkit.getPlayer(trackerUUID);
-            if (tracker == null || !tracker.isOnline())
-                continue;
-
+        for (Player tracker : TrackingRegistry.getTrackersOf(player.getUniqueId())) {
             PlayerCache trackerCache = PlayerCache.from(tracker);
             TrackedTarget target = trackerCache.getTrackedTarget(player.getUniqueId());
             if (target != null) {
@@ -162,6 +164,34 @@ public final class LocatorListener implements Listener {
         }
     }
 
+    /**
+     * Drop cached portals whose frame or portal blocks were broken. Checked a
+     * tick later, once the portal blocks have been removed by physics.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        Block block = event.getBlock();
+        Material type = block.getType();
+
+        if (type == Material.OBSIDIAN || type == Material.NETHER_PORTAL
+                || type == Material.END_PORTAL_FRAME || type == Material.END_PORTAL) {
+            SchedulerUtil.runLater(1, () -> PortalCache.revalidate(block));
+        }
+    }
+
+    /**
+     * Load the saved portal index of worlds loaded after startup.
+     */
+    @EventHandler
+    public void onWorldLoad(WorldLoadEvent event) {
+        PortalStore.getInstance().load(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        PortalStore.getInstance().saveIfChanged(event.getWorld());
+    }
+
     private Location centerLocation(Location loc) {
         return new Location(
                 loc.getWorld(),
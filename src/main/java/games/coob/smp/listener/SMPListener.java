@@ -2,14 +2,11 @@ package games.coob.smp.listener;
 
 import de.slikey.effectlib.effect.*;
 import games.coob.smp.PlayerCache;
-import games.coob.smp.SMPPlugin;
-import games.coob.smp.hologram.BukkitHologram;
-import games.coob.smp.model.DeathChestRegistry;
+import games.coob.smp.hologram.Hologram;
 import games.coob.smp.model.Effects;
 import games.coob.smp.settings.Settings;
 import games.coob.smp.task.LocatorTask;
 import games.coob.smp.tracking.LocatorBarManager;
-import games.coob.smp.tracking.TrackedTarget;
 import games.coob.smp.tracking.TrackingRegistry;
 import games.coob.smp.tracking.WaypointPacketSender;
 import games.coob.smp.util.ColorUtil;
@@ -24,11 +21,13 @@ import org.bukkit.Location;
 import org.bukkit.Particle;
 import org.bukkit.entity.*;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.event.entity.PlayerDeathEvent;
 import org.bukkit.event.entity.ProjectileHitEvent;
 import org.bukkit.event.entity.ProjectileLaunchEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.potion.PotionEffect;
@@ -43,11 +42,27 @@ public final class SMPListener implements Listener { // TODO add the register ev
         return instance;
     }
 
+    /**
+     * Load the player's data while they are still logging in, off the main thread,
+     * so the join does not have to wait for storage
+     *
+     * @param event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(final AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            PlayerCache.prefetch(event.getUniqueId(), event.getName());
+        }
+    }
+
     @EventHandler
     public void onJoin(final PlayerJoinEvent event) {
         final Player player = event.getPlayer();
         PlayerCache cache = PlayerCache.from(player);
 
+        // Let the players this one tracks find them as a tracker
+        cache.indexTrackedPlayers();
+
         // Initialize waypoint attributes (sets base values once)
         // Then hide locator bar by default (will be enabled when tracking starts)
         if (Settings.LocatorSection.ENABLE_TRACKING) {
@@ -257,7 +272,6 @@ public final class SMPListener implements Listener { // TODO add the register ev
     public void onPlayerQuit(final PlayerQuitEvent event) {
         final Player player = event.getPlayer();
         final PlayerCache cache = PlayerCache.from(player);
-        final DeathChestRegistry deathChestRegistry = DeathChestRegistry.getInstance();
 
         if (cache.isDrawingAxe()) {
             player.removePotionEffect(PotionEffectType.SLOWNESS);
@@ -269,41 +283,44 @@ public final class SMPListener implements Listener { // TODO add the register ev
         TrackingRegistry.stopTracking(player.getUniqueId());
         LocatorTask.cleanupPlayer(player.getUniqueId());
         LocatorBarManager.cleanupPlayer(player.getUniqueId());
+        WaypointPacketSender.cleanupPlayer(player.getUniqueId());
 
         // Disable waypoint transmission so others can't track this player anymore
         LocatorBarManager.disableTransmit(player);
 
+        // An offline player is not tracking anyone
+        cache.unindexTrackedPlayers();
+
         // Notify players who were tracking this player (using new multi-tracking
         // system)
-        for (java.util.UUID trackerUUID : TrackingRegistry.getActiveTrackers()) {
-            Player tracker = Bukkit.getPlayer(trackerUUID);
-            if (tracker == null || !tracker.isOnline())
-                continue;
-
+        for (Player tracker : TrackingRegistry.getTrackersOf(player.getUniqueId())) {
+            java.util.UUID trackerUUID = tracker.getUniqueId();
             PlayerCache trackerCache = PlayerCache.from(tracker);
-            TrackedTarget target = trackerCache.getTrackedTarget(player.getUniqueId());
 
-            if (target != null) {
-                // Remove the offline player from tracking
-                trackerCache.removeTrackedPlayer(player.getUniqueId());
+            // Team trackers keep the team, the member drops out of it on their next refresh
+            if (trackerCache.getTrackedTarget(player.getUniqueId()) == null) {
                 WaypointPacketSender.removeWaypoint(tracker,
-                        WaypointPacketSender.generateWaypointId(trackerUUID, player.getUniqueId()));
-                ColorUtil.sendMessage(tracker, "&c" + player.getName() + " &chas gone offline. Tracking stopped.");
-
-                // If not tracking anything anymore, stop completely
-                if (!trackerCache.isTracking()) {
-                    TrackingRegistry.stopTracking(trackerUUID);
-                    LocatorBarManager.disableReceive(tracker);
-                    LocatorBarManager.clearTarget(tracker);
-                    LocatorTask.cleanupPlayer(trackerUUID);
-                    WaypointPacketSender.clearWaypoint(tracker);
-                }
+                        WaypointPacketSender.generateWaypointId(player.getUniqueId()));
+                continue;
+            }
+
+            // Remove the offline player from tracking
+            trackerCache.removeTrackedPlayer(player.getUniqueId());
+            WaypointPacketSender.removeWaypoint(tracker,
+                    WaypointPacketSender.generateWaypointId(player.getUniqueId()));
+            ColorUtil.sendMessage(tracker, "&c" + player.getName() + " &chas gone offline. Tracking stopped.");
+
+            // If not tracking anything anymore, stop completely
+            if (!trackerCache.isTracking()) {
+                TrackingRegistry.stopTracking(trackerUUID);
+                LocatorBarManager.disableReceive(tracker);
+                LocatorBarManager.clearTarget(tracker);
+                LocatorTask.cleanupPlayer(trackerUUID);
+                WaypointPacketSender.clearWaypoint(tracker);
             }
         }
 
-        for (final BukkitHologram hologram : deathChestRegistry.getCachedHolograms())
-            if (player.hasMetadata(hologram.getUniqueId().toString()))
-                player.removeMetadata(hologram.getUniqueId().toString(), SMPPlugin.getInstance());
+        Hologram.removeViewer(player);
 
     }
 
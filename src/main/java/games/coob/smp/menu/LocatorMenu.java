@@ -1,5 +1,6 @@
 package games.coob.smp.menu;
 
+import games.coob.smp.tracking.TrackingRegistry;
 import games.coob.smp.util.ItemCreator;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
@@ -29,6 +30,8 @@ public final class LocatorMenu extends SimpleMenu {
                 "",
                 "&r&eClick to open menu").make());
 
+        int trackerCount = TrackingRegistry.getTrackerCount(player.getUniqueId());
+
         inventory.setItem(INFO_BUTTON_SLOT, ItemCreator.of(
                 Material.CLOCK,
                 "&r&e&lWho's tracking me",
@@ -36,6 +39,8 @@ public final class LocatorMenu extends SimpleMenu {
                 "&r&7See who is tracking you.",
                 "&r&7Click to revoke.",
                 "",
+                "&r&7Tracked by &f" + trackerCount + " &7player" + (trackerCount != 1 ? "s" : ""),
+                "",
                 "&r&eClick to open").make());
     }
 
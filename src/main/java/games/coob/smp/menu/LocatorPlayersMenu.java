@@ -149,7 +149,7 @@ public class LocatorPlayersMenu extends SimpleMenu {
 					// Stop tracking this player
 					cache.removeTrackedPlayer(clickedPlayer.getUniqueId());
 					WaypointPacketSender.removeWaypoint(viewer,
-							WaypointPacketSender.generateWaypointId(viewer.getUniqueId(), clickedPlayer.getUniqueId()));
+							WaypointPacketSender.generateWaypointId(clickedPlayer.getUniqueId()));
 					if (!cache.isTracking()) {
 						TrackingRegistry.stopTracking(viewer.getUniqueId());
 						LocatorBarManager.disableReceive(viewer);
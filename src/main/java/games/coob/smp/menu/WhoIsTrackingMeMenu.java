@@ -1,9 +1,8 @@
 package games.coob.smp.menu;
 
-import games.coob.smp.PlayerCache;
+import games.coob.smp.tracking.TrackingRegistry;
 import games.coob.smp.tracking.TrackingRequestManager;
 import games.coob.smp.util.ItemCreator;
-import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.event.inventory.ClickType;
@@ -31,13 +30,7 @@ public final class WhoIsTrackingMeMenu extends SimpleMenu {
 
     private void refreshTrackers() {
         trackers.clear();
-        for (Player p : Bukkit.getOnlinePlayers()) {
-            if (p.equals(viewer)) continue;
-            PlayerCache cache = PlayerCache.from(p);
-            if (cache.getTrackedTarget(viewer.getUniqueId()) != null) {
-                trackers.add(p);
-            }
-        }
+        trackers.addAll(TrackingRegistry.getTrackersOf(viewer.getUniqueId()));
     }
 
     private void setupItems() {
@@ -1,72 +1,105 @@
 package games.coob.smp.model;
 
 import games.coob.smp.PlayerCache;
-import games.coob.smp.config.ConfigFile;
-import games.coob.smp.config.SerializedMap;
-import games.coob.smp.hologram.BukkitHologram;
+import games.coob.smp.SMPPlugin;
+import games.coob.smp.hologram.Hologram;
+import games.coob.smp.hologram.HologramProvider;
 import games.coob.smp.settings.Settings;
+import games.coob.smp.storage.Storage;
+import games.coob.smp.storage.StoredDeathChest;
+import games.coob.smp.util.InventoryCodec;
 import games.coob.smp.util.ValidationUtil;
 import lombok.Getter;
+import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.block.Block;
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
 
-public class DeathChestRegistry extends ConfigFile {
+public class DeathChestRegistry {
 
 	@Getter
     private static final DeathChestRegistry instance = new DeathChestRegistry();
 
-    private Set<DeathChestData> registeredDeathChests = new HashSet<>();
+	/** Death chests by world and packed block position, see {@link #blockKey(int, int, int)}. */
+	private final Map<UUID, Map<Long, DeathChestData>> registeredDeathChests = new HashMap<>();
+	/** Death chests by their inventory, to find the chest of an inventory a player closed. */
+	private final Map<Inventory, DeathChestData> chestsByInventory = new IdentityHashMap<>();
 	/** Non-persistent holograms, created when players are in range. */
-	private final Map<Location, BukkitHologram> hologramCache = new HashMap<>();
+	private final Map<Location, Hologram> hologramCache = new HashMap<>();
+	/** Death chests by world and chunk key, see {@link #getChestsNear(World, int, int, int, Collection)}. */
+	private final Map<UUID, Map<Long, List<DeathChestData>>> chunkIndex = new HashMap<>();
+
+	/** Death chests added or removed since the last {@link #pollChangedChests()}. */
+	private final List<DeathChestData> changedChests = new ArrayList<>();
 
 	private DeathChestRegistry() {
-		super("data.yml");
-	}
-
-	@Override
-	protected void onLoad() {
-		this.registeredDeathChests = new HashSet<>();
-		ConfigurationSection section = getConfig().getConfigurationSection("Death_Chests");
-		if (section != null) {
-			for (String key : section.getKeys(false)) {
-				try {
-					Map<String, Object> mapData = section.getConfigurationSection(key).getValues(true);
-					SerializedMap map = SerializedMap.of(mapData);
-					DeathChestData data = DeathChestData.deserialize(map);
-					this.registeredDeathChests.add(data);
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+		for (final World world : Bukkit.getWorlds())
+			loadWorld(world);
+	}
+
+	/**
+	 * Load the death chests stored for the given world. Called for every world on
+	 * startup and for worlds loaded afterwards; chests already known are skipped.
+	 */
+	public void loadWorld(final World world) {
+		final List<StoredDeathChest> storedChests;
+
+		try {
+			storedChests = Storage.getBackend().loadDeathChests(world.getName());
+		} catch (IOException e) {
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not load death chests of " + world.getName(), e);
+			return;
+		}
+
+		for (final StoredDeathChest stored : storedChests) {
+			final Location location = new Location(world, stored.x(), stored.y(), stored.z());
+
+			if (find(world, stored.x(), stored.y(), stored.z()) != null)
+				continue;
+
+			try {
+				final DeathChestData data = new DeathChestData();
+
+				data.setLocation(location);
+				data.setUuid(stored.owner());
+				data.setInventory(InventoryCodec.decode(stored.inventory()));
+
+				this.add(data);
+			} catch (IOException e) {
+				SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not load death chest " + stored.getStorageKey(), e);
 			}
 		}
 	}
 
-	@Override
-	protected void onSave() {
-		List<Map<String, Object>> serialized = new ArrayList<>();
-		for (DeathChestData data : registeredDeathChests) {
-			serialized.add(data.serialize());
-		}
-		getConfig().set("Death_Chests", serialized);
+	/**
+	 * Encode the chest's inventory and hand it to the storage backend
+	 */
+	private void save(final DeathChestData data) {
+		final Location location = data.getLocation();
+
+		Storage.getBackend().saveDeathChest(new StoredDeathChest(location.getWorld().getName(), location.getBlockX(),
+				location.getBlockY(), location.getBlockZ(), data.getUuid(),
+				InventoryCodec.encode(data.getInventory(), Settings.DeathStorageSection.INVENTORY_COMPRESSION)));
 	}
 
 	/**
 	 * Register a death chest. Optionally cache an existing hologram (e.g. created on death)
 	 * so it is reused; holograms are non-persistent and only shown within radius.
 	 */
-	public void register(final Block block, final Player player, final BukkitHologram initialHologram) {
+	public void register(final Block block, final Player player, final Hologram initialHologram) {
 		final DeathChestData deathChestData = new DeathChestData();
 		final PlayerCache cache = PlayerCache.from(player);
 
@@ -76,54 +109,148 @@ public class DeathChestRegistry extends ConfigFile {
 		deathChestData.setLocation(block.getLocation());
 		deathChestData.setUuid(player.getUniqueId());
 
-		this.registeredDeathChests.add(deathChestData);
+		this.add(deathChestData);
 		if (initialHologram != null) {
 			this.hologramCache.put(block.getLocation(), initialHologram);
 		}
-		this.save();
+		this.save(deathChestData);
 	}
 
 	public void unregister(final Block block) {
-		Location loc = block.getLocation();
-		BukkitHologram cached = hologramCache.remove(loc);
+		final Map<Long, DeathChestData> chests = this.registeredDeathChests.get(block.getWorld().getUID());
+		final DeathChestData deathChestData = chests == null ? null : chests.remove(blockKey(block.getX(), block.getY(), block.getZ()));
+
+		if (deathChestData == null)
+			return;
+
+		final Location loc = deathChestData.getLocation();
+		final Hologram cached = hologramCache.remove(loc);
 		if (cached != null) {
 			cached.removeAll();
 		}
-		this.registeredDeathChests.removeIf(deathChestData -> deathChestData.getLocation().getBlock().equals(block));
-		this.save();
+
+		this.chestsByInventory.remove(deathChestData.getInventory());
+		this.unindex(deathChestData);
+		Storage.getBackend().deleteDeathChest(loc.getWorld().getName(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
 	}
 
-	public boolean isRegistered(final Block block) {
-		for (final DeathChestData deathChestData : this.registeredDeathChests) {
-			if (deathChestData.getLocation().equals(block.getLocation()))
-				return true;
-		}
+	private void add(final DeathChestData data) {
+		final Location location = data.getLocation();
+
+		this.registeredDeathChests.computeIfAbsent(location.getWorld().getUID(), k -> new HashMap<>())
+				.put(blockKey(location.getBlockX(), location.getBlockY(), location.getBlockZ()), data);
+		this.chestsByInventory.put(data.getInventory(), data);
+		this.index(data);
+	}
+
+	private DeathChestData find(final World world, final int x, final int y, final int z) {
+		final Map<Long, DeathChestData> chests = this.registeredDeathChests.get(world.getUID());
+
+		return chests == null ? null : chests.get(blockKey(x, y, z));
+	}
+
+	private DeathChestData find(final Block block) {
+		return find(block.getWorld(), block.getX(), block.getY(), block.getZ());
+	}
+
+	/**
+	 * Pack block coordinates into one long: 26 bits x, 26 bits z, 12 bits y (like vanilla BlockPos)
+	 */
+	private static long blockKey(final int x, final int y, final int z) {
+		return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+	}
+
+	private void index(final DeathChestData data) {
+		final Location location = data.getLocation();
+
+		this.chunkIndex.computeIfAbsent(location.getWorld().getUID(), k -> new HashMap<>())
+				.computeIfAbsent(chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4), k -> new ArrayList<>(1))
+				.add(data);
+		this.changedChests.add(data);
+	}
+
+	private void unindex(final DeathChestData data) {
+		final Location location = data.getLocation();
+		final Map<Long, List<DeathChestData>> chunks = this.chunkIndex.get(location.getWorld().getUID());
+
+		if (chunks == null)
+			return;
+
+		final long key = chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+		final List<DeathChestData> chests = chunks.get(key);
+
+		if (chests != null && chests.remove(data) && chests.isEmpty())
+			chunks.remove(key);
+
+		this.changedChests.add(data);
+	}
+
+	/**
+	 * Take the death chests added or removed since the last call, so the players
+	 * around them can look up their nearby chests again
+	 */
+	public List<DeathChestData> pollChangedChests() {
+		if (this.changedChests.isEmpty())
+			return Collections.emptyList();
+
+		final List<DeathChestData> changed = new ArrayList<>(this.changedChests);
+		this.changedChests.clear();
+
+		return changed;
+	}
+
+	private static long chunkKey(final int chunkX, final int chunkZ) {
+		return (long) chunkX << 32 | (chunkZ & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Add the death chests in the chunks within the given number of chunks of
+	 * the center chunk to the result list
+	 */
+	public void getChestsNear(final World world, final int chunkX, final int chunkZ, final int chunkRadius, final Collection<DeathChestData> result) {
+		final Map<Long, List<DeathChestData>> chunks = this.chunkIndex.get(world.getUID());
+
+		if (chunks == null)
+			return;
+
+		for (int x = chunkX - chunkRadius; x <= chunkX + chunkRadius; x++)
+			for (int z = chunkZ - chunkRadius; z <= chunkZ + chunkRadius; z++) {
+				final List<DeathChestData> chests = chunks.get(chunkKey(x, z));
 
-		return false;
+				if (chests != null)
+					result.addAll(chests);
+			}
 	}
 
-	public List<Location> getLocations() {
-		final List<Location> locations = new ArrayList<>();
+	/**
+	 * Store the inventory of the death chest owning it again, e.g. after items were taken out
+	 */
+	public void markInventoryChanged(final Inventory inventory) {
+		final DeathChestData deathChestData = this.chestsByInventory.get(inventory);
 
-		for (final DeathChestData deathChestData : this.registeredDeathChests)
-			locations.add(deathChestData.getLocation());
+		if (deathChestData != null)
+			this.save(deathChestData);
+	}
 
-		return locations;
+	public boolean isRegistered(final Block block) {
+		return find(block) != null;
 	}
 
 	public Inventory getInventory(final Block block) {
-		for (final DeathChestData deathChestData : this.registeredDeathChests)
-			if (deathChestData.getLocation().equals(block.getLocation()))
-				return deathChestData.getInventory();
+		final DeathChestData deathChestData = find(block);
 
-		return null;
+		return deathChestData != null ? deathChestData.getInventory() : null;
 	}
 
 	public DeathChestData getDeathChestData(final Block block) {
-		for (final DeathChestData data : this.registeredDeathChests)
-			if (data.getLocation().getBlock().equals(block))
-				return data;
-		return null;
+		return find(block);
+	}
+
+	/**
+	 * The death chest holding this inventory, or null if it is not one
+	 */
+	public DeathChestData getDeathChestData(final Inventory inventory) {
+		return this.chestsByInventory.get(inventory);
 	}
 
 	/**
@@ -131,33 +258,21 @@ public class DeathChestRegistry extends ConfigFile {
 	 * Holograms are created on demand and only shown to players within
 	 * {@link Settings.DeathStorageSection#HOLOGRAM_VISIBLE_RANGE}.
 	 */
-	public BukkitHologram getHologram(final Block block) {
-		DeathChestData data = getDeathChestData(block);
-		if (data == null) return null;
-
+	public Hologram getHologram(final DeathChestData data) {
 		Location loc = data.getLocation();
-		BukkitHologram cached = hologramCache.get(loc);
+		Hologram cached = hologramCache.get(loc);
 		if (cached != null) return cached;
 
-		Location holoLoc = block.getLocation().clone().add(0.5, 1.0, 0.5);
+		Location holoLoc = loc.clone().add(0.5, 1.0, 0.5);
 		String line = Settings.DeathStorageSection.HOLOGRAM_TEXT.replace("{player}", data.getOwnerName());
-		BukkitHologram hologram = new BukkitHologram();
+		Hologram hologram = HologramProvider.createHologram();
 		hologram.ensureCreated(holoLoc, line);
 		hologramCache.put(loc, hologram);
 		return hologram;
 	}
 
-	/** All cached (non-persistent) holograms, for cleanup. */
-	public Collection<BukkitHologram> getCachedHolograms() {
-		return new ArrayList<>(hologramCache.values());
-	}
-
-	public Block getBlock(final Location location) {
-		for (final DeathChestData deathChestData : this.registeredDeathChests) {
-			if (deathChestData.getLocation().equals(location))
-				return deathChestData.getLocation().getBlock();
-		}
-
-		return null;
+	/** The hologram of this death chest if it was created, without creating it. */
+	public Hologram getCachedHologram(final DeathChestData data) {
+		return hologramCache.get(data.getLocation());
 	}
 }
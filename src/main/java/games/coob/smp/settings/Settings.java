@@ -1,6 +1,9 @@
 package games.coob.smp.settings;
 
 import games.coob.smp.config.ConfigFile;
+import games.coob.smp.hologram.HologramProvider;
+import games.coob.smp.tracking.LodScheduler;
+import games.coob.smp.util.InventoryCodec;
 import org.bukkit.Material;
 import org.bukkit.configuration.file.FileConfiguration;
 
@@ -42,6 +45,7 @@ public final class Settings extends ConfigFile {
 		CombatSection.load(config);
 		TpSection.load(config);
 		DuelSection.load(config);
+		StorageSection.load(config);
 	}
 
 	// Death Storage Section
@@ -50,6 +54,8 @@ public final class Settings extends ConfigFile {
 		public static Material STORAGE_MATERIAL;
 		public static String HOLOGRAM_TEXT;
 		public static int HOLOGRAM_VISIBLE_RANGE;
+		public static HologramProvider.Backend HOLOGRAM_BACKEND;
+		public static InventoryCodec.Compression INVENTORY_COMPRESSION;
 
 		public static void load(FileConfiguration config) {
 			ENABLE_DEATH_STORAGE = config.getBoolean("Death_Storage.Enable_Death_Storage", true);
@@ -60,6 +66,20 @@ public final class Settings extends ConfigFile {
 			}
 			HOLOGRAM_TEXT = config.getString("Death_Storage.Hologram_Text", "&6{player}'s loot");
 			HOLOGRAM_VISIBLE_RANGE = config.getInt("Death_Storage.Hologram_Visible_Range", 20);
+
+			String backendStr = config.getString("Death_Storage.Hologram_Backend", "PACKET");
+			try {
+				HOLOGRAM_BACKEND = HologramProvider.Backend.valueOf(backendStr.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				HOLOGRAM_BACKEND = HologramProvider.Backend.PACKET;
+			}
+
+			String compressionStr = config.getString("Death_Storage.Inventory_Compression", "NONE");
+			try {
+				INVENTORY_COMPRESSION = InventoryCodec.Compression.valueOf(compressionStr.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				INVENTORY_COMPRESSION = InventoryCodec.Compression.NONE;
+			}
 		}
 	}
 
@@ -70,6 +90,12 @@ public final class Settings extends ConfigFile {
 		// ENABLE_TRACKING is the inverse - if locator bar is enabled, custom tracking
 		// is disabled
 		public static boolean ENABLE_TRACKING;
+		public static int UPDATE_PERIOD_TICKS;
+		public static int MAX_UPDATE_INTERVAL_TICKS;
+		public static long TICK_BUDGET_NANOS;
+		public static int WAYPOINT_MOVE_THRESHOLD;
+		public static double WAYPOINT_DRIFT_TOLERANCE;
+		public static boolean ALLOW_TEAM_TRACKING;
 
 		public static void load(FileConfiguration config) {
 			ENABLE_LOCATOR_BAR = config.getBoolean("Locator_Toggle.Enable_Locator_Bar", false);
@@ -77,6 +103,13 @@ public final class Settings extends ConfigFile {
 			// ENABLE_TRACKING is the inverse - if locator bar is enabled, custom tracking
 			// is disabled
 			ENABLE_TRACKING = !ENABLE_LOCATOR_BAR;
+			UPDATE_PERIOD_TICKS = Math.max(1, config.getInt("Locator_Toggle.Update_Period_Ticks", 10));
+			MAX_UPDATE_INTERVAL_TICKS = Math.max(1, Math.min(LodScheduler.MAX_INTERVAL_LIMIT,
+					config.getInt("Locator_Toggle.Max_Update_Interval_Ticks", 40)));
+			TICK_BUDGET_NANOS = Math.max(50, config.getLong("Locator_Toggle.Tick_Budget_Micros", 2000)) * 1000L;
+			WAYPOINT_MOVE_THRESHOLD = Math.max(1, config.getInt("Locator_Toggle.Waypoint_Move_Threshold", 3));
+			WAYPOINT_DRIFT_TOLERANCE = Math.max(0.5, config.getDouble("Locator_Toggle.Waypoint_Drift_Tolerance", 2.0));
+			ALLOW_TEAM_TRACKING = config.getBoolean("Locator_Toggle.Allow_Team_Tracking", false);
 		}
 	}
 
@@ -300,4 +333,27 @@ public final class Settings extends ConfigFile {
 			LOOT_PHASE
 		}
 	}
+
+	// Storage Section
+	public static class StorageSection {
+		public static StorageType BACKEND;
+		public static String SQLITE_FILE;
+		public static int CACHE_IDLE_MINUTES;
+
+		public static void load(FileConfiguration config) {
+			String backendStr = config.getString("Storage.Backend", "YAML");
+			try {
+				BACKEND = StorageType.valueOf(backendStr.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				BACKEND = StorageType.YAML;
+			}
+			SQLITE_FILE = config.getString("Storage.SQLite.File", "data.db");
+			CACHE_IDLE_MINUTES = Math.max(1, config.getInt("Storage.Cache_Idle_Minutes", 15));
+		}
+
+		public enum StorageType {
+			YAML,
+			SQLITE
+		}
+	}
 }
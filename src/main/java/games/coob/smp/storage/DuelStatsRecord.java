@@ -0,0 +1,29 @@
+package games.coob.smp.storage;
+
+import java.util.UUID;
+
+/**
+ * Duel statistics of one player, as stored by a {@link StorageBackend}
+ */
+public record DuelStatsRecord(UUID uniqueId, int wins, int losses, int streak, int bestStreak) {
+
+	public static DuelStatsRecord empty(final UUID uniqueId) {
+		return new DuelStatsRecord(uniqueId, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Statistics after one more win, extending the streak
+	 */
+	public DuelStatsRecord withWin() {
+		final int newStreak = streak + 1;
+
+		return new DuelStatsRecord(uniqueId, wins + 1, losses, newStreak, Math.max(bestStreak, newStreak));
+	}
+
+	/**
+	 * Statistics after one more loss, resetting the streak
+	 */
+	public DuelStatsRecord withLoss() {
+		return new DuelStatsRecord(uniqueId, wins, losses + 1, 0, bestStreak);
+	}
+}
@@ -0,0 +1,595 @@
+package games.coob.smp.storage;
+
+import games.coob.smp.SMPPlugin;
+import games.coob.smp.config.ConfigFile;
+import games.coob.smp.config.SaveQueue;
+import games.coob.smp.util.SchedulerUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of player data mutations.
+ * <p>
+ * Instead of rewriting a player's whole document, a change is appended as a
+ * small binary record (player, path, value). A dedicated thread writes every
+ * record waiting in the queue and then fsyncs once, so a burst of mutations
+ * costs a single sync. Periodically the journal is compacted: the documents of
+ * every player with journaled changes are saved as snapshots through the
+ * {@link StorageBackend}, after which the older journal segments are deleted.
+ * Segments left behind by a crash are replayed onto the stored documents on
+ * startup; a record torn by the crash fails its checksum and ends the replay
+ * of its segment.
+ * <p>
+ * Record layout: body length, body (player UUID, path, typed value), CRC32 of the body.
+ */
+public final class PlayerJournal {
+
+	private static final PlayerJournal instance = new PlayerJournal();
+
+	private static final String JOURNAL_FOLDER = "journal";
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	/** How often compaction is considered, in ticks */
+	private static final long CHECK_PERIOD_TICKS = 20;
+
+	/** Compact at least this often when anything was journaled */
+	private static final long COMPACT_PERIOD_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	/** Compact early once the current segment grows past this size */
+	private static final long COMPACT_SIZE_BYTES = 4L * 1024 * 1024;
+
+	private static final int TYPE_NULL = 0;
+	private static final int TYPE_LONG = 1;
+	private static final int TYPE_STRING = 2;
+	private static final int TYPE_LOCATION = 3;
+	private static final int TYPE_MAP_LIST = 4;
+
+	/** Records and writer commands ({@link Runnable}), in order */
+	private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+	/** Documents with journaled changes since the last compaction */
+	private final Map<UUID, ConfigFile> pendingSnapshots = new ConcurrentHashMap<>();
+
+	private File folder;
+	private Thread writerThread;
+	private volatile boolean running;
+	private BukkitTask compactTask;
+
+	/** Segment the writer thread appends to */
+	private FileChannel channel;
+	private long writerSegment;
+
+	/** Segment new records go to, as seen from the main thread */
+	private long currentSegment;
+	private final AtomicLong segmentBytes = new AtomicLong();
+	private long lastCompaction;
+
+	// Metrics
+	private final AtomicLong appendedRecords = new AtomicLong();
+	private final AtomicLong appendedBytes = new AtomicLong();
+	private final AtomicLong syncs = new AtomicLong();
+	private final AtomicLong failedWrites = new AtomicLong();
+	private long compactions;
+	private long replayedRecords;
+
+	private PlayerJournal() {
+	}
+
+	public static PlayerJournal getInstance() {
+		return instance;
+	}
+
+	// -------------------------------------------------------------------------
+	// Lifecycle
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Replay what a previous run left behind, then start journaling (call on
+	 * plugin enable, after the storage opened and before any player data is loaded)
+	 */
+	public void start() {
+		if (running)
+			return;
+
+		this.folder = new File(SMPPlugin.getInstance().getDataFolder(), JOURNAL_FOLDER);
+		this.folder.mkdirs();
+
+		final List<File> leftovers = listSegments();
+
+		replay(leftovers);
+
+		this.currentSegment = leftovers.isEmpty() ? 0 : getSegmentId(leftovers.get(leftovers.size() - 1)) + 1;
+		this.writerSegment = currentSegment;
+
+		try {
+			this.channel = openSegment(currentSegment);
+		} catch (final IOException e) {
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not open the player journal, saving whole documents instead", e);
+			return;
+		}
+
+		this.lastCompaction = System.currentTimeMillis();
+		this.running = true;
+		this.writerThread = new Thread(this::runWriter, "SMP Player Journal");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+		this.compactTask = SchedulerUtil.runTimer(CHECK_PERIOD_TICKS, CHECK_PERIOD_TICKS, this::compactIfDue);
+	}
+
+	/**
+	 * Write and sync every queued record, stop the writer and queue snapshots of
+	 * all journaled documents (call on plugin disable, before the save queue
+	 * shuts down). The segments are kept and replayed on the next start, which
+	 * is harmless since replaying a mutation twice yields the same document.
+	 */
+	public void shutdown() {
+		if (!running)
+			return;
+
+		compactTask.cancel();
+		running = false;
+
+		try {
+			writerThread.join(TimeUnit.SECONDS.toMillis(30));
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		closeChannel();
+
+		for (final ConfigFile document : pendingSnapshots.values())
+			document.save();
+
+		pendingSnapshots.clear();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	// -------------------------------------------------------------------------
+	// Appending
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Journal a single change of a player document. The document itself is
+	 * written on the next compaction. Falls back to saving the whole document
+	 * when the journal is not running.
+	 *
+	 * @param document The document the change belongs to, saved as snapshot on compaction
+	 * @param uniqueId The player
+	 * @param path     The path in the document
+	 * @param value    The new value: null, a number, a string, a location or a list of maps
+	 */
+	public void append(final ConfigFile document, final UUID uniqueId, final String path, final Object value) {
+		if (!running) {
+			document.save();
+			return;
+		}
+
+		final byte[] record = encode(uniqueId, path, value);
+
+		pendingSnapshots.put(uniqueId, document);
+		segmentBytes.addAndGet(record.length);
+		appendedRecords.incrementAndGet();
+		appendedBytes.addAndGet(record.length);
+		queue.add(record);
+	}
+
+	/**
+	 * Save the journaled document of the given player right away instead of on
+	 * the next compaction. The journal records stay until that compaction.
+	 *
+	 * @return True if the player had changes journaled since their last snapshot
+	 */
+	public boolean saveSnapshot(final UUID uniqueId) {
+		final ConfigFile document = pendingSnapshots.remove(uniqueId);
+
+		if (document == null)
+			return false;
+
+		document.save();
+		return true;
+	}
+
+	private void runWriter() {
+		final List<Object> batch = new ArrayList<>();
+
+		while (running || !queue.isEmpty()) {
+			try {
+				final Object first = queue.poll(1, TimeUnit.SECONDS);
+
+				if (first == null)
+					continue;
+
+				batch.add(first);
+				queue.drainTo(batch);
+
+				for (final Object entry : batch)
+					if (entry instanceof final byte[] record)
+						channel.write(ByteBuffer.wrap(record));
+					else
+						((Runnable) entry).run();
+
+				// One sync for the whole batch
+				channel.force(false);
+				syncs.incrementAndGet();
+
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+
+			} catch (final IOException e) {
+				failedWrites.incrementAndGet();
+				SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not write to the player journal", e);
+
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	// -------------------------------------------------------------------------
+	// Compaction
+	// -------------------------------------------------------------------------
+
+	private void compactIfDue() {
+		if (pendingSnapshots.isEmpty())
+			return;
+
+		if (segmentBytes.get() >= COMPACT_SIZE_BYTES || System.currentTimeMillis() - lastCompaction >= COMPACT_PERIOD_MILLIS)
+			compact();
+	}
+
+	/**
+	 * Start a new segment, save every journaled document as a snapshot and
+	 * delete the sealed segments once the snapshots are stored
+	 */
+	public void compact() {
+		if (!running)
+			return;
+
+		final long sealedSegment = currentSegment++;
+
+		segmentBytes.set(0);
+		lastCompaction = System.currentTimeMillis();
+		compactions++;
+		queue.add((Runnable) this::rotateSegment);
+
+		// Snapshots are taken after the rotation, so they contain every sealed record
+		for (final ConfigFile document : pendingSnapshots.values())
+			document.save();
+
+		pendingSnapshots.clear();
+
+		SaveQueue.getInstance().afterPendingWrites(() -> {
+			Storage.getBackend().flush();
+			queue.add((Runnable) () -> deleteSegmentsUpTo(sealedSegment));
+		});
+	}
+
+	private void rotateSegment() {
+		try {
+			channel.force(false);
+			channel.close();
+			channel = openSegment(++writerSegment);
+		} catch (final IOException e) {
+			failedWrites.incrementAndGet();
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not start a new player journal segment", e);
+		}
+	}
+
+	private void deleteSegmentsUpTo(final long segment) {
+		for (final File file : listSegments())
+			if (getSegmentId(file) <= segment && !file.delete())
+				SMPPlugin.getInstance().getLogger().warning("Could not delete compacted journal segment " + file.getName());
+	}
+
+	private FileChannel openSegment(final long segment) throws IOException {
+		return FileChannel.open(new File(folder, segment + SEGMENT_SUFFIX).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private void closeChannel() {
+		try {
+			if (channel != null) {
+				channel.force(false);
+				channel.close();
+			}
+		} catch (final IOException e) {
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not close the player journal", e);
+		}
+
+		channel = null;
+	}
+
+	private List<File> listSegments() {
+		final File[] files = folder.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+
+		if (files == null)
+			return new ArrayList<>();
+
+		final List<File> segments = new ArrayList<>(Arrays.asList(files));
+
+		segments.removeIf(file -> getSegmentId(file) < 0);
+		segments.sort(Comparator.comparingLong(PlayerJournal::getSegmentId));
+		return segments;
+	}
+
+	private static long getSegmentId(final File file) {
+		try {
+			return Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+		} catch (final NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	// -------------------------------------------------------------------------
+	// Replay
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Apply the records of the given segments, oldest first, onto the stored
+	 * player documents and delete the segments once the documents are stored
+	 */
+	private void replay(final List<File> segments) {
+		if (segments.isEmpty())
+			return;
+
+		final Map<UUID, List<Object[]>> mutations = new LinkedHashMap<>();
+
+		for (final File segment : segments)
+			readSegment(segment, mutations);
+
+		final StorageBackend backend = Storage.getBackend();
+
+		try {
+			for (final Map.Entry<UUID, List<Object[]>> entry : mutations.entrySet()) {
+				final YamlConfiguration document = new YamlConfiguration();
+				final String stored = backend.loadPlayer(entry.getKey());
+
+				if (stored != null)
+					document.loadFromString(stored);
+
+				for (final Object[] mutation : entry.getValue())
+					document.set((String) mutation[0], mutation[1]);
+
+				backend.savePlayer(entry.getKey(), document.saveToString());
+			}
+
+			backend.flush();
+
+		} catch (final IOException | InvalidConfigurationException e) {
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not replay the player journal, keeping it for the next start", e);
+			return;
+		}
+
+		for (final File segment : segments)
+			segment.delete();
+
+		SMPPlugin.getInstance().getLogger().info("Replayed " + replayedRecords + " journaled change(s) of " + mutations.size() + " player(s)");
+	}
+
+	private void readSegment(final File segment, final Map<UUID, List<Object[]>> mutations) {
+		final byte[] data;
+
+		try {
+			data = Files.readAllBytes(segment.toPath());
+		} catch (final IOException e) {
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not read journal segment " + segment.getName(), e);
+			return;
+		}
+
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+		try {
+			while (true) {
+				final int length;
+
+				try {
+					length = in.readInt();
+				} catch (final EOFException e) {
+					return; // Clean end of segment
+				}
+
+				if (length <= 0 || length > in.available() - Integer.BYTES)
+					throw new IOException("torn record");
+
+				final byte[] body = new byte[length];
+				in.readFully(body);
+
+				final CRC32 crc = new CRC32();
+				crc.update(body);
+
+				if ((int) crc.getValue() != in.readInt())
+					throw new IOException("checksum mismatch");
+
+				final DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+				final UUID uniqueId = new UUID(record.readLong(), record.readLong());
+				final String path = record.readUTF();
+				final Object value = readValue(record);
+
+				mutations.computeIfAbsent(uniqueId, k -> new ArrayList<>()).add(new Object[] { path, value });
+				replayedRecords++;
+			}
+
+		} catch (final IOException e) {
+			SMPPlugin.getInstance().getLogger().warning("Journal segment " + segment.getName() + " ends with an incomplete record ("
+					+ e.getMessage() + "), replaying what precedes it");
+		}
+	}
+
+	// -------------------------------------------------------------------------
+	// Encoding
+	// -------------------------------------------------------------------------
+
+	private static byte[] encode(final UUID uniqueId, final String path, final Object value) {
+		try {
+			final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(64);
+			final DataOutputStream body = new DataOutputStream(bodyBytes);
+
+			body.writeLong(uniqueId.getMostSignificantBits());
+			body.writeLong(uniqueId.getLeastSignificantBits());
+			body.writeUTF(path);
+			writeValue(body, value);
+
+			final byte[] bodyArray = bodyBytes.toByteArray();
+			final CRC32 crc = new CRC32();
+			crc.update(bodyArray);
+
+			final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(bodyArray.length + 2 * Integer.BYTES);
+			final DataOutputStream record = new DataOutputStream(recordBytes);
+
+			record.writeInt(bodyArray.length);
+			record.write(bodyArray);
+			record.writeInt((int) crc.getValue());
+
+			return recordBytes.toByteArray();
+
+		} catch (final IOException e) {
+			throw new IllegalStateException("Unable to encode journal record.", e);
+		}
+	}
+
+	private static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+		if (value == null)
+			out.writeByte(TYPE_NULL);
+
+		else if (value instanceof Long || value instanceof Integer) {
+			out.writeByte(TYPE_LONG);
+			out.writeLong(((Number) value).longValue());
+
+		} else if (value instanceof final String string) {
+			out.writeByte(TYPE_STRING);
+			out.writeUTF(string);
+
+		} else if (value instanceof final Location location) {
+			out.writeByte(TYPE_LOCATION);
+			out.writeUTF(location.getWorld() != null ? location.getWorld().getName() : "");
+			out.writeDouble(location.getX());
+			out.writeDouble(location.getY());
+			out.writeDouble(location.getZ());
+			out.writeFloat(location.getYaw());
+			out.writeFloat(location.getPitch());
+
+		} else if (value instanceof final List<?> list) {
+			out.writeByte(TYPE_MAP_LIST);
+			out.writeInt(list.size());
+
+			for (final Object element : list) {
+				final Map<?, ?> map = (Map<?, ?>) element;
+
+				out.writeInt(map.size());
+
+				for (final Map.Entry<?, ?> entry : map.entrySet()) {
+					out.writeUTF(String.valueOf(entry.getKey()));
+					out.writeUTF(String.valueOf(entry.getValue()));
+				}
+			}
+
+		} else
+			throw new IllegalArgumentException("Cannot journal " + value.getClass().getSimpleName() + " values");
+	}
+
+	private static Object readValue(final DataInputStream in) throws IOException {
+		final int type = in.readUnsignedByte();
+
+		switch (type) {
+			case TYPE_NULL:
+				return null;
+
+			case TYPE_LONG:
+				return in.readLong();
+
+			case TYPE_STRING:
+				return in.readUTF();
+
+			case TYPE_LOCATION: {
+				final String world = in.readUTF();
+
+				return new Location(world.isEmpty() ? null : Bukkit.getWorld(world), in.readDouble(), in.readDouble(), in.readDouble(),
+						in.readFloat(), in.readFloat());
+			}
+
+			case TYPE_MAP_LIST: {
+				final int size = in.readInt();
+				final List<Map<String, Object>> list = new ArrayList<>(size);
+
+				for (int i = 0; i < size; i++) {
+					final int entries = in.readInt();
+					final Map<String, Object> map = new LinkedHashMap<>();
+
+					for (int j = 0; j < entries; j++)
+						map.put(in.readUTF(), in.readUTF());
+
+					list.add(map);
+				}
+
+				return list;
+			}
+
+			default:
+				throw new IOException("unknown value type " + type);
+		}
+	}
+
+	// -------------------------------------------------------------------------
+	// Metrics
+	// -------------------------------------------------------------------------
+
+	public long getAppendedRecords() {
+		return appendedRecords.get();
+	}
+
+	public long getAppendedBytes() {
+		return appendedBytes.get();
+	}
+
+	/**
+	 * Number of fsyncs, each covering every record queued at that time
+	 */
+	public long getSyncs() {
+		return syncs.get();
+	}
+
+	public long getFailedWrites() {
+		return failedWrites.get();
+	}
+
+	public long getCompactions() {
+		return compactions;
+	}
+
+	public long getReplayedRecords() {
+		return replayedRecords;
+	}
+}
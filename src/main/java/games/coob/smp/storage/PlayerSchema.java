@@ -0,0 +1,208 @@
+package games.coob.smp.storage;
+
+import games.coob.smp.SMPPlugin;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Versions the layout of player documents. Every document carries the version
+ * it was written with under {@link #VERSION_KEY}; on startup the documents of
+ * an older version are upgraded in bulk, off the main thread, by running the
+ * migration steps in order. Once the backend remembers that all documents are
+ * current, later startups skip the scan.
+ * <p>
+ * A player loaded while the migration runs does not wait for all of it: their
+ * document is claimed with {@link #claimPlayer(UUID)} and upgraded by the
+ * loader with {@link #upgrade(ConfigurationSection)}, unless the migration is
+ * upgrading it at that moment, in which case only that document is waited for.
+ */
+public final class PlayerSchema {
+
+	public static final String VERSION_KEY = "Schema_Version";
+
+	/**
+	 * Upgrade steps, the step at index n turns a version n document into version n + 1
+	 */
+	private static final List<Migration> MIGRATIONS = List.of(
+			PlayerSchema::moveLegacyTracking);
+
+	public static final int CURRENT_VERSION = MIGRATIONS.size();
+
+	private static final CompletableFuture<Void> CLAIMED_BY_LOADER = CompletableFuture.completedFuture(null);
+
+	private static CompletableFuture<Void> migration = CompletableFuture.completedFuture(null);
+
+	/** Documents taken by the running migration or by a loader, done once the migration wrote them */
+	private static final Map<UUID, CompletableFuture<Void>> claimedDocuments = new ConcurrentHashMap<>();
+
+	private PlayerSchema() {
+	}
+
+	/**
+	 * Start upgrading the stored player documents on a background thread (call
+	 * on plugin enable, after the journal was replayed)
+	 */
+	public static void migrateAll() {
+		final StorageBackend backend = Storage.getBackend();
+
+		migration = CompletableFuture.runAsync(() -> upgradeStoredPlayers(backend), runnable -> {
+			final Thread thread = new Thread(runnable, "SMP Schema Migration");
+			thread.setDaemon(true);
+			thread.start();
+		}).whenComplete((result, error) -> claimedDocuments.clear());
+	}
+
+	/**
+	 * Take the player's document from the running migration before loading it,
+	 * so the migration does not write an upgraded copy over what the loader
+	 * saves later. The loader must then upgrade it itself. If the migration
+	 * is upgrading that document right now, wait for it to be written; the rest
+	 * of the migration is not waited for.
+	 */
+	public static void claimPlayer(final UUID uniqueId) {
+		if (migration.isDone())
+			return;
+
+		final CompletableFuture<Void> upgrading = claimedDocuments.putIfAbsent(uniqueId, CLAIMED_BY_LOADER);
+
+		if (upgrading != null)
+			upgrading.join();
+	}
+
+	private static void upgradeStoredPlayers(final StorageBackend backend) {
+		final SMPPlugin plugin = SMPPlugin.getInstance();
+
+		try {
+			final int storedVersion = backend.getPlayerSchemaVersion();
+
+			if (storedVersion >= CURRENT_VERSION) {
+				if (storedVersion > CURRENT_VERSION)
+					plugin.getLogger().warning("Player data was written by a newer version of the plugin (schema "
+							+ storedVersion + ", this version knows " + CURRENT_VERSION + ")");
+
+				return;
+			}
+
+			final long start = System.nanoTime();
+			int upgraded = 0;
+			int failed = 0;
+
+			for (final UUID uniqueId : backend.getStoredPlayers()) {
+				final CompletableFuture<Void> claim = new CompletableFuture<>();
+
+				// Loaded in the meantime, the loader upgraded and saves it
+				if (claimedDocuments.putIfAbsent(uniqueId, claim) != null)
+					continue;
+
+				try {
+					final String contents = backend.loadPlayer(uniqueId);
+
+					if (contents == null)
+						continue;
+
+					final YamlConfiguration document = new YamlConfiguration();
+					document.loadFromString(contents);
+
+					if (upgrade(document)) {
+						backend.savePlayer(uniqueId, document.saveToString());
+						upgraded++;
+					}
+
+				} catch (final IOException | InvalidConfigurationException e) {
+					plugin.getLogger().log(Level.SEVERE, "Could not upgrade player data of " + uniqueId, e);
+					failed++;
+
+				} finally {
+					claim.complete(null);
+				}
+			}
+
+			backend.flush();
+
+			// Scan again on the next start when something could not be upgraded
+			if (failed == 0)
+				backend.setPlayerSchemaVersion(CURRENT_VERSION);
+
+			if (upgraded > 0)
+				plugin.getLogger().info("Upgraded " + upgraded + " player document(s) to schema " + CURRENT_VERSION
+						+ " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+
+		} catch (final IOException e) {
+			plugin.getLogger().log(Level.SEVERE, "Could not upgrade stored player data", e);
+		}
+	}
+
+	/**
+	 * Run every migration step the document is missing
+	 *
+	 * @return True if the document changed
+	 */
+	public static boolean upgrade(final ConfigurationSection document) {
+		final int version = document.getInt(VERSION_KEY, 0);
+
+		if (version >= CURRENT_VERSION)
+			return false;
+
+		for (int step = version; step < CURRENT_VERSION; step++)
+			MIGRATIONS.get(step).upgrade(document);
+
+		document.set(VERSION_KEY, CURRENT_VERSION);
+		return true;
+	}
+
+	// -------------------------------------------------------------------------
+	// Steps
+	// -------------------------------------------------------------------------
+
+	/**
+	 * 0 to 1: single tracking through "Tracking_Location" (Death or Player) and
+	 * "Track_Player" became the "Tracked_Targets" list
+	 */
+	private static void moveLegacyTracking(final ConfigurationSection document) {
+		final String trackingLocation = document.getString("Tracking_Location");
+		final String trackedPlayer = document.getString("Track_Player");
+
+		document.set("Tracking_Location", null);
+		document.set("Track_Player", null);
+
+		if (!document.getMapList("Tracked_Targets").isEmpty())
+			return;
+
+		final List<Map<String, Object>> targets = new ArrayList<>();
+
+		if ("Death".equals(trackingLocation))
+			targets.add(Map.of("Type", "Death"));
+
+		else if (trackedPlayer != null)
+			try {
+				final Map<String, Object> target = new LinkedHashMap<>();
+
+				target.put("Type", "Player");
+				target.put("UUID", UUID.fromString(trackedPlayer).toString());
+				target.put("Color", "WHITE");
+				targets.add(target);
+
+			} catch (final IllegalArgumentException ignored) {
+				// Corrupted, nothing to track
+			}
+
+		if (!targets.isEmpty())
+			document.set("Tracked_Targets", targets);
+	}
+
+	@FunctionalInterface
+	private interface Migration {
+		void upgrade(ConfigurationSection document);
+	}
+}
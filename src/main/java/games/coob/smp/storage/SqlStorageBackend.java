@@ -0,0 +1,402 @@
+package games.coob.smp.storage;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import games.coob.smp.SMPPlugin;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Stores everything in an embedded SQLite database file.
+ * <p>
+ * Every statement runs on a single I/O thread, in the order it was requested:
+ * saves and deletes are queued and return right away, loads block the calling
+ * thread until their result is in, and therefore until every save queued before
+ * them is done. Callers on the main thread should only load what they cannot
+ * do without, or use {@link #submit(SqlFunction)} instead. With one thread
+ * running statements, the pool keeps a single connection open so it is never
+ * opened per statement.
+ */
+public final class SqlStorageBackend implements StorageBackend {
+
+	/** Statements per transaction when importing many rows at once */
+	static final int BATCH_SIZE = 500;
+
+	private static final String[] SCHEMA = {
+			"CREATE TABLE IF NOT EXISTS smp_players ("
+					+ "uuid CHAR(36) NOT NULL PRIMARY KEY, "
+					+ "data TEXT NOT NULL)",
+			"CREATE TABLE IF NOT EXISTS smp_duel_stats ("
+					+ "uuid CHAR(36) NOT NULL PRIMARY KEY, "
+					+ "wins INTEGER NOT NULL DEFAULT 0, "
+					+ "losses INTEGER NOT NULL DEFAULT 0, "
+					+ "streak INTEGER NOT NULL DEFAULT 0, "
+					+ "best_streak INTEGER NOT NULL DEFAULT 0)",
+			// The primary key doubles as the index for "chests in this world"
+			"CREATE TABLE IF NOT EXISTS smp_death_chests ("
+					+ "world VARCHAR(64) NOT NULL, "
+					+ "x INTEGER NOT NULL, "
+					+ "y INTEGER NOT NULL, "
+					+ "z INTEGER NOT NULL, "
+					+ "owner CHAR(36), "
+					+ "inventory BLOB NOT NULL, "
+					+ "PRIMARY KEY (world, x, y, z))",
+			"CREATE INDEX IF NOT EXISTS smp_death_chests_owner ON smp_death_chests (owner)",
+			"CREATE TABLE IF NOT EXISTS smp_meta ("
+					+ "key TEXT PRIMARY KEY, "
+					+ "value TEXT NOT NULL)"
+	};
+
+	/** Key in smp_meta holding the schema version of all player documents */
+	static final String PLAYER_SCHEMA_VERSION = "player_schema_version";
+
+	static final String SELECT_META = "SELECT value FROM smp_meta WHERE key = ?";
+	static final String UPSERT_META = "INSERT INTO smp_meta (key, value) VALUES (?, ?) "
+			+ "ON CONFLICT (key) DO UPDATE SET value = excluded.value";
+
+	static final String SELECT_PLAYER = "SELECT data FROM smp_players WHERE uuid = ?";
+	static final String SELECT_PLAYER_IDS = "SELECT uuid FROM smp_players";
+	static final String UPSERT_PLAYER = "INSERT INTO smp_players (uuid, data) VALUES (?, ?) "
+			+ "ON CONFLICT (uuid) DO UPDATE SET data = excluded.data";
+
+	static final String SELECT_DUEL_STATS = "SELECT wins, losses, streak, best_streak FROM smp_duel_stats WHERE uuid = ?";
+	static final String UPSERT_DUEL_STATS = "INSERT INTO smp_duel_stats (uuid, wins, losses, streak, best_streak) VALUES (?, ?, ?, ?, ?) "
+			+ "ON CONFLICT (uuid) DO UPDATE SET wins = excluded.wins, losses = excluded.losses, "
+			+ "streak = excluded.streak, best_streak = excluded.best_streak";
+
+	static final String SELECT_DEATH_CHESTS = "SELECT x, y, z, owner, inventory FROM smp_death_chests WHERE world = ?";
+	static final String UPSERT_DEATH_CHEST = "INSERT INTO smp_death_chests (world, x, y, z, owner, inventory) VALUES (?, ?, ?, ?, ?, ?) "
+			+ "ON CONFLICT (world, x, y, z) DO UPDATE SET owner = excluded.owner, inventory = excluded.inventory";
+	static final String DELETE_DEATH_CHEST = "DELETE FROM smp_death_chests WHERE world = ? AND x = ? AND y = ? AND z = ?";
+
+	private final File file;
+
+	private HikariDataSource dataSource;
+	private ExecutorService executor;
+	private Thread executorThread;
+
+	public SqlStorageBackend(final File file) {
+		this.file = file;
+	}
+
+	@Override
+	public String getName() {
+		return "SQLite (" + file.getName() + ")";
+	}
+
+	@Override
+	public void open() throws IOException {
+		file.getParentFile().mkdirs();
+
+		final HikariConfig config = new HikariConfig();
+
+		config.setPoolName("SMP SQLite");
+		config.setJdbcUrl("jdbc:sqlite:" + file.getAbsolutePath());
+		// Only the I/O thread ever takes a connection
+		config.setMaximumPoolSize(1);
+		// Passed to the SQLite driver as pragmas
+		config.addDataSourceProperty("journal_mode", "WAL");
+		config.addDataSourceProperty("synchronous", "NORMAL");
+		config.addDataSourceProperty("busy_timeout", "5000");
+
+		try {
+			this.dataSource = new HikariDataSource(config);
+
+			try (final Connection connection = dataSource.getConnection(); final Statement statement = connection.createStatement()) {
+				for (final String sql : SCHEMA)
+					statement.execute(sql);
+			}
+
+		} catch (final SQLException | RuntimeException e) {
+			if (dataSource != null)
+				dataSource.close();
+
+			throw new IOException("Could not open database " + file.getName(), e);
+		}
+
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "SMP Storage I/O");
+			thread.setDaemon(true);
+			executorThread = thread;
+			return thread;
+		});
+	}
+
+	@Override
+	public void close() {
+		if (executor == null)
+			return;
+
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+				SMPPlugin.getInstance().getLogger().severe("Timed out waiting for pending database writes");
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		dataSource.close();
+		executor = null;
+	}
+
+	@Override
+	public void flush() {
+		try {
+			query(connection -> null);
+		} catch (final IOException e) {
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not wait for pending database writes", e);
+		}
+	}
+
+	// -------------------------------------------------------------------------
+	// Players
+	// -------------------------------------------------------------------------
+
+	@Override
+	@Nullable
+	public String loadPlayer(final UUID uniqueId) throws IOException {
+		return query(connection -> {
+			try (final PreparedStatement statement = connection.prepareStatement(SELECT_PLAYER)) {
+				statement.setString(1, uniqueId.toString());
+
+				try (final ResultSet result = statement.executeQuery()) {
+					return result.next() ? result.getString(1) : null;
+				}
+			}
+		});
+	}
+
+	@Override
+	public void savePlayer(final UUID uniqueId, final String document) {
+		update(connection -> {
+			try (final PreparedStatement statement = connection.prepareStatement(UPSERT_PLAYER)) {
+				bindPlayer(statement, uniqueId, document);
+				statement.executeUpdate();
+			}
+		});
+	}
+
+	@Override
+	public List<UUID> getStoredPlayers() throws IOException {
+		return query(connection -> {
+			try (final PreparedStatement statement = connection.prepareStatement(SELECT_PLAYER_IDS);
+				 final ResultSet result = statement.executeQuery()) {
+				final List<UUID> players = new ArrayList<>();
+
+				while (result.next())
+					players.add(UUID.fromString(result.getString(1)));
+
+				return players;
+			}
+		});
+	}
+
+	@Override
+	public int getPlayerSchemaVersion() throws IOException {
+		return query(connection -> {
+			try (final PreparedStatement statement = connection.prepareStatement(SELECT_META)) {
+				statement.setString(1, PLAYER_SCHEMA_VERSION);
+
+				try (final ResultSet result = statement.executeQuery()) {
+					return result.next() ? Integer.parseInt(result.getString(1)) : 0;
+				}
+			}
+		});
+	}
+
+	@Override
+	public void setPlayerSchemaVersion(final int version) {
+		update(connection -> {
+			try (final PreparedStatement statement = connection.prepareStatement(UPSERT_META)) {
+				statement.setString(1, PLAYER_SCHEMA_VERSION);
+				statement.setString(2, String.valueOf(version));
+				statement.executeUpdate();
+			}
+		});
+	}
+
+	static void bindPlayer(final PreparedStatement statement, final UUID uniqueId, final String document) throws SQLException {
+		statement.setString(1, uniqueId.toString());
+		statement.setString(2, document);
+	}
+
+	// -------------------------------------------------------------------------
+	// Duel statistics
+	// -------------------------------------------------------------------------
+
+	@Override
+	public DuelStatsRecord loadDuelStats(final UUID uniqueId) throws IOException {
+		return query(connection -> {
+			try (final PreparedStatement statement = connection.prepareStatement(SELECT_DUEL_STATS)) {
+				statement.setString(1, uniqueId.toString());
+
+				try (final ResultSet result = statement.executeQuery()) {
+					return result.next()
+							? new DuelStatsRecord(uniqueId, result.getInt(1), result.getInt(2), result.getInt(3), result.getInt(4))
+							: DuelStatsRecord.empty(uniqueId);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void saveDuelStats(final DuelStatsRecord stats) {
+		update(connection -> {
+			try (final PreparedStatement statement = connection.prepareStatement(UPSERT_DUEL_STATS)) {
+				bindDuelStats(statement, stats);
+				statement.executeUpdate();
+			}
+		});
+	}
+
+	static void bindDuelStats(final PreparedStatement statement, final DuelStatsRecord stats) throws SQLException {
+		statement.setString(1, stats.uniqueId().toString());
+		statement.setInt(2, stats.wins());
+		statement.setInt(3, stats.losses());
+		statement.setInt(4, stats.streak());
+		statement.setInt(5, stats.bestStreak());
+	}
+
+	// -------------------------------------------------------------------------
+	// Death chests
+	// -------------------------------------------------------------------------
+
+	@Override
+	public List<StoredDeathChest> loadDeathChests(final String worldName) throws IOException {
+		return query(connection -> {
+			try (final PreparedStatement statement = connection.prepareStatement(SELECT_DEATH_CHESTS)) {
+				statement.setString(1, worldName);
+
+				try (final ResultSet result = statement.executeQuery()) {
+					final List<StoredDeathChest> chests = new ArrayList<>();
+
+					while (result.next()) {
+						final String owner = result.getString(4);
+
+						chests.add(new StoredDeathChest(worldName, result.getInt(1), result.getInt(2), result.getInt(3),
+								owner != null ? UUID.fromString(owner) : null, result.getBytes(5)));
+					}
+
+					return chests;
+				}
+			}
+		});
+	}
+
+	@Override
+	public void saveDeathChest(final StoredDeathChest chest) {
+		update(connection -> {
+			try (final PreparedStatement statement = connection.prepareStatement(UPSERT_DEATH_CHEST)) {
+				bindDeathChest(statement, chest);
+				statement.executeUpdate();
+			}
+		});
+	}
+
+	static void bindDeathChest(final PreparedStatement statement, final StoredDeathChest chest) throws SQLException {
+		statement.setString(1, chest.worldName());
+		statement.setInt(2, chest.x());
+		statement.setInt(3, chest.y());
+		statement.setInt(4, chest.z());
+		statement.setString(5, chest.owner() != null ? chest.owner().toString() : null);
+		statement.setBytes(6, chest.inventory());
+	}
+
+	@Override
+	public void deleteDeathChest(final String worldName, final int x, final int y, final int z) {
+		update(connection -> {
+			try (final PreparedStatement statement = connection.prepareStatement(DELETE_DEATH_CHEST)) {
+				statement.setString(1, worldName);
+				statement.setInt(2, x);
+				statement.setInt(3, y);
+				statement.setInt(4, z);
+				statement.executeUpdate();
+			}
+		});
+	}
+
+	// -------------------------------------------------------------------------
+	// Execution
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Run the given work with a pooled connection on the I/O thread
+	 *
+	 * @return A future completed with the result, or exceptionally with the {@link SQLException}
+	 */
+	<T> CompletableFuture<T> submit(final SqlFunction<T> work) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+
+		executor.execute(() -> {
+			try (final Connection connection = dataSource.getConnection()) {
+				future.complete(work.apply(connection));
+			} catch (final SQLException | RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * Run a read and wait for its result, blocking the calling thread behind
+	 * every statement queued before it
+	 */
+	private <T> T query(final SqlFunction<T> work) throws IOException {
+		// Already on the I/O thread, waiting for ourselves would never return
+		if (Thread.currentThread() == executorThread)
+			try (final Connection connection = dataSource.getConnection()) {
+				return work.apply(connection);
+			} catch (final SQLException e) {
+				throw new IOException(e);
+			}
+
+		try {
+			return submit(work).get();
+		} catch (final ExecutionException e) {
+			throw new IOException(e.getCause());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Queue a write, logging it if it fails
+	 */
+	private void update(final SqlConsumer work) {
+		submit(connection -> {
+			work.accept(connection);
+			return null;
+		}).exceptionally(throwable -> {
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not write to database " + file.getName(), throwable);
+			return null;
+		});
+	}
+
+	@FunctionalInterface
+	interface SqlFunction<T> {
+		T apply(Connection connection) throws SQLException;
+	}
+
+	@FunctionalInterface
+	private interface SqlConsumer {
+		void accept(Connection connection) throws SQLException;
+	}
+}
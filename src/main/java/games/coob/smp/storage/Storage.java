@@ -0,0 +1,66 @@
+package games.coob.smp.storage;
+
+import games.coob.smp.SMPPlugin;
+import games.coob.smp.settings.Settings;
+import games.coob.smp.util.ValidationUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+
+/**
+ * Holds the {@link StorageBackend} selected with Storage.Backend in settings.yml
+ */
+public final class Storage {
+
+	private static StorageBackend backend;
+
+	private Storage() {
+	}
+
+	/**
+	 * Open the configured backend (call on plugin enable, after the settings are loaded)
+	 *
+	 * @return False if it could not be opened, the plugin can't run without it
+	 */
+	public static boolean open() {
+		final StorageBackend selected = switch (Settings.StorageSection.BACKEND) {
+			case SQLITE -> createSqlBackend();
+			case YAML -> new YamlStorageBackend();
+		};
+
+		try {
+			selected.open();
+		} catch (final IOException e) {
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not open " + selected.getName() + " storage", e);
+			return false;
+		}
+
+		backend = selected;
+		SMPPlugin.getInstance().getLogger().info("Storing data with " + backend.getName());
+		return true;
+	}
+
+	/**
+	 * Write everything still pending (call on plugin disable, after the save queue shut down)
+	 */
+	public static void close() {
+		if (backend != null) {
+			backend.close();
+			backend = null;
+		}
+	}
+
+	public static StorageBackend getBackend() {
+		ValidationUtil.checkNotNull(backend, "Storage has not been opened");
+
+		return backend;
+	}
+
+	/**
+	 * A new, not yet opened, backend on the configured database file
+	 */
+	static SqlStorageBackend createSqlBackend() {
+		return new SqlStorageBackend(new File(SMPPlugin.getInstance().getDataFolder(), Settings.StorageSection.SQLITE_FILE));
+	}
+}
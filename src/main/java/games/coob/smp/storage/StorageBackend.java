@@ -0,0 +1,102 @@
+package games.coob.smp.storage;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Where player, duel and death chest data is persisted, selected with
+ * Storage.Backend in settings.yml.
+ * <p>
+ * Implementations own their threading: save and delete calls may return before
+ * the data is written, but a load always sees every save requested before it.
+ * Player documents may be loaded and saved from any thread, everything else is
+ * called from the main thread.
+ */
+public interface StorageBackend {
+
+	/**
+	 * Human readable name, for logs and /smp metrics
+	 */
+	String getName();
+
+	/**
+	 * Open files or connections (called once on plugin enable)
+	 *
+	 * @throws IOException If the storage can't be used
+	 */
+	void open() throws IOException;
+
+	/**
+	 * Write everything still pending and release resources (called on plugin disable)
+	 */
+	void close();
+
+	/**
+	 * Block until every save requested so far is stored
+	 */
+	void flush();
+
+	// -------------------------------------------------------------------------
+	// Players
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Load the YAML document holding a player's data
+	 *
+	 * @param uniqueId The player
+	 * @return The document, or null if nothing was stored for this player yet
+	 */
+	@Nullable
+	String loadPlayer(UUID uniqueId) throws IOException;
+
+	/**
+	 * Store the YAML document holding a player's data
+	 */
+	void savePlayer(UUID uniqueId, String document) throws IOException;
+
+	/**
+	 * Every player that has a stored document, in no particular order
+	 */
+	List<UUID> getStoredPlayers() throws IOException;
+
+	/**
+	 * The {@link PlayerSchema} version all stored player documents were upgraded to
+	 *
+	 * @return The version, 0 if none was stored yet
+	 */
+	int getPlayerSchemaVersion() throws IOException;
+
+	void setPlayerSchemaVersion(int version) throws IOException;
+
+	// -------------------------------------------------------------------------
+	// Duel statistics
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Load the duel statistics of a player, empty statistics if none were stored
+	 */
+	DuelStatsRecord loadDuelStats(UUID uniqueId) throws IOException;
+
+	void saveDuelStats(DuelStatsRecord stats);
+
+	// -------------------------------------------------------------------------
+	// Death chests
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Load the death chests placed in the given world
+	 *
+	 * @param worldName The world name
+	 * @return The chests, never null
+	 */
+	List<StoredDeathChest> loadDeathChests(String worldName) throws IOException;
+
+	/**
+	 * Insert or replace the death chest at the chest's block location
+	 */
+	void saveDeathChest(StoredDeathChest chest);
+
+	void deleteDeathChest(String worldName, int x, int y, int z);
+}
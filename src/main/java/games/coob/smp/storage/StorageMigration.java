@@ -0,0 +1,161 @@
+package games.coob.smp.storage;
+
+import games.coob.smp.SMPPlugin;
+import games.coob.smp.config.SaveQueue;
+import games.coob.smp.util.ColorUtil;
+import games.coob.smp.util.SchedulerUtil;
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * One-shot copy of the YAML data files into the SQLite database, run with
+ * /smp migrate-storage while the YAML backend is active.
+ * <p>
+ * The shared documents (duel stats, death chest index) are read on the main
+ * thread, then the player files are streamed from disk by the database I/O
+ * thread and everything is inserted in batched transactions. Rows that already
+ * exist in the database are replaced, so the migration can be run again.
+ */
+public final class StorageMigration {
+
+	private static boolean running;
+
+	private StorageMigration() {
+	}
+
+	public static void migrate(final CommandSender sender) {
+		if (!(Storage.getBackend() instanceof final YamlStorageBackend yaml)) {
+			ColorUtil.sendMessage(sender, "&cData is already stored with " + Storage.getBackend().getName()
+					+ ". Run this while Storage.Backend is YAML.");
+			return;
+		}
+
+		if (running) {
+			ColorUtil.sendMessage(sender, "&cA storage migration is already running.");
+			return;
+		}
+
+		final SqlStorageBackend sql = Storage.createSqlBackend();
+
+		try {
+			sql.open();
+		} catch (final IOException e) {
+			SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not open the database for migration", e);
+			ColorUtil.sendMessage(sender, "&cCould not open the database: " + e.getMessage());
+			return;
+		}
+
+		running = true;
+		ColorUtil.sendMessage(sender, "&eMigrating YAML data to " + sql.getName() + "...");
+
+		final List<DuelStatsRecord> duelStats = yaml.loadAllDuelStats();
+		final List<StoredDeathChest> deathChests = yaml.loadAllDeathChests();
+
+		// Player files must be up to date on disk before they are streamed
+		SaveQueue.getInstance().afterPendingWrites(() -> sql.submit(connection -> copy(connection, yaml, duelStats, deathChests))
+				.whenComplete((result, throwable) -> SchedulerUtil.runTask(() -> {
+					sql.close();
+					running = false;
+
+					if (throwable != null) {
+						SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Storage migration failed", throwable);
+						ColorUtil.sendMessage(sender, "&cStorage migration failed: " + throwable.getMessage());
+						return;
+					}
+
+					ColorUtil.sendMessage(sender, "&aMigrated &f" + result.players() + "&a player(s), &f" + result.duelStats()
+							+ "&a duel stat(s) and &f" + result.deathChests() + "&a death chest(s).");
+					ColorUtil.sendMessage(sender, "&7Set Storage.Backend to SQLITE in settings.yml and restart the server to use it.");
+				})));
+	}
+
+	private static Result copy(final Connection connection, final YamlStorageBackend yaml,
+			final List<DuelStatsRecord> duelStats, final List<StoredDeathChest> deathChests) throws SQLException {
+		connection.setAutoCommit(false);
+
+		try {
+			final int players = copyRows(connection, SqlStorageBackend.UPSERT_PLAYER, yaml.getStoredPlayers(), (statement, uniqueId) -> {
+				final String document;
+
+				try {
+					document = yaml.loadPlayer(uniqueId);
+				} catch (final IOException e) {
+					SMPPlugin.getInstance().getLogger().log(Level.WARNING, "Skipping unreadable player file of " + uniqueId, e);
+					return false;
+				}
+
+				if (document == null)
+					return false;
+
+				SqlStorageBackend.bindPlayer(statement, uniqueId, document);
+				return true;
+			});
+
+			final int stats = copyRows(connection, SqlStorageBackend.UPSERT_DUEL_STATS, duelStats, (statement, entry) -> {
+				SqlStorageBackend.bindDuelStats(statement, entry);
+				return true;
+			});
+
+			final int chests = copyRows(connection, SqlStorageBackend.UPSERT_DEATH_CHEST, deathChests, (statement, chest) -> {
+				SqlStorageBackend.bindDeathChest(statement, chest);
+				return true;
+			});
+
+			return new Result(players, stats, chests);
+
+		} catch (final SQLException | RuntimeException e) {
+			connection.rollback();
+			throw e;
+
+		} finally {
+			connection.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * Insert the rows with one statement, committing every {@link SqlStorageBackend#BATCH_SIZE} rows
+	 *
+	 * @return The number of rows inserted
+	 */
+	private static <T> int copyRows(final Connection connection, final String sql, final Iterable<T> rows, final RowBinder<T> binder) throws SQLException {
+		int count = 0;
+
+		try (final PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (final T row : rows) {
+				if (!binder.bind(statement, row))
+					continue;
+
+				statement.addBatch();
+
+				if (++count % SqlStorageBackend.BATCH_SIZE == 0) {
+					statement.executeBatch();
+					connection.commit();
+				}
+			}
+
+			statement.executeBatch();
+			connection.commit();
+		}
+
+		return count;
+	}
+
+	@FunctionalInterface
+	private interface RowBinder<T> {
+
+		/**
+		 * @return False to skip this row
+		 */
+		boolean bind(PreparedStatement statement, T row) throws SQLException;
+	}
+
+	private record Result(int players, int duelStats, int deathChests) {
+	}
+}
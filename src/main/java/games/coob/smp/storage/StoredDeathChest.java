@@ -0,0 +1,22 @@
+package games.coob.smp.storage;
+
+import java.util.UUID;
+
+/**
+ * A death chest as stored by a {@link StorageBackend}: its block position, owner
+ * and inventory encoded with {@link games.coob.smp.util.InventoryCodec}.
+ * Holds no Bukkit objects so it can be handed to an I/O thread.
+ */
+public record StoredDeathChest(String worldName, int x, int y, int z, UUID owner, byte[] inventory) {
+
+	/**
+	 * Unique, file name safe key of this chest, derived from its block position
+	 */
+	public String getStorageKey() {
+		return getStorageKey(worldName, x, y, z);
+	}
+
+	public static String getStorageKey(final String worldName, final int x, final int y, final int z) {
+		return worldName + "_" + x + "_" + y + "_" + z;
+	}
+}
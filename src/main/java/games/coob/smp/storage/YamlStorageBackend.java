@@ -0,0 +1,438 @@
+package games.coob.smp.storage;
+
+import games.coob.smp.SMPPlugin;
+import games.coob.smp.config.ConfigFile;
+import games.coob.smp.config.DocumentSection;
+import games.coob.smp.config.SaveQueue;
+import games.coob.smp.config.SerializedMap;
+import games.coob.smp.settings.Settings;
+import games.coob.smp.util.InventoryCodec;
+import games.coob.smp.util.InventorySerialization;
+import org.bukkit.Location;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Stores everything in files inside the plugin folder: one YAML file per player
+ * in players/, duel statistics in duel-stats.yml, and the death chest index in
+ * the "Death_Chests" section of data.yml with each chest's inventory in its own binary file in death_chests/.
+ * <p>
+ * Writes go through the {@link SaveQueue}.
+ */
+public final class YamlStorageBackend implements StorageBackend {
+
+	/** Folder inside the plugin folder holding one data file per player */
+	private static final String PLAYERS_FOLDER = "players";
+
+	/** File in the players folder holding the schema version of all player files */
+	private static final String SCHEMA_VERSION_FILE = ".schema";
+
+	/** Folder inside the plugin folder holding one binary inventory file per chest */
+	private static final String INVENTORY_FOLDER = "death_chests";
+
+	/** The file shared by the death chest index and legacy player data */
+	private static final String SHARED_FILE = "data.yml";
+
+	/** The folder holding the player files, the plugin folder outside of tests */
+	private final File dataFolder;
+
+	private DuelStatsFile duelStatsFile;
+	private DeathChestFile deathChestFile;
+
+	public YamlStorageBackend() {
+		this(SMPPlugin.getInstance().getDataFolder());
+	}
+
+	YamlStorageBackend(final File dataFolder) {
+		this.dataFolder = dataFolder;
+	}
+
+	@Override
+	public String getName() {
+		return "YAML";
+	}
+
+	@Override
+	public void open() {
+		this.duelStatsFile = new DuelStatsFile();
+		this.deathChestFile = new DeathChestFile();
+	}
+
+	@Override
+	public void close() {
+		// Files are flushed by the save queue
+		if (deathChestFile != null)
+			deathChestFile.release();
+	}
+
+	@Override
+	public void flush() {
+		// Player files are written synchronously, the rest is flushed by the save queue
+	}
+
+	// -------------------------------------------------------------------------
+	// Players
+	// -------------------------------------------------------------------------
+
+	@Override
+	@Nullable
+	public String loadPlayer(final UUID uniqueId) throws IOException {
+		final File file = getPlayerFile(uniqueId);
+
+		return file.exists() ? Files.readString(file.toPath()) : null;
+	}
+
+	@Override
+	public void savePlayer(final UUID uniqueId, final String document) throws IOException {
+		SaveQueue.writeAtomically(getPlayerFile(uniqueId), document);
+	}
+
+	@Override
+	public List<UUID> getStoredPlayers() {
+		final File[] files = new File(dataFolder, PLAYERS_FOLDER).listFiles((dir, name) -> name.endsWith(".yml"));
+		final List<UUID> players = new ArrayList<>();
+
+		if (files != null)
+			for (final File file : files)
+				try {
+					players.add(UUID.fromString(file.getName().substring(0, file.getName().length() - ".yml".length())));
+				} catch (final IllegalArgumentException ignored) {
+					// Not a player file
+				}
+
+		return players;
+	}
+
+	@Override
+	public int getPlayerSchemaVersion() throws IOException {
+		final File file = getSchemaVersionFile();
+
+		try {
+			return file.exists() ? Integer.parseInt(Files.readString(file.toPath()).trim()) : 0;
+		} catch (final NumberFormatException e) {
+			throw new IOException("Invalid schema version in " + file.getName(), e);
+		}
+	}
+
+	@Override
+	public void setPlayerSchemaVersion(final int version) throws IOException {
+		SaveQueue.writeAtomically(getSchemaVersionFile(), String.valueOf(version));
+	}
+
+	private File getSchemaVersionFile() {
+		return new File(dataFolder, PLAYERS_FOLDER + "/" + SCHEMA_VERSION_FILE);
+	}
+
+	/**
+	 * Get the data file of the given player, relative to the plugin folder
+	 */
+	public static String getPlayerFileName(final UUID uniqueId) {
+		return PLAYERS_FOLDER + "/" + uniqueId + ".yml";
+	}
+
+	private File getPlayerFile(final UUID uniqueId) {
+		return new File(dataFolder, getPlayerFileName(uniqueId));
+	}
+
+	/**
+	 * Move the legacy "Players" section of the shared data.yml into one file per
+	 * player. Players that already have their own file are left untouched.
+	 * Call this once on startup before any cache or registry touches data.yml.
+	 */
+	public static void migrateSharedData() {
+		final SMPPlugin plugin = SMPPlugin.getInstance();
+
+		if (!new File(plugin.getDataFolder(), SHARED_FILE).exists())
+			return;
+
+		final DocumentSection shared = new DocumentSection(SHARED_FILE, "Players");
+
+		try {
+			if (!shared.exists())
+				return;
+
+			final ConfigurationSection players = shared.getSection();
+
+			int migrated = 0;
+
+			for (final String key : players.getKeys(false)) {
+				final ConfigurationSection section = players.getConfigurationSection(key);
+
+				if (section == null)
+					continue;
+
+				try {
+					final File playerFile = new File(plugin.getDataFolder(), getPlayerFileName(UUID.fromString(key)));
+
+					if (playerFile.exists())
+						continue;
+
+					final YamlConfiguration playerConfig = new YamlConfiguration();
+
+					for (final Map.Entry<String, Object> entry : section.getValues(true).entrySet())
+						if (!(entry.getValue() instanceof ConfigurationSection))
+							playerConfig.set(entry.getKey(), entry.getValue());
+
+					playerFile.getParentFile().mkdirs();
+					playerConfig.save(playerFile);
+					migrated++;
+
+				} catch (final IllegalArgumentException ignored) {
+					// Not a player UUID, drop it with the rest of the section
+				} catch (final IOException e) {
+					plugin.getLogger().log(Level.SEVERE, "Could not migrate player data of " + key + ", keeping data.yml untouched", e);
+					return;
+				}
+			}
+
+			shared.set(null);
+			shared.save();
+
+			plugin.getLogger().info("Migrated " + migrated + " player(s) from data.yml to the " + PLAYERS_FOLDER + " folder");
+
+		} finally {
+			// Keeps the parsed file around for the death chest index while the removal is pending
+			shared.release();
+		}
+	}
+
+	// -------------------------------------------------------------------------
+	// Duel statistics
+	// -------------------------------------------------------------------------
+
+	@Override
+	public DuelStatsRecord loadDuelStats(final UUID uniqueId) {
+		final ConfigurationSection section = duelStatsFile.getConfig().getConfigurationSection("Players." + uniqueId);
+
+		return section == null ? DuelStatsRecord.empty(uniqueId) : readDuelStats(uniqueId, section);
+	}
+
+	@Override
+	public void saveDuelStats(final DuelStatsRecord stats) {
+		final String path = "Players." + stats.uniqueId();
+
+		duelStatsFile.getConfig().set(path + ".wins", stats.wins());
+		duelStatsFile.getConfig().set(path + ".losses", stats.losses());
+		duelStatsFile.getConfig().set(path + ".streak", stats.streak());
+		duelStatsFile.getConfig().set(path + ".best_streak", stats.bestStreak());
+		duelStatsFile.save();
+	}
+
+	/**
+	 * The statistics of every player in duel-stats.yml
+	 */
+	public List<DuelStatsRecord> loadAllDuelStats() {
+		final ConfigurationSection players = duelStatsFile.getConfig().getConfigurationSection("Players");
+		final List<DuelStatsRecord> stats = new ArrayList<>();
+
+		if (players != null)
+			for (final String key : players.getKeys(false)) {
+				final ConfigurationSection section = players.getConfigurationSection(key);
+
+				if (section != null)
+					try {
+						stats.add(readDuelStats(UUID.fromString(key), section));
+					} catch (final IllegalArgumentException ignored) {
+						// Not a player UUID
+					}
+			}
+
+		return stats;
+	}
+
+	private DuelStatsRecord readDuelStats(final UUID uniqueId, final ConfigurationSection section) {
+		return new DuelStatsRecord(uniqueId, section.getInt("wins", 0), section.getInt("losses", 0),
+				section.getInt("streak", 0), section.getInt("best_streak", 0));
+	}
+
+	// -------------------------------------------------------------------------
+	// Death chests
+	// -------------------------------------------------------------------------
+
+	@Override
+	public List<StoredDeathChest> loadDeathChests(final String worldName) {
+		final List<StoredDeathChest> chests = new ArrayList<>();
+
+		for (final StoredDeathChest chest : deathChestFile.chests.values())
+			if (chest.worldName().equals(worldName))
+				chests.add(chest);
+
+		return chests;
+	}
+
+	/**
+	 * Every death chest in data.yml, whatever its world
+	 */
+	public List<StoredDeathChest> loadAllDeathChests() {
+		return new ArrayList<>(deathChestFile.chests.values());
+	}
+
+	@Override
+	public void saveDeathChest(final StoredDeathChest chest) {
+		deathChestFile.chests.put(chest.getStorageKey(), chest);
+		deathChestFile.changedInventories.add(chest.getStorageKey());
+		deathChestFile.save();
+	}
+
+	@Override
+	public void deleteDeathChest(final String worldName, final int x, final int y, final int z) {
+		final String key = StoredDeathChest.getStorageKey(worldName, x, y, z);
+
+		if (deathChestFile.chests.remove(key) == null)
+			return;
+
+		deathChestFile.changedInventories.remove(key);
+		SaveQueue.getInstance().delete(getInventoryFile(key));
+		deathChestFile.save();
+	}
+
+	private static File getInventoryFile(final String storageKey) {
+		return new File(SMPPlugin.getInstance().getDataFolder(), INVENTORY_FOLDER + "/" + storageKey + ".inv");
+	}
+
+	// -------------------------------------------------------------------------
+	// Files
+	// -------------------------------------------------------------------------
+
+	private static final class DuelStatsFile extends ConfigFile {
+
+		private DuelStatsFile() {
+			super("duel-stats.yml");
+		}
+	}
+
+	/**
+	 * The death chest index in data.yml. Chests are kept in memory with their
+	 * encoded inventory; only inventories that changed since the last save are
+	 * written to their side file, before the index itself.
+	 */
+	private static final class DeathChestFile extends DocumentSection {
+
+		private final Map<String, StoredDeathChest> chests = new LinkedHashMap<>();
+		private final Set<String> changedInventories = new HashSet<>();
+
+		/** Entries that could not be read, such as legacy chests in worlds not loaded yet, written back as they were */
+		private final List<Map<?, ?>> unconverted = new ArrayList<>();
+
+		private DeathChestFile() {
+			super(SHARED_FILE, "Death_Chests");
+
+			load();
+		}
+
+		private void load() {
+			boolean legacy = false;
+
+			for (final Map<?, ?> mapData : getMapList()) {
+				try {
+					@SuppressWarnings("unchecked")
+					final SerializedMap map = SerializedMap.of((Map<String, Object>) mapData);
+					final boolean legacyEntry = map.getString("World") == null;
+					final StoredDeathChest chest = legacyEntry ? readLegacyChest(map) : readChest(map);
+
+					if (chest == null) {
+						this.unconverted.add(mapData);
+						continue;
+					}
+
+					this.chests.put(chest.getStorageKey(), chest);
+
+					if (legacyEntry) {
+						this.changedInventories.add(chest.getStorageKey());
+						legacy = true;
+					}
+
+				} catch (final IOException | RuntimeException e) {
+					SMPPlugin.getInstance().getLogger().log(Level.SEVERE, "Could not load death chest " + mapData, e);
+					this.unconverted.add(mapData);
+				}
+			}
+
+			// Rewrite chests from the old format right away, keeping the ones that did not convert
+			if (legacy)
+				save();
+		}
+
+		private StoredDeathChest readChest(final SerializedMap map) throws IOException {
+			final String world = map.getString("World");
+			final int x = getInt(map, "X");
+			final int y = getInt(map, "Y");
+			final int z = getInt(map, "Z");
+			final byte[] inventory = Files.readAllBytes(getInventoryFile(StoredDeathChest.getStorageKey(world, x, y, z)).toPath());
+
+			return new StoredDeathChest(world, x, y, z, map.getUUID("UUID"), inventory);
+		}
+
+		/**
+		 * Entries written before this backend existed store a Bukkit location, and
+		 * before inventories moved to side files also a Base64 "Inventory"
+		 */
+		@Nullable
+		private StoredDeathChest readLegacyChest(final SerializedMap map) throws IOException {
+			final Location location = map.getLocation("Location");
+
+			if (location == null || location.getWorld() == null)
+				return null;
+
+			final String world = location.getWorld().getName();
+			final int x = location.getBlockX();
+			final int y = location.getBlockY();
+			final int z = location.getBlockZ();
+			final String inventoryString = map.getString("Inventory");
+			final byte[] inventory = inventoryString != null
+					? InventoryCodec.encode(InventorySerialization.fromBase64(inventoryString), Settings.DeathStorageSection.INVENTORY_COMPRESSION)
+					: Files.readAllBytes(getInventoryFile(StoredDeathChest.getStorageKey(world, x, y, z)).toPath());
+
+			return new StoredDeathChest(world, x, y, z, map.getUUID("UUID"), inventory);
+		}
+
+		private static int getInt(final SerializedMap map, final String key) {
+			final Object value = map.asMap().get(key);
+
+			if (!(value instanceof Number))
+				throw new IllegalArgumentException("Missing " + key);
+
+			return ((Number) value).intValue();
+		}
+
+		@Override
+		protected void onSave() {
+			for (final String key : changedInventories) {
+				final StoredDeathChest chest = chests.get(key);
+
+				if (chest != null)
+					SaveQueue.getInstance().write(getInventoryFile(key), chest.inventory());
+			}
+
+			changedInventories.clear();
+
+			final List<Map<?, ?>> serialized = new ArrayList<>(unconverted);
+
+			for (final StoredDeathChest chest : chests.values()) {
+				final Map<String, Object> map = new LinkedHashMap<>();
+
+				map.put("World", chest.worldName());
+				map.put("X", chest.x());
+				map.put("Y", chest.y());
+				map.put("Z", chest.z());
+				map.put("UUID", chest.owner() != null ? chest.owner().toString() : null);
+				serialized.add(map);
+			}
+
+			set(serialized);
+		}
+	}
+}
@@ -1,45 +1,135 @@
 package games.coob.smp.task;
 
-import games.coob.smp.hologram.BukkitHologram;
+import games.coob.smp.hologram.Hologram;
+import games.coob.smp.model.DeathChestData;
 import games.coob.smp.model.DeathChestRegistry;
 import games.coob.smp.settings.Settings;
-import org.bukkit.Bukkit;
+import games.coob.smp.util.PlayerPositions;
 import org.bukkit.Location;
-import org.bukkit.block.Block;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
 /**
  * Manages non-persistent death chest holograms: they appear only when a player
  * is within {@link Settings.DeathStorageSection#HOLOGRAM_VISIBLE_RANGE}.
+ * <p>
+ * Each player keeps the death chests of the chunks around them, looked up in
+ * the registry's chunk index only when they cross into another chunk or a
+ * chest is added or removed within their chunk radius. Runs in between only
+ * check the distance to those chests, and skip players who did not move at all.
  */
 public final class HologramTask extends BukkitRunnable {
 
+	private final Map<UUID, Viewer> viewers = new HashMap<>();
+
 	@Override
 	public void run() {
 		final DeathChestRegistry registry = DeathChestRegistry.getInstance();
 		final int range = Settings.DeathStorageSection.HOLOGRAM_VISIBLE_RANGE;
 		final double rangeSq = (double) range * range;
+		final int chunkRadius = (range + 15) >> 4;
+
+		// Only the players with an added or removed chest in their chunk radius look their chests up again
+		for (final DeathChestData changed : registry.pollChangedChests()) {
+			final Location chestLoc = changed.getLocation();
+			final int chestChunkX = chestLoc.getBlockX() >> 4;
+			final int chestChunkZ = chestLoc.getBlockZ() >> 4;
+
+			for (final Viewer viewer : viewers.values())
+				if (viewer.world == chestLoc.getWorld() && Math.abs(chestChunkX - viewer.chunkX) <= viewer.chunkRadius
+						&& Math.abs(chestChunkZ - viewer.chunkZ) <= viewer.chunkRadius)
+					viewer.stale = true;
+		}
+
+		// Positions come from this tick's snapshot instead of a new Location per player
+		for (int i = 0; i < PlayerPositions.size(); i++) {
+			final Player player = PlayerPositions.getPlayer(i);
+			final World world = PlayerPositions.getWorld(i);
+			final double x = PlayerPositions.getX(i);
+			final double y = PlayerPositions.getY(i);
+			final double z = PlayerPositions.getZ(i);
+			final int chunkX = (int) Math.floor(x) >> 4;
+			final int chunkZ = (int) Math.floor(z) >> 4;
+
+			final Viewer viewer = viewers.computeIfAbsent(player.getUniqueId(), k -> new Viewer());
+
+			if (viewer.player != player || viewer.world != world || viewer.chunkX != chunkX || viewer.chunkZ != chunkZ
+					|| viewer.chunkRadius != chunkRadius || viewer.stale) {
+				final Set<DeathChestData> previous = viewer.nearby;
+
+				viewer.nearby = new HashSet<>();
+				registry.getChestsNear(world, chunkX, chunkZ, chunkRadius, viewer.nearby);
 
-		for (final Player player : Bukkit.getOnlinePlayers()) {
-			for (final Location chestLoc : registry.getLocations()) {
-				if (!player.getWorld().equals(chestLoc.getWorld())) continue;
+				// Clients drop packet holograms when changing worlds, so chests left behind are hidden and shown again on return
+				for (final DeathChestData data : previous)
+					if (!viewer.nearby.contains(data)) {
+						final Hologram hologram = registry.getCachedHologram(data);
 
-				Block block = chestLoc.getBlock();
-				BukkitHologram hologram = registry.getHologram(block);
-				if (hologram == null) continue;
+						if (hologram != null)
+							hologram.hide(player);
+					}
+
+				viewer.player = player;
+				viewer.world = world;
+				viewer.chunkX = chunkX;
+				viewer.chunkZ = chunkZ;
+				viewer.chunkRadius = chunkRadius;
+				viewer.stale = false;
+
+			} else if (viewer.x == x && viewer.y == y && viewer.z == z)
+				continue;
 
-				double distSq = player.getLocation().distanceSquared(hologram.getLocation());
-				boolean inRange = distSq <= rangeSq;
+			viewer.x = x;
+			viewer.y = y;
+			viewer.z = z;
+
+			for (final DeathChestData data : viewer.nearby) {
+				// Holograms float above the middle of the chest block
+				final Location chestLoc = data.getLocation();
+				final double dx = x - (chestLoc.getBlockX() + 0.5);
+				final double dy = y - (chestLoc.getBlockY() + 1.0);
+				final double dz = z - (chestLoc.getBlockZ() + 0.5);
+				boolean inRange = dx * dx + dy * dy + dz * dz <= rangeSq;
 
 				if (inRange) {
-					if (!player.hasMetadata(hologram.getUniqueId().toString())) {
+					final Hologram hologram = registry.getHologram(data);
+
+					if (!hologram.isVisibleTo(player)) {
 						hologram.show(hologram.getLocation(), player, hologram.getLines());
 					}
 				} else {
-					hologram.hide(player);
+					final Hologram hologram = registry.getCachedHologram(data);
+
+					if (hologram != null)
+						hologram.hide(player);
 				}
 			}
 		}
+
+		// Players who left, their holograms are cleaned up on quit (a rejoin gets a new Player and starts over)
+		viewers.keySet().removeIf(uniqueId -> PlayerPositions.indexOf(uniqueId) < 0);
+	}
+
+	/**
+	 * Where a player was on their last check and the death chests around them
+	 */
+	private static final class Viewer {
+		private Player player;
+		private World world;
+		private int chunkX;
+		private int chunkZ;
+		private double x = Double.NaN;
+		private double y;
+		private double z;
+		private int chunkRadius = -1;
+		private boolean stale;
+		private Set<DeathChestData> nearby = new HashSet<>();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+package games.coob.smp.task;
+
+import net.kyori.adventure.bossbar.BossBar;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.entity.Player;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Locator boss bar of one tracker.
+ * <p>
+ * Remembers what it last showed (label, suffix, rounded distance, direction,
+ * color and progress) and only touches the title, progress or color when a
+ * visible value changed, so a tracker standing still costs no boss bar update
+ * packets. Fixed text such as player names, dimensions and the separator is
+ * turned into components once and reused.
+ * <p>
+ * Main thread only.
+ */
+final class LocatorBossBar {
+
+    private static final Component SEPARATOR = Component.text(" | ", NamedTextColor.DARK_GRAY);
+
+    /** Reused label and suffix components, emptied when it grows past this size */
+    private static final int MAX_FRAGMENTS = 512;
+    private static final Map<Fragment, Component> FRAGMENTS = new HashMap<>();
+
+    // Metrics
+    private static long titleUpdates;
+    private static long skippedTitles;
+    private static long skippedProgress;
+    private static long skippedColors;
+
+    private final BossBar bossBar = BossBar.bossBar(Component.empty(), 1.0f, BossBar.Color.WHITE, BossBar.Overlay.PROGRESS);
+    private boolean shown;
+
+    // Last rendered values
+    private String label;
+    private NamedTextColor labelColor;
+    private String suffix;
+    private int distance = Integer.MIN_VALUE;
+    private String direction;
+
+    /**
+     * Show the values to the tracker, updating only what changed
+     *
+     * @param suffix    Gray text in parentheses after the label, may be null
+     * @param distance  Rounded distance in blocks, negative to show the label alone
+     * @param direction Cardinal direction shown after the distance
+     */
+    void render(Player tracker, String label, NamedTextColor labelColor, @Nullable String suffix, int distance,
+            @Nullable String direction, BossBar.Color color, float progress) {
+        if (distance != this.distance || !label.equals(this.label) || labelColor != this.labelColor
+                || !Objects.equals(suffix, this.suffix) || !Objects.equals(direction, this.direction)) {
+            this.label = label;
+            this.labelColor = labelColor;
+            this.suffix = suffix;
+            this.distance = distance;
+            this.direction = direction;
+
+            bossBar.name(buildTitle());
+            titleUpdates++;
+        } else {
+            skippedTitles++;
+        }
+
+        if (bossBar.progress() != progress) {
+            bossBar.progress(progress);
+        } else {
+            skippedProgress++;
+        }
+
+        if (bossBar.color() != color) {
+            bossBar.color(color);
+        } else {
+            skippedColors++;
+        }
+
+        if (!shown) {
+            tracker.showBossBar(bossBar);
+            shown = true;
+        }
+    }
+
+    void hide(Player tracker) {
+        tracker.hideBossBar(bossBar);
+        shown = false;
+    }
+
+    private Component buildTitle() {
+        Component title = fragment(label, labelColor);
+
+        if (suffix != null) {
+            title = title.append(fragment(" (" + suffix + ")", NamedTextColor.GRAY));
+        }
+
+        if (distance >= 0) {
+            title = title.append(SEPARATOR)
+                    .append(Component.text(distance + "m " + direction, NamedTextColor.GOLD));
+        }
+
+        return title;
+    }
+
+    private static Component fragment(String text, NamedTextColor color) {
+        if (FRAGMENTS.size() >= MAX_FRAGMENTS) {
+            FRAGMENTS.clear();
+        }
+        return FRAGMENTS.computeIfAbsent(new Fragment(text, color), key -> Component.text(key.text(), key.color()));
+    }
+
+    static void clearFragments() {
+        FRAGMENTS.clear();
+    }
+
+    // -------------------------------------------------------------------------
+    // Metrics
+    // -------------------------------------------------------------------------
+
+    static long getTitleUpdates() {
+        return titleUpdates;
+    }
+
+    /**
+     * Title, progress and color updates left out because the value did not change
+     */
+    static long getSkippedUpdates() {
+        return skippedTitles + skippedProgress + skippedColors;
+    }
+
+    private record Fragment(String text, NamedTextColor color) {
+    }
+}
@@ -4,12 +4,16 @@ import games.coob.smp.PlayerCache;
 import games.coob.smp.SMPPlugin;
 import games.coob.smp.settings.Settings;
 import games.coob.smp.tracking.LocatorBarManager;
+import games.coob.smp.tracking.LodScheduler;
 import games.coob.smp.tracking.PortalCache;
+import games.coob.smp.tracking.PortalRouter;
+import games.coob.smp.tracking.TargetChannel;
 import games.coob.smp.tracking.TrackedTarget;
 import games.coob.smp.tracking.TrackingRegistry;
 import games.coob.smp.tracking.WaypointPacketSender;
+import games.coob.smp.tracking.WaypointUpdateFilter;
+import games.coob.smp.util.PlayerPositions;
 import net.kyori.adventure.bossbar.BossBar;
-import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -18,14 +22,20 @@ import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 
 /**
- * Periodic task that updates the locator bar for active trackers.
- * Supports multi-tracking (multiple players + death location simultaneously).
- * Uses boss bar to display tracking information.
+ * Task that updates the locator bar for active trackers, run every tick within
+ * a time budget; work that does not fit is carried over to the next tick.
+ * Supports multi-tracking (multiple players, teams + death location simultaneously).
+ * Targets are read through their {@link TargetChannel}, once per tick however
+ * many players track them.
+ * Uses boss bar to display tracking information, refreshed every update period,
+ * while each waypoint is updated when {@link LodScheduler} says it is due.
  */
 public final class LocatorTask extends BukkitRunnable {
 
@@ -34,7 +44,22 @@ public final class LocatorTask extends BukkitRunnable {
     private static final UUID DEATH_WAYPOINT_TARGET = UUID.fromString("00000000-0000-0000-0000-000000000001");
 
     // Boss bars per player
-    private static final Map<UUID, BossBar> playerBossBars = new HashMap<>();
+    private static final Map<UUID, LocatorBossBar> playerBossBars = new HashMap<>();
+
+    // Locator work not done yet, carried over between ticks when a tick runs out of budget
+    // A tracker whose refresh is still waiting is not queued again
+    private static final TimeSlicedQueue<UUID> pendingRefreshes = new TimeSlicedQueue<>(true);
+    private static final TimeSlicedQueue<LodScheduler.Pair> pendingPairs = new TimeSlicedQueue<>();
+
+    // Metrics
+    private static long runs;
+    private static long budgetOverruns;
+    private static long totalRunNanos;
+    private static long maxRunNanos;
+    private static long runPackets;
+    private static long runWrites;
+    private static long lastRunPackets;
+    private static long lastRunWrites;
 
     @Override
     public void run() {
@@ -42,12 +67,74 @@ public final class LocatorTask extends BukkitRunnable {
             return;
         }
 
-        for (Player tracker : TrackingRegistry.getOnlineTrackers()) {
-            updateTracker(tracker);
+        long start = System.nanoTime();
+        long deadline = start + Settings.LocatorSection.TICK_BUDGET_NANOS;
+        long tick = LodScheduler.advance();
+        long packetsBefore = WaypointPacketSender.getSentPackets();
+        long writesBefore = WaypointPacketSender.getConnectionWrites();
+
+        // Each tracker refreshes its boss bar and targets once per update period,
+        // in the tick its UUID hashes to, so the refreshes are spread over the period
+        int period = Settings.LocatorSection.UPDATE_PERIOD_TICKS;
+        int slot = (int) (tick % period);
+        for (UUID trackerId : TrackingRegistry.getTrackersInSlot(slot, period)) {
+            pendingRefreshes.add(trackerId);
         }
+
+        // Waypoints are updated when their level of detail says they are due
+        pendingPairs.addAll(LodScheduler.pollDue());
+
+        Map<UUID, Player> batched = new HashMap<>();
+        boolean finished;
+        try {
+            boolean refreshed = pendingRefreshes.drain(trackerId -> {
+                Player tracker = Bukkit.getPlayer(trackerId);
+                if (tracker != null) {
+                    refreshTracker(tracker);
+                }
+            }, deadline);
+
+            // Runs at least one update even when the refreshes used up the budget
+            finished = pendingPairs.drain(pair -> {
+                Player tracker = batched.get(pair.tracker());
+
+                if (tracker == null) {
+                    tracker = Bukkit.getPlayer(pair.tracker());
+                    if (tracker == null) {
+                        LodScheduler.remove(pair);
+                        return;
+                    }
+
+                    // Every waypoint change of this tracker goes out as one bundle
+                    WaypointPacketSender.beginBatch(tracker);
+                    batched.put(pair.tracker(), tracker);
+                }
+
+                updatePair(tracker, pair);
+            }, deadline) && refreshed;
+        } finally {
+            for (Player tracker : batched.values()) {
+                WaypointPacketSender.flushBatch(tracker);
+            }
+        }
+
+        // Work left over waits for the next tick instead of stretching this one
+        if (!finished) {
+            budgetOverruns++;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        totalRunNanos += elapsed;
+        maxRunNanos = Math.max(maxRunNanos, elapsed);
+
+        lastRunPackets = WaypointPacketSender.getSentPackets() - packetsBefore;
+        lastRunWrites = WaypointPacketSender.getConnectionWrites() - writesBefore;
+        runPackets += lastRunPackets;
+        runWrites += lastRunWrites;
+        runs++;
     }
 
-    private void updateTracker(Player tracker) {
+    private void refreshTracker(Player tracker) {
         if (!isEnvironmentAllowed(tracker)) {
             hideBossBar(tracker);
             return;
@@ -55,6 +142,10 @@ public final class LocatorTask extends BukkitRunnable {
 
         PlayerCache cache = PlayerCache.from(tracker);
 
+        // A team is only tracked while team tracking is allowed and the tracker is on it
+        cache.removeTrackedTeamsIf(team -> !Settings.LocatorSection.ALLOW_TEAM_TRACKING
+                || !TargetChannel.isTeamMember(team, tracker));
+
         if (!cache.isTracking()) {
             hideBossBar(tracker);
             TrackingRegistry.stopTracking(tracker.getUniqueId());
@@ -67,25 +158,100 @@ public final class LocatorTask extends BukkitRunnable {
         // Find the target the player is currently looking at (closest to center of view)
         TrackedTarget focusedTarget = getFocusedTarget(tracker, cache);
 
-        // Update all tracked targets
+        // Make sure every tracked target has its waypoint scheduled
+        Set<UUID> teamMembers = new HashSet<>();
         for (TrackedTarget target : cache.getTrackedTargets()) {
-            if (target.isPlayer()) {
-                updatePlayerTarget(tracker, cache, target);
-            } else if (target.isDeath()) {
-                updateDeathTarget(tracker, cache, target);
+            if (target.isTeam()) {
+                // Every member of the team gets a waypoint of their own
+                for (Player member : TargetChannel.getTeamMembers(target.getTeamName())) {
+                    if (member != tracker) {
+                        LodScheduler.ensureScheduled(tracker.getUniqueId(), member.getUniqueId());
+                        teamMembers.add(member.getUniqueId());
+                    }
+                }
+            } else {
+                LodScheduler.ensureScheduled(tracker.getUniqueId(), target.isDeath() ? DEATH_WAYPOINT_TARGET : target.getTargetUUID());
             }
         }
 
+        // Members see team trackers in "Who's tracking me" and can revoke them there
+        cache.indexTeamMembers(teamMembers);
+
         // Update boss bar with focused target info
         updateBossBar(tracker, cache, focusedTarget);
     }
 
+    /**
+     * Update one waypoint of the tracker and schedule its next update, or drop
+     * it when the target is no longer tracked.
+     */
+    private void updatePair(Player tracker, LodScheduler.Pair pair) {
+        if (!isEnvironmentAllowed(tracker)) {
+            dropPair(tracker, pair);
+            return;
+        }
+
+        PlayerCache cache = PlayerCache.from(tracker);
+        boolean death = DEATH_WAYPOINT_TARGET.equals(pair.target());
+        TrackedTarget target = death ? cache.getDeathTarget() : findPlayerTarget(tracker, cache, pair.target());
+
+        Location sent = null;
+        if (target != null && death) {
+            sent = updateDeathTarget(tracker, cache, target);
+        } else if (target != null) {
+            sent = updatePlayerTarget(tracker, cache, target, pair.target());
+        }
+
+        if (sent == null) {
+            // Also takes down the waypoint of a team member who left the team
+            dropPair(tracker, pair);
+            return;
+        }
+
+        LodScheduler.reschedule(pair, PlayerPositions.getX(tracker), PlayerPositions.getY(tracker),
+                PlayerPositions.getZ(tracker), sent);
+    }
+
+    /**
+     * Take the pair's waypoint off the tracker's bar and stop updating it.
+     */
+    private void dropPair(Player tracker, LodScheduler.Pair pair) {
+        UUID waypointId = WaypointPacketSender.generateWaypointId(pair.target());
+        if (WaypointPacketSender.isActive(tracker, waypointId)) {
+            WaypointPacketSender.removeWaypoint(tracker, waypointId);
+        }
+        LodScheduler.remove(pair);
+    }
+
+    /**
+     * The target a player's waypoint belongs to: the player themselves when
+     * tracked directly, else a tracked team they are on.
+     */
+    private TrackedTarget findPlayerTarget(Player tracker, PlayerCache cache, UUID playerUUID) {
+        TrackedTarget direct = cache.getTrackedTarget(playerUUID);
+        if (direct != null) {
+            return direct;
+        }
+
+        for (TrackedTarget target : cache.getTrackedTargets()) {
+            if (!target.isTeam()) continue;
+
+            for (Player member : TargetChannel.getTeamMembers(target.getTeamName())) {
+                if (member != tracker && member.getUniqueId().equals(playerUUID)) {
+                    return target;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * Find the target the player is most closely looking at.
      */
     private TrackedTarget getFocusedTarget(Player tracker, PlayerCache cache) {
-        Location trackerLoc = tracker.getLocation();
-        float trackerYaw = trackerLoc.getYaw();
+        double trackerX = PlayerPositions.getX(tracker);
+        double trackerZ = PlayerPositions.getZ(tracker);
+        float trackerYaw = PlayerPositions.getYaw(tracker);
 
         TrackedTarget closest = null;
         double closestAngleDiff = Double.MAX_VALUE;
@@ -95,8 +261,8 @@ public final class LocatorTask extends BukkitRunnable {
             if (targetLoc == null) continue;
 
             // Calculate angle to target
-            double dx = targetLoc.getX() - trackerLoc.getX();
-            double dz = targetLoc.getZ() - trackerLoc.getZ();
+            double dx = targetLoc.getX() - trackerX;
+            double dz = targetLoc.getZ() - trackerZ;
             double angleToTarget = Math.toDegrees(Math.atan2(-dx, dz));
 
             // Normalize angles
@@ -119,16 +285,38 @@ public final class LocatorTask extends BukkitRunnable {
 
     private Location getTargetLocation(Player tracker, PlayerCache cache, TrackedTarget target) {
         if (target.isPlayer()) {
-            Player targetPlayer = Bukkit.getPlayer(target.getTargetUUID());
-            if (targetPlayer == null || !targetPlayer.isOnline()) return null;
+            TargetChannel channel = TargetChannel.of(target.getTargetUUID());
+            if (!channel.isOnline()) return null;
 
-            if (targetPlayer.getWorld().equals(tracker.getWorld())) {
-                return targetPlayer.getLocation();
+            if (channel.getWorld().equals(tracker.getWorld())) {
+                return channel.getLocation();
             } else {
                 // Cross-dimension: return portal location
-                Location portal = getOrCalculatePortalTarget(tracker, target, targetPlayer.getWorld().getEnvironment());
-                return portal != null ? portal : getFallbackLocation(tracker, targetPlayer.getWorld().getEnvironment());
+                Location portal = getOrCalculatePortalTarget(tracker, target, channel.getLocation());
+                return portal != null ? portal : getFallbackLocation(tracker, channel.getWorld().getEnvironment());
             }
+        } else if (target.isTeam()) {
+            // The nearest member in the tracker's world
+            Location nearest = null;
+            double nearestDistSq = Double.MAX_VALUE;
+
+            for (Player member : TargetChannel.getTeamMembers(target.getTeamName())) {
+                if (member == tracker) continue;
+
+                TargetChannel channel = TargetChannel.of(member.getUniqueId());
+                if (!channel.isOnline() || !channel.getWorld().equals(tracker.getWorld())) continue;
+
+                double dx = channel.getLocation().getX() - PlayerPositions.getX(tracker);
+                double dy = channel.getLocation().getY() - PlayerPositions.getY(tracker);
+                double dz = channel.getLocation().getZ() - PlayerPositions.getZ(tracker);
+                double distSq = dx * dx + dy * dy + dz * dz;
+
+                if (distSq < nearestDistSq) {
+                    nearestDistSq = distSq;
+                    nearest = channel.getLocation();
+                }
+            }
+            return nearest;
         } else if (target.isDeath()) {
             Location deathLoc = cache.getDeathLocation();
             if (deathLoc == null || deathLoc.getWorld() == null) return null;
@@ -136,59 +324,72 @@ public final class LocatorTask extends BukkitRunnable {
             if (deathLoc.getWorld().equals(tracker.getWorld())) {
                 return deathLoc;
             } else {
-                Location portal = getOrCalculatePortalTarget(tracker, target, deathLoc.getWorld().getEnvironment());
+                Location portal = getOrCalculatePortalTarget(tracker, target, deathLoc);
                 return portal != null ? portal : getFallbackLocation(tracker, deathLoc.getWorld().getEnvironment());
             }
         }
         return null;
     }
 
-    private void updatePlayerTarget(Player tracker, PlayerCache cache, TrackedTarget target) {
-        Player targetPlayer = Bukkit.getPlayer(target.getTargetUUID());
+    /**
+     * @return Where the waypoint points, or null if the target is no longer tracked
+     */
+    private Location updatePlayerTarget(Player tracker, PlayerCache cache, TrackedTarget target, UUID targetUUID) {
+        TargetChannel channel = TargetChannel.of(targetUUID);
+        UUID waypointId = channel.getWaypointId();
 
-        if (targetPlayer == null || !targetPlayer.isOnline()) {
+        if (!channel.isOnline()) {
             // Target went offline - remove from tracking (waypoint color cleared on quit)
-            cache.removeTrackedPlayer(target.getTargetUUID());
-            UUID waypointId = WaypointPacketSender.generateWaypointId(tracker.getUniqueId(), target.getTargetUUID());
+            if (target.isPlayer()) {
+                cache.removeTrackedPlayer(targetUUID);
+            }
             WaypointPacketSender.removeWaypoint(tracker, waypointId);
             debug("Player target offline, removed from tracking");
-            return;
+            return null;
         }
 
-        boolean sameDimension = targetPlayer.getWorld().equals(tracker.getWorld());
+        World targetWorld = channel.getWorld();
+        boolean sameDimension = targetWorld.equals(tracker.getWorld());
         boolean usePackets = WaypointPacketSender.isAvailable();
-        UUID waypointId = WaypointPacketSender.generateWaypointId(tracker.getUniqueId(), target.getTargetUUID());
 
         if (sameDimension) {
             // Same dimension: enable transmit only (no team = default waypoint color, no name/tab change)
-            target.setCachedPortalTarget(null);
+            if (target.isPlayer()) {
+                target.setCachedPortalTarget(null);
+            }
             if (usePackets) {
-                WaypointPacketSender.sendWaypoint(tracker, targetPlayer.getLocation(), waypointId);
-                debug("Same dimension - sent waypoint for " + targetPlayer.getName());
+                // The same packet goes to every tracker of the target this tick
+                sendWaypoint(tracker, channel.getWaypoint());
+                debug("Same dimension - updated waypoint for " + channel.getPlayer().getName());
             } else {
-                LocatorBarManager.enableTransmit(targetPlayer);
-                debug("Same dimension - tracking player directly: " + targetPlayer.getName());
+                LocatorBarManager.enableTransmit(channel.getPlayer());
+                debug("Same dimension - tracking player directly: " + channel.getPlayer().getName());
             }
+            return channel.getLocation();
         } else {
             // Different dimension: send synthetic waypoint for portal
-            Location portalTarget = getOrCalculatePortalTarget(tracker, target, targetPlayer.getWorld().getEnvironment());
+            Location portalTarget = getOrCalculatePortalTarget(tracker, target, channel.getLocation());
             Location targetLocation = portalTarget != null ? portalTarget
-                    : getFallbackLocation(tracker, targetPlayer.getWorld().getEnvironment());
+                    : getFallbackLocation(tracker, targetWorld.getEnvironment());
 
-            WaypointPacketSender.sendWaypoint(tracker, targetLocation, waypointId);
-            debug("Cross-dimension - sent waypoint for portal to " + targetPlayer.getName());
+            sendWaypoint(tracker, targetLocation, waypointId);
+            debug("Cross-dimension - updated waypoint for portal to " + channel.getPlayer().getName());
+            return targetLocation;
         }
     }
 
-    private void updateDeathTarget(Player tracker, PlayerCache cache, TrackedTarget target) {
+    /**
+     * @return Where the waypoint points, or null if the death location is gone
+     */
+    private Location updateDeathTarget(Player tracker, PlayerCache cache, TrackedTarget target) {
         Location deathLocation = cache.getDeathLocation();
 
         if (deathLocation == null || deathLocation.getWorld() == null) {
-            UUID waypointId = WaypointPacketSender.generateWaypointId(tracker.getUniqueId(), DEATH_WAYPOINT_TARGET);
+            UUID waypointId = WaypointPacketSender.generateWaypointId(DEATH_WAYPOINT_TARGET);
             WaypointPacketSender.removeWaypoint(tracker, waypointId);
             cache.stopTrackingDeath();
             debug("Death location null, stopped tracking");
-            return;
+            return null;
         }
 
         boolean sameDimension = deathLocation.getWorld().equals(tracker.getWorld());
@@ -197,76 +398,88 @@ public final class LocatorTask extends BukkitRunnable {
         if (sameDimension) {
             targetLocation = deathLocation;
         } else {
-            Location portalTarget = getOrCalculatePortalTarget(tracker, target, deathLocation.getWorld().getEnvironment());
+            Location portalTarget = getOrCalculatePortalTarget(tracker, target, deathLocation);
             targetLocation = portalTarget != null ? portalTarget
                     : getFallbackLocation(tracker, deathLocation.getWorld().getEnvironment());
         }
 
-        UUID waypointId = WaypointPacketSender.generateWaypointId(tracker.getUniqueId(), DEATH_WAYPOINT_TARGET);
-        WaypointPacketSender.sendWaypoint(tracker, targetLocation, waypointId);
+        UUID waypointId = WaypointPacketSender.generateWaypointId(DEATH_WAYPOINT_TARGET);
+        sendWaypoint(tracker, targetLocation, waypointId);
         debug("Updated death location waypoint");
+        return targetLocation;
+    }
+
+    /**
+     * Send the waypoint unless the client already shows it close enough to the target.
+     */
+    private void sendWaypoint(Player tracker, Location location, UUID waypointId) {
+        sendWaypoint(tracker, WaypointPacketSender.prepare(waypointId, location));
+    }
+
+    private void sendWaypoint(Player tracker, WaypointPacketSender.PreparedWaypoint waypoint) {
+        UUID waypointId = waypoint.getWaypointId();
+        boolean active = WaypointPacketSender.isActive(tracker, waypointId);
+
+        if (WaypointUpdateFilter.shouldSend(tracker.getUniqueId(), waypointId, waypoint.getLocation(), active)) {
+            WaypointPacketSender.sendWaypoint(tracker, waypoint);
+        }
     }
 
     private void updateBossBar(Player tracker, PlayerCache cache, TrackedTarget focusedTarget) {
-        BossBar bossBar = playerBossBars.computeIfAbsent(tracker.getUniqueId(),
-                k -> BossBar.bossBar(Component.empty(), 1.0f, BossBar.Color.WHITE, BossBar.Overlay.PROGRESS));
+        LocatorBossBar bossBar = playerBossBars.computeIfAbsent(tracker.getUniqueId(), k -> new LocatorBossBar());
 
         if (focusedTarget != null) {
             // Show info about the focused target
             int distance;
             String direction;
-            Component nameComponent;
 
             Location targetLoc = getTargetLocation(tracker, cache, focusedTarget);
             if (targetLoc != null) {
-                distance = (int) tracker.getLocation().distance(targetLoc);
+                double dx = targetLoc.getX() - PlayerPositions.getX(tracker);
+                double dy = targetLoc.getY() - PlayerPositions.getY(tracker);
+                double dz = targetLoc.getZ() - PlayerPositions.getZ(tracker);
+                distance = (int) Math.sqrt(dx * dx + dy * dy + dz * dz);
                 direction = getCardinalDirection(tracker, targetLoc);
             } else {
                 distance = 0;
                 direction = "?";
             }
 
+            String label;
+            NamedTextColor labelColor = NamedTextColor.WHITE;
+            String suffix = null;
+
             if (focusedTarget.isPlayer()) {
-                Player targetPlayer = Bukkit.getPlayer(focusedTarget.getTargetUUID());
-                String targetName = targetPlayer != null ? targetPlayer.getName() : "Unknown";
-
-                boolean sameDimension = targetPlayer != null && targetPlayer.getWorld().equals(tracker.getWorld());
-                nameComponent = Component.text(targetName, NamedTextColor.WHITE);
-                if (!sameDimension && targetPlayer != null) {
-                    nameComponent = nameComponent
-                            .append(Component.text(" (" + getDimensionName(targetPlayer.getWorld().getEnvironment()) + ")", NamedTextColor.GRAY));
+                TargetChannel channel = TargetChannel.of(focusedTarget.getTargetUUID());
+                label = channel.isOnline() ? channel.getPlayer().getName() : "Unknown";
+
+                if (channel.isOnline() && !channel.getWorld().equals(tracker.getWorld())) {
+                    suffix = getDimensionName(channel.getWorld().getEnvironment());
                 }
+            } else if (focusedTarget.isTeam()) {
+                // Members other than the tracker, who is on the team too
+                int members = TargetChannel.getTeamMembers(focusedTarget.getTeamName()).size() - 1;
+                label = "Team " + focusedTarget.getTeamName();
+                suffix = members + " online";
             } else {
-                nameComponent = Component.text("Death Location", NamedTextColor.RED);
+                label = "Death Location";
+                labelColor = NamedTextColor.RED;
 
                 Location deathLoc = cache.getDeathLocation();
                 if (deathLoc != null && !deathLoc.getWorld().equals(tracker.getWorld())) {
-                    nameComponent = nameComponent
-                            .append(Component.text(" (" + getDimensionName(deathLoc.getWorld().getEnvironment()) + ")", NamedTextColor.GRAY));
+                    suffix = getDimensionName(deathLoc.getWorld().getEnvironment());
                 }
             }
 
-            Component name = nameComponent
-                    .append(Component.text(" | ", NamedTextColor.DARK_GRAY))
-                    .append(Component.text(distance + "m " + direction, NamedTextColor.GOLD));
-
-            bossBar.name(name);
-            bossBar.color(defaultBossBarColor(focusedTarget));
-
             // Progress based on distance (closer = more full, max 500m)
             float progress = Math.max(0.0f, Math.min(1.0f, 1.0f - (distance / 500.0f)));
-            bossBar.progress(progress);
+            bossBar.render(tracker, label, labelColor, suffix, distance, direction, defaultBossBarColor(focusedTarget), progress);
         } else {
             // Not looking at any target - show general tracking info
             int trackingCount = cache.getTrackedTargets().size();
-            Component name = Component.text("Tracking " + trackingCount + " target" + (trackingCount != 1 ? "s" : ""),
-                    NamedTextColor.GRAY);
-            bossBar.name(name);
-            bossBar.color(BossBar.Color.WHITE);
-            bossBar.progress(1.0f);
+            bossBar.render(tracker, "Tracking " + trackingCount + " target" + (trackingCount != 1 ? "s" : ""),
+                    NamedTextColor.GRAY, null, -1, null, BossBar.Color.WHITE, 1.0f);
         }
-
-        tracker.showBossBar(bossBar);
     }
 
     /** Default boss bar color (no team = no menu color; use neutral default). */
@@ -276,16 +489,35 @@ public final class LocatorTask extends BukkitRunnable {
     }
 
     private void hideBossBar(Player player) {
-        BossBar bossBar = playerBossBars.remove(player.getUniqueId());
+        LocatorBossBar bossBar = playerBossBars.remove(player.getUniqueId());
         if (bossBar != null) {
-            player.hideBossBar(bossBar);
+            bossBar.hide(player);
         }
         WaypointPacketSender.clearWaypoint(player);
         LocatorBarManager.disableReceive(player);
         LocatorBarManager.clearTarget(player);
     }
 
-    private Location getOrCalculatePortalTarget(Player tracker, TrackedTarget target, World.Environment targetDimension) {
+    /**
+     * The portal the tracker should take to reach the target's location in
+     * another dimension, null if none is known.
+     */
+    private Location getOrCalculatePortalTarget(Player tracker, TrackedTarget target, Location targetLocation) {
+        // Overworld <-> nether: the portal on the shortest route, cached per region so it follows the target
+        if (PortalRouter.canRoute(tracker.getWorld(), targetLocation.getWorld())) {
+            Location routed = PortalRouter.route(tracker.getWorld(), PlayerPositions.getX(tracker),
+                    PlayerPositions.getY(tracker), PlayerPositions.getZ(tracker), targetLocation);
+            if (routed != null) {
+                return routed;
+            }
+        }
+
+        World.Environment targetDimension = targetLocation.getWorld().getEnvironment();
+        if (target.isTeam()) {
+            // Members can be in different dimensions, a team has no single portal to cache
+            return findPortalToDimension(tracker, targetDimension);
+        }
+
         Location cached = target.getCachedPortalTarget();
 
         if (cached != null && cached.getWorld() != null && cached.getWorld().equals(tracker.getWorld())) {
@@ -298,8 +530,8 @@ public final class LocatorTask extends BukkitRunnable {
     }
 
     private Location findPortalToDimension(Player tracker, World.Environment targetDimension) {
-        World trackerWorld = tracker.getWorld();
-        Location trackerLoc = tracker.getLocation();
+        int index = PlayerPositions.indexOf(tracker);
+        World trackerWorld = index >= 0 ? PlayerPositions.getWorld(index) : tracker.getWorld();
         World.Environment currentEnv = trackerWorld.getEnvironment();
 
         PlayerCache trackerCache = PlayerCache.from(tracker);
@@ -310,7 +542,9 @@ public final class LocatorTask extends BukkitRunnable {
             return storedPortal;
         }
 
-        // Fallback to global PortalCache
+        // Fallback to global PortalCache, from this tick's position instead of a new Location from the player
+        Location trackerLoc = new Location(trackerWorld, PlayerPositions.getX(tracker), PlayerPositions.getY(tracker),
+                PlayerPositions.getZ(tracker));
         return PortalCache.findNearestToDimension(trackerWorld, trackerLoc, targetDimension);
     }
 
@@ -344,9 +578,8 @@ public final class LocatorTask extends BukkitRunnable {
     }
 
     private String getCardinalDirection(Player tracker, Location target) {
-        Location trackerLoc = tracker.getLocation();
-        double dx = target.getX() - trackerLoc.getX();
-        double dz = target.getZ() - trackerLoc.getZ();
+        double dx = target.getX() - PlayerPositions.getX(tracker);
+        double dz = target.getZ() - PlayerPositions.getZ(tracker);
 
         double angle = Math.toDegrees(Math.atan2(-dx, dz));
         if (angle < 0) angle += 360;
@@ -385,11 +618,13 @@ public final class LocatorTask extends BukkitRunnable {
      * Clean up boss bar for a player (call on quit).
      */
     public static void cleanupPlayer(UUID playerUUID) {
-        BossBar bossBar = playerBossBars.remove(playerUUID);
+        LodScheduler.removeTracker(playerUUID);
+        TargetChannel.remove(playerUUID);
+        LocatorBossBar bossBar = playerBossBars.remove(playerUUID);
         if (bossBar != null) {
             Player player = Bukkit.getPlayer(playerUUID);
             if (player != null) {
-                player.hideBossBar(bossBar);
+                bossBar.hide(player);
             }
         }
     }
@@ -398,13 +633,81 @@ public final class LocatorTask extends BukkitRunnable {
      * Clean up all boss bars (call on plugin disable).
      */
     public static void cleanupAll() {
-        for (Map.Entry<UUID, BossBar> entry : playerBossBars.entrySet()) {
+        for (Map.Entry<UUID, LocatorBossBar> entry : playerBossBars.entrySet()) {
             Player player = Bukkit.getPlayer(entry.getKey());
             if (player != null) {
-                player.hideBossBar(entry.getValue());
+                entry.getValue().hide(player);
             }
         }
         playerBossBars.clear();
+        LocatorBossBar.clearFragments();
+        pendingRefreshes.clear();
+        pendingPairs.clear();
+        LodScheduler.clear();
+        TargetChannel.clear();
+    }
+
+    public static long getRuns() {
+        return runs;
+    }
+
+    public static double getAveragePacketsPerRun() {
+        return runs == 0 ? 0 : runPackets / (double) runs;
+    }
+
+    /**
+     * Connection writes per run, one per tracker whose waypoints changed when bundled
+     */
+    public static double getAverageWritesPerRun() {
+        return runs == 0 ? 0 : runWrites / (double) runs;
+    }
+
+    /**
+     * Runs that hit the per-tick budget and left work for the next tick
+     */
+    public static long getBudgetOverruns() {
+        return budgetOverruns;
+    }
+
+    /**
+     * Queued refreshes and waypoint updates that waited for a later tick
+     */
+    public static long getCarriedOverWork() {
+        return pendingRefreshes.getCarriedOver() + pendingPairs.getCarriedOver();
+    }
+
+    public static int getPendingWork() {
+        return pendingRefreshes.size() + pendingPairs.size();
+    }
+
+    public static double getAverageRunMillis() {
+        return runs == 0 ? 0 : totalRunNanos / (double) runs / 1_000_000D;
+    }
+
+    public static double getMaxRunMillis() {
+        return maxRunNanos / 1_000_000D;
+    }
+
+    /**
+     * Boss bar titles rebuilt because a shown value changed
+     */
+    public static long getBossBarTitleUpdates() {
+        return LocatorBossBar.getTitleUpdates();
+    }
+
+    /**
+     * Boss bar title, progress and color updates skipped as unchanged
+     */
+    public static long getSkippedBossBarUpdates() {
+        return LocatorBossBar.getSkippedUpdates();
+    }
+
+    public static long getLastRunPackets() {
+        return lastRunPackets;
+    }
+
+    public static long getLastRunWrites() {
+        return lastRunWrites;
     }
 
     private void debug(String message) {
@@ -0,0 +1,98 @@
+package games.coob.smp.task;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Work queue drained against a per-tick deadline. Whatever is left when the
+ * deadline passes stays queued, in order, and is done first on the next tick,
+ * so a burst of work is spread over several ticks instead of stretching one.
+ * <p>
+ * A distinct queue holds each item at most once: adding an item still waiting
+ * does nothing, so work queued again faster than it is drained does not pile up.
+ * <p>
+ * Main thread only.
+ */
+final class TimeSlicedQueue<T> {
+
+    private final ArrayDeque<T> queue = new ArrayDeque<>();
+
+    /** Items in the queue, null unless the queue is distinct */
+    private final Set<T> queued;
+
+    // Metrics
+    private long carriedOver;
+
+    TimeSlicedQueue() {
+        this(false);
+    }
+
+    TimeSlicedQueue(boolean distinct) {
+        this.queued = distinct ? new HashSet<>() : null;
+    }
+
+    void add(T item) {
+        if (queued == null || queued.add(item)) {
+            queue.addLast(item);
+        }
+    }
+
+    void addAll(Collection<T> items) {
+        if (queued == null) {
+            queue.addAll(items);
+            return;
+        }
+
+        for (T item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Run the action on queued items until the queue is empty or the deadline
+     * passed. At least one item is run per call so the queue always advances.
+     *
+     * @param deadline A {@link System#nanoTime()} value
+     * @return true if the queue was emptied
+     */
+    boolean drain(Consumer<T> action, long deadline) {
+        boolean first = true;
+
+        while (!queue.isEmpty()) {
+            if (!first && System.nanoTime() >= deadline) {
+                carriedOver += queue.size();
+                return false;
+            }
+
+            first = false;
+            T item = queue.pollFirst();
+            if (queued != null) {
+                queued.remove(item);
+            }
+            action.accept(item);
+        }
+
+        return true;
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    void clear() {
+        queue.clear();
+        if (queued != null) {
+            queued.clear();
+        }
+    }
+
+    /**
+     * Items left for a later tick, counted once per tick they waited
+     */
+    long getCarriedOver() {
+        return carriedOver;
+    }
+}
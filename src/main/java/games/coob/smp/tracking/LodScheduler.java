@@ -0,0 +1,215 @@
+package games.coob.smp.tracking;
+
+import games.coob.smp.settings.Settings;
+import org.bukkit.Location;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Level-of-detail schedule for locator waypoints.
+ * <p>
+ * Every (tracker, target) pair gets its own update interval from how far the
+ * target is and how fast its bearing from the tracker turns: a target a few
+ * blocks away or one sweeping across the bar is updated every tick, one
+ * thousands of blocks away only every few seconds. Pairs wait in a timing
+ * wheel with one slot per tick, so a locator run only touches the pairs that
+ * are due.
+ * <p>
+ * Main thread only.
+ */
+public final class LodScheduler {
+
+    /** Number of wheel slots, a power of two larger than the longest interval */
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /** Longest interval the wheel can hold */
+    public static final int MAX_INTERVAL_LIMIT = WHEEL_SIZE - 1;
+
+    /** Due tick of pairs handed out by {@link #pollDue()} and not rescheduled yet */
+    private static final long TAKEN = -1;
+
+    /** Each this many blocks of distance add one tick to the interval */
+    private static final double BLOCKS_PER_INTERVAL_TICK = 16;
+
+    /** How far (radians) the bearing to a target may turn between two updates */
+    private static final double MAX_BEARING_STEP = Math.toRadians(3);
+
+    private static final List<List<Pair>> WHEEL = new ArrayList<>(WHEEL_SIZE);
+    private static final Map<Pair, Entry> ENTRIES = new HashMap<>();
+
+    private static long tick;
+
+    // Metrics
+    private static long processedPairs;
+    private static long rescheduledPairs;
+    private static long assignedIntervalTicks;
+
+    static {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            WHEEL.add(new ArrayList<>());
+        }
+    }
+
+    private LodScheduler() {
+    }
+
+    /**
+     * Move to the next tick (call once at the start of every locator run)
+     *
+     * @return The new tick
+     */
+    public static long advance() {
+        return ++tick;
+    }
+
+    /**
+     * The current locator tick
+     */
+    public static long getTick() {
+        return tick;
+    }
+
+    /**
+     * Schedule the pair for the next tick unless it is already waiting
+     */
+    public static void ensureScheduled(UUID tracker, UUID target) {
+        Pair pair = new Pair(tracker, target);
+        Entry entry = ENTRIES.get(pair);
+
+        if (entry == null) {
+            entry = new Entry();
+            ENTRIES.put(pair, entry);
+        } else if (entry.dueTick > tick || entry.dueTick == TAKEN) {
+            return;
+        }
+
+        schedule(pair, entry, tick + 1);
+    }
+
+    /**
+     * Take the pairs due this tick. Every returned pair must either be
+     * {@link #reschedule rescheduled} or {@link #remove removed}.
+     */
+    public static List<Pair> pollDue() {
+        List<Pair> slot = WHEEL.get((int) (tick & WHEEL_MASK));
+        List<Pair> due = new ArrayList<>(slot.size());
+
+        for (Pair pair : slot) {
+            Entry entry = ENTRIES.get(pair);
+
+            // Pairs removed or moved to another tick since they were put in this slot
+            if (entry != null && entry.dueTick == tick) {
+                entry.dueTick = TAKEN; // A second copy of the pair in this slot is skipped
+                due.add(pair);
+            }
+        }
+
+        slot.clear();
+        processedPairs += due.size();
+        return due;
+    }
+
+    /**
+     * Schedule the next update of the pair from where the tracker is and
+     * where its waypoint now points
+     *
+     * @return The interval in ticks
+     */
+    public static int reschedule(Pair pair, double trackerX, double trackerY, double trackerZ, Location target) {
+        Entry entry = ENTRIES.computeIfAbsent(pair, k -> new Entry());
+
+        double dx = target.getX() - trackerX;
+        double dy = target.getY() - trackerY;
+        double dz = target.getZ() - trackerZ;
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double bearing = Math.atan2(dz, dx);
+
+        int interval = (int) (distance / BLOCKS_PER_INTERVAL_TICK);
+
+        if (!Double.isNaN(entry.bearing)) {
+            double turn = Math.abs(bearing - entry.bearing);
+            if (turn > Math.PI) {
+                turn = 2 * Math.PI - turn;
+            }
+
+            double turnPerTick = turn / Math.max(1, tick - entry.bearingTick);
+            if (turnPerTick > 0) {
+                interval = (int) Math.min(interval, MAX_BEARING_STEP / turnPerTick);
+            }
+        }
+
+        entry.bearing = bearing;
+        entry.bearingTick = tick;
+
+        interval = Math.max(1, Math.min(Settings.LocatorSection.MAX_UPDATE_INTERVAL_TICKS, interval));
+        assignedIntervalTicks += interval;
+        rescheduledPairs++;
+
+        schedule(pair, entry, tick + interval);
+        return interval;
+    }
+
+    public static void remove(Pair pair) {
+        ENTRIES.remove(pair);
+    }
+
+    /**
+     * Drop every pair of the tracker (call on quit)
+     */
+    public static void removeTracker(UUID tracker) {
+        for (Iterator<Pair> iterator = ENTRIES.keySet().iterator(); iterator.hasNext();) {
+            if (iterator.next().tracker().equals(tracker)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public static void clear() {
+        ENTRIES.clear();
+        for (List<Pair> slot : WHEEL) {
+            slot.clear();
+        }
+    }
+
+    private static void schedule(Pair pair, Entry entry, long dueTick) {
+        entry.dueTick = dueTick;
+        WHEEL.get((int) (dueTick & WHEEL_MASK)).add(pair);
+    }
+
+    // -------------------------------------------------------------------------
+    // Metrics
+    // -------------------------------------------------------------------------
+
+    public static int getScheduledPairs() {
+        return ENTRIES.size();
+    }
+
+    public static long getProcessedPairs() {
+        return processedPairs;
+    }
+
+    /**
+     * Average interval given to a pair after an update, in ticks
+     */
+    public static double getAverageInterval() {
+        return rescheduledPairs == 0 ? 0 : assignedIntervalTicks / (double) rescheduledPairs;
+    }
+
+    /**
+     * A tracker and one of its targets (the death waypoint has its own fixed target id)
+     */
+    public record Pair(UUID tracker, UUID target) {
+    }
+
+    private static final class Entry {
+        private long dueTick;
+        private double bearing = Double.NaN;
+        private long bearingTick;
+    }
+}
@@ -0,0 +1,193 @@
+package games.coob.smp.tracking;
+
+import games.coob.smp.SMPPlugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads the nether portal points of interest vanilla keeps in a world's
+ * poi/r.X.Z.mca region files, without loading any chunk.
+ * <p>
+ * A region file starts with a 4 KiB table of chunk locations (sector offset
+ * and sector count); every chunk is a length, a compression type and an NBT
+ * compound with one "Sections" entry per chunk section, each holding the
+ * "Records" of that section with their "pos" and "type".
+ */
+final class PoiRegionReader {
+
+    private static final String NETHER_PORTAL_TYPE = "minecraft:nether_portal";
+
+    private static final int SECTOR_SIZE = 4096;
+    private static final int CHUNKS_PER_REGION = 1024;
+
+    private static final int COMPRESSION_GZIP = 1;
+    private static final int COMPRESSION_ZLIB = 2;
+    private static final int COMPRESSION_NONE = 3;
+
+    private PoiRegionReader() {
+    }
+
+    /**
+     * Return the packed block coordinates (see {@link PortalIndex#pack}) of all
+     * nether portal blocks recorded in the region file. Chunks stored with an
+     * unsupported compression, outside the file or that can't be read are skipped.
+     */
+    static long[] readNetherPortals(File regionFile) throws IOException {
+        byte[] data = Files.readAllBytes(regionFile.toPath());
+        List<Long> portals = new ArrayList<>();
+
+        if (data.length < SECTOR_SIZE) {
+            return new long[0];
+        }
+
+        for (int chunk = 0; chunk < CHUNKS_PER_REGION; chunk++) {
+            int location = readInt(data, chunk * 4);
+            int offset = (location >>> 8) * SECTOR_SIZE;
+
+            if (offset == 0 || offset + 5 > data.length) {
+                continue;
+            }
+
+            int length = readInt(data, offset);
+            int compression = data[offset + 4];
+
+            if (length <= 1 || offset + 4 + length > data.length) {
+                continue;
+            }
+
+            try {
+                InputStream raw = new ByteArrayInputStream(data, offset + 5, length - 1);
+                InputStream in = switch (compression) {
+                    case COMPRESSION_GZIP -> new GZIPInputStream(raw);
+                    case COMPRESSION_ZLIB -> new InflaterInputStream(raw);
+                    case COMPRESSION_NONE -> raw;
+                    default -> null; // LZ4 or external .mcc file, not used for POI data by default
+                };
+
+                if (in != null) {
+                    try (DataInputStream nbt = new DataInputStream(in)) {
+                        collectPortals(readRoot(nbt), portals);
+                    }
+                }
+
+            } catch (IOException | RuntimeException e) {
+                // One corrupt chunk must not cost the portals of the rest of the region
+                SMPPlugin.getInstance().getLogger().warning("Skipping unreadable chunk " + chunk + " in POI file "
+                        + regionFile.getName() + ": " + e);
+            }
+        }
+
+        long[] result = new long[portals.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = portals.get(i);
+        }
+        return result;
+    }
+
+    private static void collectPortals(Object root, List<Long> portals) {
+        if (!(root instanceof Map<?, ?> chunk) || !(chunk.get("Sections") instanceof Map<?, ?> sections)) {
+            return;
+        }
+
+        for (Object section : sections.values()) {
+            if (!(section instanceof Map<?, ?> sectionMap) || !(sectionMap.get("Records") instanceof List<?> records)) {
+                continue;
+            }
+
+            for (Object record : records) {
+                if (record instanceof Map<?, ?> recordMap
+                        && NETHER_PORTAL_TYPE.equals(recordMap.get("type"))
+                        && recordMap.get("pos") instanceof int[] pos && pos.length == 3) {
+                    portals.add(PortalIndex.pack(pos[0], pos[1], pos[2]));
+                }
+            }
+        }
+    }
+
+    private static int readInt(byte[] data, int index) {
+        return ((data[index] & 0xFF) << 24) | ((data[index + 1] & 0xFF) << 16)
+                | ((data[index + 2] & 0xFF) << 8) | (data[index + 3] & 0xFF);
+    }
+
+    // -------------------------------------------------------------------------
+    // Minimal NBT reader: compounds become maps, lists become lists
+    // -------------------------------------------------------------------------
+
+    private static Object readRoot(DataInputStream in) throws IOException {
+        int type = in.readByte();
+        if (type == 0) {
+            return null;
+        }
+        in.readUTF(); // Root name, always empty
+        return readPayload(in, type);
+    }
+
+    private static Object readPayload(DataInputStream in, int type) throws IOException {
+        switch (type) {
+            case 1:
+                return in.readByte();
+            case 2:
+                return in.readShort();
+            case 3:
+                return in.readInt();
+            case 4:
+                return in.readLong();
+            case 5:
+                return in.readFloat();
+            case 6:
+                return in.readDouble();
+            case 7: {
+                byte[] array = new byte[in.readInt()];
+                in.readFully(array);
+                return array;
+            }
+            case 8:
+                return in.readUTF();
+            case 9: {
+                int elementType = in.readByte();
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(Math.max(0, size));
+                for (int i = 0; i < size; i++) {
+                    list.add(readPayload(in, elementType));
+                }
+                return list;
+            }
+            case 10: {
+                Map<String, Object> compound = new HashMap<>();
+                int childType;
+                while ((childType = in.readByte()) != 0) {
+                    String name = in.readUTF();
+                    compound.put(name, readPayload(in, childType));
+                }
+                return compound;
+            }
+            case 11: {
+                int[] array = new int[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = in.readInt();
+                }
+                return array;
+            }
+            case 12: {
+                long[] array = new long[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = in.readLong();
+                }
+                return array;
+            }
+            default:
+                throw new IOException("Unknown NBT tag type " + type);
+        }
+    }
+}
@@ -6,24 +6,38 @@ import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Global cache of known portal locations per world.
- * Portals are registered when players use them or when they're created.
- * Finding the nearest portal is O(n) where n = portals in that world.
+ * Portals are registered when players use them or when they're created, and
+ * dropped once their blocks are gone.
+ * Each world keeps a {@link PortalIndex} grid, so finding the nearest portal
+ * only looks at the portals around the query point. The indexes are persisted
+ * per world by {@link PortalStore}.
  */
 public final class PortalCache {
 
-    private static final Map<UUID, List<Location>> NETHER_PORTALS = new ConcurrentHashMap<>();
-    private static final Map<UUID, List<Location>> END_PORTALS = new ConcurrentHashMap<>();
+    private static final Map<UUID, PortalIndex> NETHER_PORTALS = new ConcurrentHashMap<>();
+    private static final Map<UUID, PortalIndex> END_PORTALS = new ConcurrentHashMap<>();
 
-    private static final int SEARCH_RADIUS = 64;
-    private static final int SEARCH_STEP = 8;
+    /** Worlds whose portals changed since {@link PortalStore} last saved them */
+    private static final Set<UUID> DIRTY_WORLDS = ConcurrentHashMap.newKeySet();
+
+    /** Portals registered within this many blocks of a known one are the same portal */
+    private static final int MERGE_RADIUS = 3;
+
+    /** Largest distance between a broken frame block and the portal entry it belongs to */
+    private static final int BREAK_RADIUS = 24;
+
+    /** Stale entries dropped by one lookup before giving up */
+    private static final int MAX_STALE_PER_LOOKUP = 8;
+
+    /** Changed whenever a portal is added or removed anywhere, see {@link #getVersion()} */
+    private static long version;
 
     private PortalCache() {
     }
@@ -41,25 +55,78 @@ public final class PortalCache {
             return;
 
         UUID worldId = location.getWorld().getUID();
-        Location centered = location.clone();
-        centered.setX(Math.floor(centered.getX()) + 0.5);
-        centered.setY(Math.floor(centered.getY()) + 0.5);
-        centered.setZ(Math.floor(centered.getZ()) + 0.5);
+        PortalIndex index = getIndex(worldId, type, true);
+        if (index != null && index.add(location.getBlockX(), location.getBlockY(), location.getBlockZ(), MERGE_RADIUS)) {
+            markChanged(worldId);
+        }
+    }
 
-        if (type == Material.NETHER_PORTAL) {
-            addIfNotDuplicate(NETHER_PORTALS.computeIfAbsent(worldId, k -> new CopyOnWriteArrayList<>()), centered);
-        } else if (type == Material.END_PORTAL || type == Material.END_PORTAL_FRAME) {
-            addIfNotDuplicate(END_PORTALS.computeIfAbsent(worldId, k -> new CopyOnWriteArrayList<>()), centered);
+    /**
+     * Register packed portal positions loaded from disk or from the world's
+     * POI files. Positions close to a known portal are merged as usual.
+     *
+     * @param changed true if the positions are new to the saved index
+     */
+    static void registerAll(UUID worldId, Material type, long[] portals, boolean changed) {
+        PortalIndex index = getIndex(worldId, type, true);
+        boolean added = false;
+
+        for (long packed : portals) {
+            added |= index.add(PortalIndex.unpackX(packed), PortalIndex.unpackY(packed),
+                    PortalIndex.unpackZ(packed), MERGE_RADIUS);
         }
+
+        if (added && changed) {
+            markChanged(worldId);
+        }
+    }
+
+    /**
+     * Copy the packed portal positions of a world, for persisting them
+     */
+    static long[] export(UUID worldId, Material type) {
+        PortalIndex index = getIndex(worldId, type, false);
+        return index == null ? new long[0] : index.toArray();
+    }
+
+    /**
+     * Return true and reset the flag if the world's portals changed since the last call
+     */
+    static boolean takeDirty(UUID worldId) {
+        return DIRTY_WORLDS.remove(worldId);
     }
 
-    private static void addIfNotDuplicate(List<Location> list, Location loc) {
-        for (Location existing : list) {
-            if (existing.distanceSquared(loc) < 9.0) { // Within 3 blocks = same portal
-                return;
+    /**
+     * Counter changed by every added or removed portal, results computed from
+     * the cache are valid as long as it stays the same
+     */
+    static long getVersion() {
+        return version;
+    }
+
+    /**
+     * Number of known portals of the given type in a world
+     */
+    public static int getPortalCount(World world, Material type) {
+        PortalIndex index = getIndex(world.getUID(), type, false);
+        return index == null ? 0 : index.size();
+    }
+
+    /**
+     * Drop the portals around a broken block whose blocks are gone. Only
+     * entries in loaded chunks are checked, the rest are dropped lazily when a
+     * lookup returns them.
+     */
+    public static void revalidate(Block broken) {
+        World world = broken.getWorld();
+
+        for (Material type : new Material[] { Material.NETHER_PORTAL, Material.END_PORTAL }) {
+            PortalIndex index = getIndex(world.getUID(), type, false);
+            if (index != null && index.removeWithin(broken.getX(), broken.getY(), broken.getZ(), BREAK_RADIUS,
+                    packed -> isStale(world, packed, type))) {
+                markChanged(world.getUID());
             }
         }
-        list.add(loc);
     }
 
     // -------------------------------------------------------------------------
@@ -68,32 +135,37 @@ public final class PortalCache {
 
     /**
      * Find the nearest registered portal of the given type in the specified world.
-     * Returns null if no portals are registered.
+     * Returns null if no portals are registered, in which case a
+     * {@link PortalLocator} search of the area is started.
      */
     public static Location findNearest(World world, Location from, Material type) {
         if (world == null || from == null || type == null)
             return null;
 
-        List<Location> portals = getPortalList(world.getUID(), type);
-        if (portals == null || portals.isEmpty()) {
-            // Fallback: do a small area scan and cache the result
-            return scanAndCache(world, from, type);
+        PortalIndex index = getIndex(world.getUID(), type, false);
+        if (index == null || index.size() == 0) {
+            // Search the area off the main thread, a later lookup finds the result in the cache
+            PortalLocator.search(world, from, type);
+            return null;
         }
 
-        Location best = null;
-        double bestDistSq = Double.MAX_VALUE;
+        for (int attempt = 0; attempt < MAX_STALE_PER_LOOKUP; attempt++) {
+            long nearest = index.findNearest(from.getX(), from.getY(), from.getZ());
+            if (nearest == Long.MIN_VALUE) {
+                return null;
+            }
 
-        for (Location portal : portals) {
-            if (portal == null || portal.getWorld() != world)
-                continue;
-            double distSq = from.distanceSquared(portal);
-            if (distSq < bestDistSq) {
-                bestDistSq = distSq;
-                best = portal;
+            if (!isStale(world, nearest, type)) {
+                return new Location(world,
+                        PortalIndex.unpackX(nearest) + 0.5,
+                        PortalIndex.unpackY(nearest) + 0.5,
+                        PortalIndex.unpackZ(nearest) + 0.5);
             }
+
+            remove(world, nearest, type);
         }
 
-        return best;
+        return null;
     }
 
     /**
@@ -136,58 +208,82 @@ public final class PortalCache {
     // Internal
     // -------------------------------------------------------------------------
 
-    private static List<Location> getPortalList(UUID worldId, Material type) {
+    /**
+     * The portal index of a world, null if it has none
+     */
+    static PortalIndex getIndex(UUID worldId, Material type) {
+        return getIndex(worldId, type, false);
+    }
+
+    /**
+     * Drop one portal entry whose blocks are gone
+     */
+    static void remove(World world, long portal, Material type) {
+        PortalIndex index = getIndex(world.getUID(), type, false);
+        if (index != null && index.removeWithin(PortalIndex.unpackX(portal), PortalIndex.unpackY(portal),
+                PortalIndex.unpackZ(portal), 1, packed -> packed == portal)) {
+            markChanged(world.getUID());
+        }
+    }
+
+    private static void markChanged(UUID worldId) {
+        DIRTY_WORLDS.add(worldId);
+        version++;
+    }
+
+    private static PortalIndex getIndex(UUID worldId, Material type, boolean create) {
+        Map<UUID, PortalIndex> indexes;
         if (type == Material.NETHER_PORTAL) {
-            return NETHER_PORTALS.get(worldId);
+            indexes = NETHER_PORTALS;
         } else if (type == Material.END_PORTAL || type == Material.END_PORTAL_FRAME) {
-            return END_PORTALS.get(worldId);
+            indexes = END_PORTALS;
+        } else {
+            return null;
         }
-        return null;
+        return create ? indexes.computeIfAbsent(worldId, k -> new PortalIndex()) : indexes.get(worldId);
     }
 
     /**
-     * Scan a small area for a portal and cache it if found.
-     * This is only called when we have no cached portals.
+     * A portal entry is stale when its chunk is loaded and there is no portal
+     * block of its type at or right next to it (entries are where the player
+     * stood, which can be a block off the portal itself).
      */
-    private static Location scanAndCache(World world, Location from, Material type) {
-        int cx = from.getBlockX();
-        int cy = from.getBlockY();
-        int cz = from.getBlockZ();
-        int minY = Math.max(world.getMinHeight(), cy - 32);
-        int maxY = Math.min(world.getMaxHeight() - 1, cy + 32);
-
-        Location best = null;
-        double bestDistSq = Double.MAX_VALUE;
-
-        for (int dx = -SEARCH_RADIUS; dx <= SEARCH_RADIUS; dx += SEARCH_STEP) {
-            for (int y = minY; y <= maxY; y += SEARCH_STEP) {
-                for (int dz = -SEARCH_RADIUS; dz <= SEARCH_RADIUS; dz += SEARCH_STEP) {
-                    Block block = world.getBlockAt(cx + dx, y, cz + dz);
-                    if (block.getType() == type) {
-                        Location loc = block.getLocation().add(0.5, 0.5, 0.5);
-                        double distSq = from.distanceSquared(loc);
-                        if (distSq < bestDistSq) {
-                            bestDistSq = distSq;
-                            best = loc;
-                        }
+    static boolean isStale(World world, long packed, Material type) {
+        int x = PortalIndex.unpackX(packed);
+        int y = PortalIndex.unpackY(packed);
+        int z = PortalIndex.unpackZ(packed);
+
+        if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+            return false;
+        }
+
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    if (isPortalBlock(world.getBlockAt(x + dx, y + dy, z + dz).getType(), type)) {
+                        return false;
                     }
                 }
             }
         }
+        return true;
+    }
 
-        // Cache the found portal
-        if (best != null) {
-            register(best, type);
+    static boolean isPortalBlock(Material found, Material type) {
+        if (type == Material.NETHER_PORTAL) {
+            return found == Material.NETHER_PORTAL;
         }
-
-        return best;
+        return found == Material.END_PORTAL || found == Material.END_PORTAL_FRAME;
     }
 
     /**
-     * Clear all cached portals (e.g., on plugin disable).
+     * Clear all cached portals (on plugin disable, after {@link PortalStore} saved them).
      */
     public static void clear() {
         NETHER_PORTALS.clear();
         END_PORTALS.clear();
+        DIRTY_WORLDS.clear();
+        PortalLocator.clear();
+        PortalRouter.clear();
     }
 }
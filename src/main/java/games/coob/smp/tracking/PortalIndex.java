@@ -0,0 +1,242 @@
+package games.coob.smp.tracking;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * Spatial index of portal blocks in one world: a uniform grid of 64x64 block
+ * columns, each holding packed block coordinates. Nearest-neighbour queries
+ * visit the cells in rings around the query point and stop as soon as no
+ * unvisited ring can hold anything closer, so they only look at the portals
+ * around the query instead of every portal in the world.
+ * <p>
+ * Not thread-safe, used from the main thread.
+ */
+final class PortalIndex {
+
+    private static final int CELL_SHIFT = 6;
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+
+    private final Map<Long, Cell> cells = new HashMap<>();
+
+    // Bounds of all cells that ever held a portal, in cell coordinates
+    private int minCellX = Integer.MAX_VALUE;
+    private int maxCellX = Integer.MIN_VALUE;
+    private int minCellZ = Integer.MAX_VALUE;
+    private int maxCellZ = Integer.MIN_VALUE;
+
+    private int size;
+
+    /**
+     * Add a portal block unless a known one is within the merge radius.
+     *
+     * @return true if it was added
+     */
+    boolean add(int x, int y, int z, int mergeRadius) {
+        if (findWithin(x, y, z, mergeRadius, null)) {
+            return false;
+        }
+
+        int cellX = x >> CELL_SHIFT;
+        int cellZ = z >> CELL_SHIFT;
+
+        cells.computeIfAbsent(cellKey(cellX, cellZ), k -> new Cell()).add(pack(x, y, z));
+        minCellX = Math.min(minCellX, cellX);
+        maxCellX = Math.max(maxCellX, cellX);
+        minCellZ = Math.min(minCellZ, cellZ);
+        maxCellZ = Math.max(maxCellZ, cellZ);
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove the portals within the radius of the given block that match the filter.
+     *
+     * @return true if something was removed
+     */
+    boolean removeWithin(int x, int y, int z, int radius, LongPredicate filter) {
+        return findWithin(x, y, z, radius, filter);
+    }
+
+    /**
+     * Find the portal closest to the given point.
+     *
+     * @return The packed block coordinates, see {@link #unpackX(long)}, or
+     *         {@link Long#MIN_VALUE} if the index is empty
+     */
+    long findNearest(double x, double y, double z) {
+        long[] nearest = new long[1];
+        return findNearest(x, y, z, nearest) == 0 ? Long.MIN_VALUE : nearest[0];
+    }
+
+    /**
+     * Find the portals closest to the given point, as many as fit in the
+     * result array, nearest first.
+     *
+     * @return How many portals were put in the result
+     */
+    int findNearest(double x, double y, double z, long[] result) {
+        int limit = result.length;
+        if (size == 0 || limit == 0) {
+            return 0;
+        }
+
+        int centerX = (int) Math.floor(x) >> CELL_SHIFT;
+        int centerZ = (int) Math.floor(z) >> CELL_SHIFT;
+
+        // Once the ring passes every cell that ever held a portal, all were visited
+        int lastRing = Math.max(Math.max(centerX - minCellX, maxCellX - centerX),
+                Math.max(centerZ - minCellZ, maxCellZ - centerZ));
+
+        double[] distances = new double[limit];
+        int found = 0;
+
+        for (int ring = 0; ring <= Math.max(0, lastRing); ring++) {
+            // Anything in this ring is at least (ring - 1) cells away horizontally
+            double ringDistance = (ring - 1) * (double) CELL_SIZE;
+            if (ring > 1 && found == limit && ringDistance * ringDistance > distances[limit - 1]) {
+                break;
+            }
+
+            for (int dx = -ring; dx <= ring; dx++) {
+                boolean edgeColumn = dx == -ring || dx == ring;
+
+                for (int dz = -ring; dz <= ring; dz += edgeColumn ? 1 : Math.max(1, 2 * ring)) {
+                    Cell cell = cells.get(cellKey(centerX + dx, centerZ + dz));
+                    if (cell == null) {
+                        continue;
+                    }
+
+                    for (int i = 0; i < cell.size; i++) {
+                        long packed = cell.positions[i];
+                        double distSq = distanceSquared(packed, x, y, z);
+                        if (found == limit && distSq >= distances[limit - 1]) {
+                            continue;
+                        }
+
+                        // Insertion into the sorted result, dropping the farthest when full
+                        int slot = found < limit ? found++ : limit - 1;
+                        while (slot > 0 && distances[slot - 1] > distSq) {
+                            distances[slot] = distances[slot - 1];
+                            result[slot] = result[slot - 1];
+                            slot--;
+                        }
+                        distances[slot] = distSq;
+                        result[slot] = packed;
+                    }
+                }
+            }
+        }
+
+        return found;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copy all packed positions, for persisting the index
+     */
+    long[] toArray() {
+        long[] result = new long[size];
+        int index = 0;
+        for (Cell cell : cells.values()) {
+            System.arraycopy(cell.positions, 0, result, index, cell.size);
+            index += cell.size;
+        }
+        return result;
+    }
+
+    private boolean findWithin(int x, int y, int z, int radius, LongPredicate removeFilter) {
+        double radiusSq = (double) radius * radius;
+        double centerX = x + 0.5;
+        double centerY = y + 0.5;
+        double centerZ = z + 0.5;
+        boolean found = false;
+
+        for (int cellX = (x - radius) >> CELL_SHIFT; cellX <= (x + radius) >> CELL_SHIFT; cellX++) {
+            for (int cellZ = (z - radius) >> CELL_SHIFT; cellZ <= (z + radius) >> CELL_SHIFT; cellZ++) {
+                long key = cellKey(cellX, cellZ);
+                Cell cell = cells.get(key);
+                if (cell == null) {
+                    continue;
+                }
+
+                for (int i = cell.size - 1; i >= 0; i--) {
+                    long packed = cell.positions[i];
+                    if (distanceSquared(packed, centerX, centerY, centerZ) < radiusSq) {
+                        // Without a filter this is only a lookup
+                        if (removeFilter == null) {
+                            return true;
+                        }
+                        if (!removeFilter.test(packed)) {
+                            continue;
+                        }
+                        cell.removeAt(i);
+                        size--;
+                        found = true;
+                    }
+                }
+
+                if (cell.size == 0) {
+                    cells.remove(key);
+                }
+            }
+        }
+
+        return found;
+    }
+
+    private static double distanceSquared(long packed, double x, double y, double z) {
+        double dx = unpackX(packed) + 0.5 - x;
+        double dy = unpackY(packed) + 0.5 - y;
+        double dz = unpackZ(packed) + 0.5 - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    // -------------------------------------------------------------------------
+    // Packed block coordinates: 26 bits x, 26 bits z, 12 bits y (like vanilla BlockPos)
+    // -------------------------------------------------------------------------
+
+    static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    static int unpackX(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    static int unpackY(long packed) {
+        return (int) (packed << 52 >> 52);
+    }
+
+    static int unpackZ(long packed) {
+        return (int) (packed << 26 >> 38);
+    }
+
+    /**
+     * Growable array of packed positions, avoids boxing every portal.
+     */
+    private static final class Cell {
+        private long[] positions = new long[4];
+        private int size;
+
+        private void add(long packed) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = packed;
+        }
+
+        private void removeAt(int index) {
+            positions[index] = positions[--size];
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package games.coob.smp.tracking;
+
+import games.coob.smp.SMPPlugin;
+import games.coob.smp.util.SchedulerUtil;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Searches the area around a player for a portal when {@link PortalCache}
+ * knows none in that world.
+ * <p>
+ * Chunks are fetched with getChunkAtAsync (never generated), snapshotted, and
+ * every snapshot is scanned block by block on the portal index pool, so the
+ * main thread only pays for taking the snapshots. The nearest portal found is
+ * registered in the cache on the main thread, where the next locator run picks
+ * it up. Trackers asking while a search of the same world is running share it.
+ */
+public final class PortalLocator {
+
+    private static final int SEARCH_RADIUS = 64;
+    private static final int VERTICAL_RADIUS = 64;
+
+    /** A search that found nothing is not repeated within this distance and time */
+    private static final double MISS_DISTANCE = 32;
+    private static final long MISS_RETRY_MILLIS = 30_000;
+
+    private static final Map<SearchKey, CompletableFuture<Location>> IN_FLIGHT = new HashMap<>();
+    private static final Map<SearchKey, Miss> MISSES = new HashMap<>();
+
+    // Metrics (main thread)
+    private static long searches;
+    private static long sharedSearches;
+    private static long scannedChunks;
+
+    private PortalLocator() {
+    }
+
+    /**
+     * Search the area around the location for the nearest portal of the given
+     * type, or join the search already running in that world. Call from the
+     * main thread.
+     *
+     * @return Completed on the main thread with the nearest portal, or null if
+     *         none was found; already completed with null when the area was
+     *         searched in vain recently
+     */
+    public static CompletableFuture<Location> search(World world, Location from, Material type) {
+        Material indexType = type == Material.NETHER_PORTAL ? Material.NETHER_PORTAL : Material.END_PORTAL;
+        SearchKey key = new SearchKey(world.getUID(), indexType);
+
+        CompletableFuture<Location> running = IN_FLIGHT.get(key);
+        if (running != null) {
+            sharedSearches++;
+            return running;
+        }
+
+        Miss miss = MISSES.get(key);
+        if (miss != null && miss.covers(from)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Executor executor = PortalStore.getInstance().getExecutor();
+        if (executor == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Location> result = new CompletableFuture<>();
+        IN_FLIGHT.put(key, result);
+        searches++;
+
+        double fromX = from.getX();
+        double fromY = from.getY();
+        double fromZ = from.getZ();
+        int minY = Math.max(world.getMinHeight(), from.getBlockY() - VERTICAL_RADIUS);
+        int maxY = Math.min(world.getMaxHeight() - 1, from.getBlockY() + VERTICAL_RADIUS);
+        int worldMinY = world.getMinHeight();
+
+        List<CompletableFuture<Hit>> scans = new ArrayList<>();
+
+        for (int chunkX = (from.getBlockX() - SEARCH_RADIUS) >> 4; chunkX <= (from.getBlockX() + SEARCH_RADIUS) >> 4; chunkX++) {
+            for (int chunkZ = (from.getBlockZ() - SEARCH_RADIUS) >> 4; chunkZ <= (from.getBlockZ() + SEARCH_RADIUS) >> 4; chunkZ++) {
+                // The chunk future completes on the main thread, where the snapshot has to be taken
+                scans.add(world.getChunkAtAsync(chunkX, chunkZ, false)
+                        .thenApply(chunk -> chunk == null ? null : chunk.getChunkSnapshot(false, false, false))
+                        .thenApplyAsync(snapshot -> snapshot == null ? null
+                                : scan(snapshot, indexType, worldMinY, minY, maxY, fromX, fromY, fromZ), executor)
+                        .exceptionally(throwable -> null));
+            }
+        }
+
+        CompletableFuture.allOf(scans.toArray(new CompletableFuture[0])).whenComplete((ignored, throwable) -> {
+            Hit nearest = null;
+            for (CompletableFuture<Hit> scan : scans) {
+                Hit hit = scan.getNow(null);
+                if (hit != null && (nearest == null || hit.distanceSquared() < nearest.distanceSquared())) {
+                    nearest = hit;
+                }
+            }
+
+            Hit best = nearest;
+            int chunks = scans.size();
+
+            runOnMainThread(() -> {
+                IN_FLIGHT.remove(key);
+                scannedChunks += chunks;
+
+                if (best == null) {
+                    MISSES.put(key, new Miss(fromX, fromY, fromZ, System.currentTimeMillis()));
+                    result.complete(null);
+                    return;
+                }
+
+                MISSES.remove(key);
+                Location portal = new Location(world,
+                        PortalIndex.unpackX(best.packed()) + 0.5,
+                        PortalIndex.unpackY(best.packed()) + 0.5,
+                        PortalIndex.unpackZ(best.packed()) + 0.5);
+
+                PortalCache.register(portal, indexType);
+                result.complete(portal);
+            });
+        });
+
+        return result;
+    }
+
+    /**
+     * Scan every block of the snapshot between minY and maxY, skipping empty
+     * sections
+     *
+     * @return The nearest portal block, or null if there is none
+     */
+    private static Hit scan(ChunkSnapshot snapshot, Material type, int worldMinY, int minY, int maxY,
+            double fromX, double fromY, double fromZ) {
+        int baseX = snapshot.getX() << 4;
+        int baseZ = snapshot.getZ() << 4;
+
+        Hit best = null;
+
+        for (int y = minY; y <= maxY; y++) {
+            if (y == minY || ((y - worldMinY) & 15) == 0) {
+                int section = (y - worldMinY) >> 4;
+                if (snapshot.isSectionEmpty(section)) {
+                    y = worldMinY + (section << 4) + 15; // Skip to the last block of the section
+                    continue;
+                }
+            }
+
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < 16; z++) {
+                    if (!PortalCache.isPortalBlock(snapshot.getBlockType(x, y, z), type)) {
+                        continue;
+                    }
+
+                    double dx = baseX + x + 0.5 - fromX;
+                    double dy = y + 0.5 - fromY;
+                    double dz = baseZ + z + 0.5 - fromZ;
+                    double distSq = dx * dx + dy * dy + dz * dz;
+
+                    if (best == null || distSq < best.distanceSquared()) {
+                        best = new Hit(PortalIndex.pack(baseX + x, y, baseZ + z), distSq);
+                    }
+                }
+            }
+        }
+
+        return best;
+    }
+
+    private static void runOnMainThread(Runnable task) {
+        if (SMPPlugin.getInstance().isEnabled()) {
+            SchedulerUtil.runTask(task);
+        }
+    }
+
+    /**
+     * Forget running searches and past misses (on plugin disable)
+     */
+    static void clear() {
+        IN_FLIGHT.clear();
+        MISSES.clear();
+    }
+
+    // -------------------------------------------------------------------------
+    // Metrics
+    // -------------------------------------------------------------------------
+
+    public static long getSearches() {
+        return searches;
+    }
+
+    /**
+     * Lookups that joined a search already running in the same world
+     */
+    public static long getSharedSearches() {
+        return sharedSearches;
+    }
+
+    public static long getScannedChunks() {
+        return scannedChunks;
+    }
+
+    private record SearchKey(UUID worldId, Material type) {
+    }
+
+    private record Hit(long packed, double distanceSquared) {
+    }
+
+    private record Miss(double x, double y, double z, long time) {
+
+        private boolean covers(Location location) {
+            double dx = location.getX() - x;
+            double dy = location.getY() - y;
+            double dz = location.getZ() - z;
+
+            return System.currentTimeMillis() - time < MISS_RETRY_MILLIS
+                    && dx * dx + dy * dy + dz * dz < MISS_DISTANCE * MISS_DISTANCE;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package games.coob.smp.tracking;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Picks the nether portal a tracker should walk to when their target is on
+ * the other side, overworld to nether or back.
+ * <p>
+ * The known portals of both worlds form a graph: every portal links to the
+ * portal of the other world that vanilla would send a player to, the one
+ * nearest to its position scaled 8:1, or to a new portal at that scaled
+ * position if none is close enough. A route costs the walk from the tracker to
+ * the portal plus the walk from the linked portal to the target, and the
+ * cheapest of the portals near the tracker and near the target's position
+ * projected into the tracker's world wins. That is often not the portal
+ * closest to the tracker.
+ * <p>
+ * Routes are cached per (tracker region, target region) pair until a portal is
+ * added or removed, so trackers and targets moving within their regions reuse
+ * the route instead of searching the indexes every run.
+ * <p>
+ * Main thread only.
+ */
+public final class PortalRouter {
+
+    /** Routes are shared within regions of this many blocks (as a shift) in each world */
+    private static final int REGION_SHIFT = 5;
+
+    /** Candidates taken around the tracker and around the projected target each */
+    private static final int CANDIDATES = 4;
+
+    /** How far from the scaled position vanilla looks for an existing portal */
+    private static final double OVERWORLD_LINK_RADIUS = 128;
+    private static final double NETHER_LINK_RADIUS = 16;
+
+    /** Cached routes, emptied when it grows past this size */
+    private static final int MAX_ROUTES = 4096;
+
+    private static final Map<RouteKey, Route> ROUTES = new HashMap<>();
+
+    // Metrics
+    private static long cachedRoutes;
+    private static long computedRoutes;
+
+    private PortalRouter() {
+    }
+
+    /**
+     * Whether a route can be computed between the worlds, which takes an
+     * overworld and a nether
+     */
+    public static boolean canRoute(World from, World to) {
+        return from.getEnvironment() == World.Environment.NORMAL && to.getEnvironment() == World.Environment.NETHER
+                || from.getEnvironment() == World.Environment.NETHER && to.getEnvironment() == World.Environment.NORMAL;
+    }
+
+    /**
+     * The portal in the tracker's world on the shortest known route to the
+     * target, see {@link #canRoute(World, World)}. The location is shared and
+     * must not be changed.
+     *
+     * @return null if no portal is known in the tracker's world
+     */
+    @Nullable
+    public static Location route(World from, double x, double y, double z, Location target) {
+        World to = target.getWorld();
+
+        PortalIndex fromIndex = PortalCache.getIndex(from.getUID(), Material.NETHER_PORTAL);
+        if (fromIndex == null || fromIndex.size() == 0) {
+            return null;
+        }
+
+        RouteKey key = new RouteKey(from.getUID(), (int) Math.floor(x) >> REGION_SHIFT, (int) Math.floor(z) >> REGION_SHIFT,
+                to.getUID(), target.getBlockX() >> REGION_SHIFT, target.getBlockZ() >> REGION_SHIFT);
+        long version = PortalCache.getVersion();
+
+        Route cached = ROUTES.get(key);
+        if (cached != null && cached.version() == version) {
+            cachedRoutes++;
+            return cached.portal();
+        }
+
+        Location portal = computeRoute(from, fromIndex, x, y, z, target);
+        computedRoutes++;
+
+        if (ROUTES.size() >= MAX_ROUTES) {
+            ROUTES.clear();
+        }
+        // Stale portals dropped while computing changed the version, the route is valid from there
+        ROUTES.put(key, new Route(portal, PortalCache.getVersion()));
+        return portal;
+    }
+
+    private static Location computeRoute(World from, PortalIndex fromIndex, double x, double y, double z, Location target) {
+        World to = target.getWorld();
+        PortalIndex toIndex = PortalCache.getIndex(to.getUID(), Material.NETHER_PORTAL);
+
+        // Multiplying a position in the tracker's world by this gives the position in the target's world
+        double scale = getScale(from) / getScale(to);
+        double linkRadius = to.getEnvironment() == World.Environment.NETHER ? NETHER_LINK_RADIUS : OVERWORLD_LINK_RADIUS;
+
+        long[] candidates = findCandidates(fromIndex, x, y, z, target.getX() / scale, target.getY(), target.getZ() / scale);
+
+        long best = Long.MIN_VALUE;
+        double bestCost = Double.MAX_VALUE;
+
+        for (long candidate : candidates) {
+
+            if (PortalCache.isStale(from, candidate, Material.NETHER_PORTAL)) {
+                PortalCache.remove(from, candidate, Material.NETHER_PORTAL);
+                continue;
+            }
+
+            double portalX = PortalIndex.unpackX(candidate) + 0.5;
+            double portalY = PortalIndex.unpackY(candidate) + 0.5;
+            double portalZ = PortalIndex.unpackZ(candidate) + 0.5;
+
+            // Where the portal leads: the linked portal, or where vanilla would build one
+            double exitX = portalX * scale;
+            double exitY = portalY;
+            double exitZ = portalZ * scale;
+
+            long linked = toIndex == null ? Long.MIN_VALUE : toIndex.findNearest(exitX, exitY, exitZ);
+            if (linked != Long.MIN_VALUE) {
+                double linkX = PortalIndex.unpackX(linked) + 0.5;
+                double linkZ = PortalIndex.unpackZ(linked) + 0.5;
+
+                if (square(linkX - exitX) + square(linkZ - exitZ) <= linkRadius * linkRadius) {
+                    exitX = linkX;
+                    exitY = PortalIndex.unpackY(linked) + 0.5;
+                    exitZ = linkZ;
+                }
+            }
+
+            double cost = distance(x, y, z, portalX, portalY, portalZ)
+                    + distance(exitX, exitY, exitZ, target.getX(), target.getY(), target.getZ());
+
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = candidate;
+            }
+        }
+
+        if (best == Long.MIN_VALUE) {
+            return null;
+        }
+
+        return new Location(from, PortalIndex.unpackX(best) + 0.5, PortalIndex.unpackY(best) + 0.5,
+                PortalIndex.unpackZ(best) + 0.5);
+    }
+
+    /**
+     * The portals nearest to the tracker and nearest to the target's position
+     * projected into the tracker's world, each portal once.
+     */
+    static long[] findCandidates(PortalIndex index, double x, double y, double z, double targetX, double targetY, double targetZ) {
+        long[] candidates = new long[CANDIDATES * 2];
+        long[] nearTracker = new long[CANDIDATES];
+        int nearTrackerCount = index.findNearest(x, y, z, nearTracker);
+        System.arraycopy(nearTracker, 0, candidates, 0, nearTrackerCount);
+        int count = nearTrackerCount;
+
+        long[] nearTarget = new long[CANDIDATES];
+        int nearTargetCount = index.findNearest(targetX, targetY, targetZ, nearTarget);
+
+        // Tracker and target close together find the same portals
+        for (int i = 0; i < nearTargetCount; i++) {
+            if (!contains(nearTracker, nearTrackerCount, nearTarget[i])) {
+                candidates[count++] = nearTarget[i];
+            }
+        }
+
+        return Arrays.copyOf(candidates, count);
+    }
+
+    private static boolean contains(long[] array, int length, long value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double getScale(World world) {
+        return world.getEnvironment() == World.Environment.NETHER ? 8 : 1;
+    }
+
+    private static double distance(double x1, double y1, double z1, double x2, double y2, double z2) {
+        return Math.sqrt(square(x2 - x1) + square(y2 - y1) + square(z2 - z1));
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    static void clear() {
+        ROUTES.clear();
+    }
+
+    // -------------------------------------------------------------------------
+    // Metrics
+    // -------------------------------------------------------------------------
+
+    /**
+     * Routes answered from the cache
+     */
+    public static long getCachedRoutes() {
+        return cachedRoutes;
+    }
+
+    public static long getComputedRoutes() {
+        return computedRoutes;
+    }
+
+    private record RouteKey(UUID fromWorld, int fromRegionX, int fromRegionZ, UUID toWorld, int toRegionX, int toRegionZ) {
+    }
+
+    private record Route(Location portal, long version) {
+    }
+}
@@ -0,0 +1,312 @@
+package games.coob.smp.tracking;
+
+import games.coob.smp.SMPPlugin;
+import games.coob.smp.config.SaveQueue;
+import games.coob.smp.util.ColorUtil;
+import games.coob.smp.util.SchedulerUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitTask;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Persists the {@link PortalCache} of every world to portals/&lt;world uuid&gt;.dat
+ * so it survives restarts.
+ * <p>
+ * A world without a saved index is indexed from its poi/*.mca region files,
+ * where vanilla records every nether portal block, on a background pool. That
+ * gives complete coverage without loading a single chunk. The same rebuild can
+ * be started with /smp portals rebuild.
+ */
+public final class PortalStore {
+
+    private static final PortalStore instance = new PortalStore();
+
+    private static final int MAGIC = 0x534D5050; // "SMPP"
+    private static final int FORMAT_VERSION = 1;
+
+    /** How often changed indexes are saved, in ticks */
+    private static final long SAVE_PERIOD_TICKS = 20 * 60 * 5;
+
+    private static final Material[] TYPES = { Material.NETHER_PORTAL, Material.END_PORTAL };
+
+    /** Worlds whose POI files are being read */
+    private final Set<UUID> rebuilding = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService pool;
+    private BukkitTask saveTask;
+
+    private PortalStore() {
+    }
+
+    public static PortalStore getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start the pool, load the index of every loaded world and save changes
+     * periodically (call on plugin enable)
+     */
+    public void start() {
+        if (pool != null) {
+            return;
+        }
+
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        AtomicInteger threadId = new AtomicInteger();
+
+        pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "SMP Portal Index #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (World world : Bukkit.getWorlds()) {
+            load(world);
+        }
+
+        saveTask = SchedulerUtil.runTimer(SAVE_PERIOD_TICKS, SAVE_PERIOD_TICKS, this::saveChanged);
+    }
+
+    /**
+     * Stop reading POI files and save every changed index (call on plugin
+     * disable, before the save queue shuts down)
+     */
+    public void shutdown() {
+        if (pool == null) {
+            return;
+        }
+
+        saveTask.cancel();
+        pool.shutdownNow();
+        saveChanged();
+
+        pool = null;
+        saveTask = null;
+        rebuilding.clear();
+    }
+
+    /**
+     * The pool used for portal IO and searches, or null when not running
+     */
+    Executor getExecutor() {
+        return pool;
+    }
+
+    // -------------------------------------------------------------------------
+    // Loading
+    // -------------------------------------------------------------------------
+
+    /**
+     * Load the saved index of the world off the main thread, or rebuild it
+     * from the POI files if it was never saved
+     */
+    public void load(World world) {
+        if (pool == null) {
+            return;
+        }
+
+        File file = getFile(world.getUID());
+        if (!file.exists()) {
+            rebuild(world, null);
+            return;
+        }
+
+        UUID worldId = world.getUID();
+        pool.execute(() -> {
+            try {
+                long[][] portals = read(file);
+                runOnMainThread(() -> {
+                    for (int i = 0; i < TYPES.length; i++) {
+                        PortalCache.registerAll(worldId, TYPES[i], portals[i], false);
+                    }
+                });
+            } catch (IOException e) {
+                SMPPlugin.getInstance().getLogger().log(Level.WARNING,
+                        "Could not read portal index " + file.getName() + ", rebuilding it", e);
+                runOnMainThread(() -> {
+                    World loaded = Bukkit.getWorld(worldId);
+                    if (loaded != null) {
+                        rebuild(loaded, null);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Index the nether portals recorded in the world's POI region files, one
+     * file per pool task, and merge them into the cache. Portals created since
+     * the chunks were last saved are not in the files yet, they are registered
+     * when used as before.
+     *
+     * @param sender Told about the result, may be null
+     * @return false if a rebuild of this world is already running
+     */
+    public boolean rebuild(World world, @Nullable CommandSender sender) {
+        UUID worldId = world.getUID();
+
+        if (pool == null || !rebuilding.add(worldId)) {
+            return false;
+        }
+
+        File[] regionFiles = getPoiFolder(world).listFiles((dir, name) -> name.startsWith("r.") && name.endsWith(".mca"));
+        if (regionFiles == null || regionFiles.length == 0) {
+            rebuilding.remove(worldId);
+            notify(sender, "&eNo POI files found for " + world.getName() + ".");
+            return true;
+        }
+
+        long start = System.nanoTime();
+        List<CompletableFuture<long[]>> reads = new ArrayList<>();
+
+        for (File regionFile : regionFiles) {
+            reads.add(CompletableFuture.supplyAsync(() -> readRegion(regionFile), pool));
+        }
+
+        CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenRun(() -> runOnMainThread(() -> {
+            int found = 0;
+            for (CompletableFuture<long[]> read : reads) {
+                long[] portals = read.join();
+                PortalCache.registerAll(worldId, Material.NETHER_PORTAL, portals, true);
+                found += portals.length;
+            }
+
+            rebuilding.remove(worldId);
+            save(worldId);
+
+            String message = "Indexed " + PortalCache.getPortalCount(world, Material.NETHER_PORTAL) + " nether portal(s) in "
+                    + world.getName() + " from " + found + " POI record(s) in " + regionFiles.length + " region file(s) ("
+                    + (System.nanoTime() - start) / 1_000_000 + "ms)";
+            SMPPlugin.getInstance().getLogger().info(message);
+            notify(sender, "&a" + message + ".");
+        }));
+
+        return true;
+    }
+
+    private static long[] readRegion(File regionFile) {
+        try {
+            return PoiRegionReader.readNetherPortals(regionFile);
+        } catch (Exception e) {
+            // The server may be writing the file right now, skip it
+            SMPPlugin.getInstance().getLogger().log(Level.WARNING, "Could not read POI file " + regionFile.getName(), e);
+            return new long[0];
+        }
+    }
+
+    private static File getPoiFolder(World world) {
+        File folder = world.getWorldFolder();
+        String dimension = switch (world.getEnvironment()) {
+            case NETHER -> "DIM-1";
+            case THE_END -> "DIM1";
+            default -> null;
+        };
+
+        if (dimension != null) {
+            File nested = new File(new File(folder, dimension), "poi");
+            if (nested.isDirectory()) {
+                return nested;
+            }
+        }
+        return new File(folder, "poi");
+    }
+
+    // -------------------------------------------------------------------------
+    // Saving
+    // -------------------------------------------------------------------------
+
+    /**
+     * Save the index of the world if it changed since the last save
+     */
+    public void saveIfChanged(World world) {
+        if (PortalCache.takeDirty(world.getUID())) {
+            save(world.getUID());
+        }
+    }
+
+    private void saveChanged() {
+        for (World world : Bukkit.getWorlds()) {
+            saveIfChanged(world);
+        }
+    }
+
+    private void save(UUID worldId) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+
+            for (Material type : TYPES) {
+                long[] portals = PortalCache.export(worldId, type);
+                out.writeInt(portals.length);
+                for (long packed : portals) {
+                    out.writeLong(packed);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // In-memory stream
+        }
+
+        SaveQueue.getInstance().write(getFile(worldId), bytes.toByteArray());
+    }
+
+    private static long[][] read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown portal index format");
+            }
+
+            long[][] portals = new long[TYPES.length][];
+            for (int i = 0; i < TYPES.length; i++) {
+                portals[i] = new long[in.readInt()];
+                for (int j = 0; j < portals[i].length; j++) {
+                    portals[i][j] = in.readLong();
+                }
+            }
+            return portals;
+        }
+    }
+
+    private static File getFile(UUID worldId) {
+        return new File(SMPPlugin.getInstance().getDataFolder(), "portals/" + worldId + ".dat");
+    }
+
+    // -------------------------------------------------------------------------
+    // Internal
+    // -------------------------------------------------------------------------
+
+    private static void runOnMainThread(Runnable task) {
+        if (SMPPlugin.getInstance().isEnabled()) {
+            SchedulerUtil.runTask(task);
+        }
+    }
+
+    private static void notify(@Nullable CommandSender sender, String message) {
+        if (sender != null) {
+            ColorUtil.sendMessage(sender, message);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package games.coob.smp.tracking;
+
+import games.coob.smp.util.PlayerPositions;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.Team;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Position channel of one tracked player.
+ * <p>
+ * However many players track the same target, the target is looked up, its
+ * position and world read and its waypoint encoded once per locator tick.
+ * Every tracker in the target's world is then sent the same packet; only the
+ * {@link WaypointUpdateFilter} decision stays per tracker. Trackers in another
+ * dimension read the target's environment from here and point at the portal
+ * nearest to themselves.
+ * <p>
+ * Scoreboard teams are read the same way, once per tick, for the trackers
+ * following a whole team through {@link TrackedTarget#team(String)}.
+ * <p>
+ * Main thread only.
+ */
+public final class TargetChannel {
+
+    private static final Map<UUID, TargetChannel> CHANNELS = new HashMap<>();
+    private static final Map<String, TeamMembers> TEAMS = new HashMap<>();
+
+    // Metrics
+    private static long refreshes;
+    private static long reads;
+
+    private final UUID targetUUID;
+    private final UUID waypointId;
+
+    private long tick = -1;
+    private Player player;
+    private Location location;
+    private WaypointPacketSender.PreparedWaypoint waypoint;
+
+    private TargetChannel(UUID targetUUID) {
+        this.targetUUID = targetUUID;
+        this.waypointId = WaypointPacketSender.generateWaypointId(targetUUID);
+    }
+
+    /**
+     * The channel of the target, read again if it was last read in an earlier tick
+     */
+    public static TargetChannel of(UUID targetUUID) {
+        TargetChannel channel = CHANNELS.computeIfAbsent(targetUUID, TargetChannel::new);
+        long tick = LodScheduler.getTick();
+
+        if (channel.tick != tick) {
+            channel.refresh(tick);
+        }
+
+        reads++;
+        return channel;
+    }
+
+    private void refresh(long tick) {
+        this.tick = tick;
+        this.waypoint = null;
+        refreshes++;
+
+        player = Bukkit.getPlayer(targetUUID);
+        if (player == null || !player.isOnline()) {
+            player = null;
+            location = null;
+            return;
+        }
+
+        // The tick's snapshot, unless the player changed worlds since it was taken
+        int index = PlayerPositions.indexOf(player);
+        World world = player.getWorld();
+
+        location = index >= 0 && PlayerPositions.getWorld(index) == world
+                ? new Location(world, PlayerPositions.getX(index), PlayerPositions.getY(index), PlayerPositions.getZ(index))
+                : player.getLocation();
+    }
+
+    public boolean isOnline() {
+        return player != null;
+    }
+
+    /**
+     * The target, null when offline
+     */
+    @Nullable
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Where the target is this tick, shared by every tracker so it must not be
+     * changed; null when offline
+     */
+    @Nullable
+    public Location getLocation() {
+        return location;
+    }
+
+    public World getWorld() {
+        return location.getWorld();
+    }
+
+    public UUID getWaypointId() {
+        return waypointId;
+    }
+
+    /**
+     * The waypoint at the target's position, encoded by the first tracker sent it this tick
+     */
+    public WaypointPacketSender.PreparedWaypoint getWaypoint() {
+        if (waypoint == null) {
+            waypoint = WaypointPacketSender.prepare(waypointId, location);
+        }
+        return waypoint;
+    }
+
+    // -------------------------------------------------------------------------
+    // Teams
+    // -------------------------------------------------------------------------
+
+    /**
+     * Online members of the team on the main scoreboard this tick, empty if
+     * there is no such team
+     */
+    public static List<Player> getTeamMembers(String teamName) {
+        long tick = LodScheduler.getTick();
+        TeamMembers members = TEAMS.get(teamName);
+
+        if (members == null || members.tick() != tick) {
+            members = new TeamMembers(tick, readTeam(teamName));
+            TEAMS.put(teamName, members);
+        }
+        return members.players();
+    }
+
+    public static boolean isTeamMember(String teamName, Player player) {
+        return getTeamMembers(teamName).contains(player);
+    }
+
+    /**
+     * The team of the player that can be tracked, null if they are on none
+     */
+    @Nullable
+    public static Team getTrackableTeam(Player player) {
+        Scoreboard scoreboard = getScoreboard();
+        Team team = scoreboard == null ? null : scoreboard.getEntryTeam(player.getName());
+
+        return team == null || WaypointColorManager.isColorTeam(team) ? null : team;
+    }
+
+    private static List<Player> readTeam(String teamName) {
+        Scoreboard scoreboard = getScoreboard();
+        Team team = scoreboard == null ? null : scoreboard.getTeam(teamName);
+        if (team == null || WaypointColorManager.isColorTeam(team)) {
+            return Collections.emptyList();
+        }
+
+        List<Player> players = new ArrayList<>();
+        for (String entry : team.getEntries()) {
+            Player member = Bukkit.getPlayerExact(entry);
+            if (member != null) {
+                players.add(member);
+            }
+        }
+        return players;
+    }
+
+    private static Scoreboard getScoreboard() {
+        return Bukkit.getScoreboardManager() == null ? null : Bukkit.getScoreboardManager().getMainScoreboard();
+    }
+
+    /**
+     * Drop the channel of a player (call on quit)
+     */
+    public static void remove(UUID targetUUID) {
+        CHANNELS.remove(targetUUID);
+    }
+
+    public static void clear() {
+        CHANNELS.clear();
+        TEAMS.clear();
+    }
+
+    // -------------------------------------------------------------------------
+    // Metrics
+    // -------------------------------------------------------------------------
+
+    /**
+     * Times a target was looked up and its position read
+     */
+    public static long getRefreshes() {
+        return refreshes;
+    }
+
+    /**
+     * Times a tracker read a channel, the same refresh serves all reads of a tick
+     */
+    public static long getReads() {
+        return reads;
+    }
+
+    private record TeamMembers(long tick, List<Player> players) {
+    }
+}
@@ -2,36 +2,94 @@ package games.coob.smp.tracking;
 
 import org.bukkit.Location;
 
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 /**
- * Represents a tracked target (player or death location).
+ * Represents a tracked target (player, scoreboard team or death location).
+ * A team is one target however many members it has, they are looked up
+ * through {@link TargetChannel#getTeamMembers(String)} when updated.
  */
 public class TrackedTarget {
 
-    private final UUID targetUUID; // null for death location
-    private final String type; // "Player" or "Death"
+    private final UUID targetUUID; // null for death location and teams
+    private final String type; // "Player", "Team" or "Death"
+    private final String teamName; // only for teams
     private MarkerColor color;
     private Location cachedPortalTarget;
 
-    private TrackedTarget(UUID targetUUID, String type, MarkerColor color) {
+    private TrackedTarget(UUID targetUUID, String type, MarkerColor color, String teamName) {
         this.targetUUID = targetUUID;
         this.type = type;
         this.color = color;
+        this.teamName = teamName;
     }
 
     /**
      * Create a player tracking target.
      */
     public static TrackedTarget player(UUID playerUUID, MarkerColor color) {
-        return new TrackedTarget(playerUUID, "Player", color);
+        return new TrackedTarget(playerUUID, "Player", color, null);
+    }
+
+    /**
+     * Create a target tracking every online member of a scoreboard team.
+     */
+    public static TrackedTarget team(String teamName) {
+        return new TrackedTarget(null, "Team", MarkerColor.WHITE, teamName);
     }
 
     /**
      * Create a death location tracking target.
      */
     public static TrackedTarget death() {
-        return new TrackedTarget(null, "Death", MarkerColor.DARK_RED);
+        return new TrackedTarget(null, "Death", MarkerColor.DARK_RED, null);
+    }
+
+    /**
+     * Convert to the map stored in the player's "Tracked_Targets" list.
+     */
+    public Map<String, Object> serialize() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("Type", type);
+        if (isPlayer()) {
+            map.put("UUID", targetUUID.toString());
+            map.put("Color", color.name());
+        } else if (isTeam()) {
+            map.put("Name", teamName);
+        }
+        return map;
+    }
+
+    /**
+     * Read a target written by {@link #serialize()}, null if it is invalid.
+     */
+    @Nullable
+    public static TrackedTarget deserialize(Map<?, ?> map) {
+        Object type = map.get("Type");
+        if ("Death".equals(type)) {
+            return death();
+        }
+        if ("Team".equals(type)) {
+            return map.get("Name") instanceof String name ? team(name) : null;
+        }
+        if (!"Player".equals(type) || !(map.get("UUID") instanceof String uuid)) {
+            return null;
+        }
+        try {
+            MarkerColor color = MarkerColor.WHITE;
+            if (map.get("Color") instanceof String colorName) {
+                try {
+                    color = MarkerColor.valueOf(colorName);
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+            return player(UUID.fromString(uuid), color);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
     public UUID getTargetUUID() {
@@ -46,6 +104,14 @@ public class TrackedTarget {
         return "Player".equals(type);
     }
 
+    public boolean isTeam() {
+        return "Team".equals(type);
+    }
+
+    public String getTeamName() {
+        return teamName;
+    }
+
     public boolean isDeath() {
         return "Death".equals(type);
     }
@@ -74,6 +140,7 @@ public class TrackedTarget {
         if (this == obj) return true;
         if (!(obj instanceof TrackedTarget other)) return false;
         if (isDeath() && other.isDeath()) return true;
+        if (isTeam() || other.isTeam()) return isTeam() && other.isTeam() && teamName.equals(other.teamName);
         if (targetUUID == null || other.targetUUID == null) return false;
         return targetUUID.equals(other.targetUUID);
     }
@@ -81,6 +148,7 @@ public class TrackedTarget {
     @Override
     public int hashCode() {
         if (isDeath()) return "Death".hashCode();
+        if (isTeam()) return teamName.hashCode();
         return targetUUID != null ? targetUUID.hashCode() : 0;
     }
 }
@@ -3,7 +3,10 @@ package games.coob.smp.tracking;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -11,11 +14,19 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Registry of players who are actively tracking something.
  * Only these players need per-tick locator bar updates.
+ * Also indexes who is tracking whom, so "who is tracking X?" is answered
+ * without going through every tracker's targets.
  */
 public final class TrackingRegistry {
 
     private static final Set<UUID> ACTIVE_TRACKERS = ConcurrentHashMap.newKeySet();
 
+    // Active trackers bucketed by refresh slot, see getTrackersInSlot
+    private static final List<Set<UUID>> TRACKERS_BY_SLOT = new ArrayList<>();
+
+    // Reverse index: tracked player -> online players tracking them, kept up to date by PlayerCache
+    private static final Map<UUID, Set<UUID>> TRACKERS_BY_TARGET = new ConcurrentHashMap<>();
+
     private TrackingRegistry() {
     }
 
@@ -23,8 +34,8 @@ public final class TrackingRegistry {
      * Register a player as actively tracking something.
      */
     public static void startTracking(UUID playerUUID) {
-        if (playerUUID != null) {
-            ACTIVE_TRACKERS.add(playerUUID);
+        if (playerUUID != null && ACTIVE_TRACKERS.add(playerUUID) && !TRACKERS_BY_SLOT.isEmpty()) {
+            TRACKERS_BY_SLOT.get(slotOf(playerUUID, TRACKERS_BY_SLOT.size())).add(playerUUID);
         }
     }
 
@@ -32,8 +43,8 @@ public final class TrackingRegistry {
      * Unregister a player from active tracking.
      */
     public static void stopTracking(UUID playerUUID) {
-        if (playerUUID != null) {
-            ACTIVE_TRACKERS.remove(playerUUID);
+        if (playerUUID != null && ACTIVE_TRACKERS.remove(playerUUID) && !TRACKERS_BY_SLOT.isEmpty()) {
+            TRACKERS_BY_SLOT.get(slotOf(playerUUID, TRACKERS_BY_SLOT.size())).remove(playerUUID);
         }
     }
 
@@ -51,6 +62,30 @@ public final class TrackingRegistry {
         return Collections.unmodifiableSet(ACTIVE_TRACKERS);
     }
 
+    /**
+     * Active trackers whose refresh falls in the slot, out of the given number
+     * of slots (unmodifiable view). Trackers are put in their slot when they
+     * start tracking, so a slot is read without going through every tracker.
+     */
+    public static Set<UUID> getTrackersInSlot(int slot, int slots) {
+        if (TRACKERS_BY_SLOT.size() != slots) {
+            // First call, or the update period changed on reload
+            TRACKERS_BY_SLOT.clear();
+            for (int i = 0; i < slots; i++) {
+                TRACKERS_BY_SLOT.add(ConcurrentHashMap.newKeySet());
+            }
+            for (UUID trackerUUID : ACTIVE_TRACKERS) {
+                TRACKERS_BY_SLOT.get(slotOf(trackerUUID, slots)).add(trackerUUID);
+            }
+        }
+
+        return Collections.unmodifiableSet(TRACKERS_BY_SLOT.get(slot));
+    }
+
+    private static int slotOf(UUID playerUUID, int slots) {
+        return Math.floorMod(playerUUID.hashCode(), slots);
+    }
+
     /**
      * Get online players who are actively tracking.
      * Returns only players who are both in the registry AND online.
@@ -62,10 +97,73 @@ public final class TrackingRegistry {
                 .iterator();
     }
 
+    // -------------------------------------------------------------------------
+    // Reverse index
+    // -------------------------------------------------------------------------
+
+    /**
+     * Record that the tracker follows the target player.
+     */
+    public static void addTracker(UUID targetUUID, UUID trackerUUID) {
+        TRACKERS_BY_TARGET.computeIfAbsent(targetUUID, k -> ConcurrentHashMap.newKeySet()).add(trackerUUID);
+    }
+
+    /**
+     * Record that the tracker no longer follows the target player.
+     */
+    public static void removeTracker(UUID targetUUID, UUID trackerUUID) {
+        TRACKERS_BY_TARGET.computeIfPresent(targetUUID, (k, trackers) -> {
+            trackers.remove(trackerUUID);
+            return trackers.isEmpty() ? null : trackers;
+        });
+    }
+
+    /**
+     * Get the online players tracking the target, without scanning every tracker.
+     * Returns a copy, so trackers can be removed while iterating.
+     */
+    public static List<Player> getTrackersOf(UUID targetUUID) {
+        Set<UUID> trackers = TRACKERS_BY_TARGET.get(targetUUID);
+        if (trackers == null) {
+            return Collections.emptyList();
+        }
+
+        List<Player> players = new ArrayList<>(trackers.size());
+        for (UUID trackerUUID : trackers) {
+            Player tracker = Bukkit.getPlayer(trackerUUID);
+            if (tracker != null && tracker.isOnline()) {
+                players.add(tracker);
+            }
+        }
+        return players;
+    }
+
+    /**
+     * Number of online players tracking the target.
+     */
+    public static int getTrackerCount(UUID targetUUID) {
+        Set<UUID> trackers = TRACKERS_BY_TARGET.get(targetUUID);
+        if (trackers == null) {
+            return 0;
+        }
+
+        // Same filter as getTrackersOf, without building the list
+        int count = 0;
+        for (UUID trackerUUID : trackers) {
+            Player tracker = Bukkit.getPlayer(trackerUUID);
+            if (tracker != null && tracker.isOnline()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Clear all tracking data (e.g., on plugin disable).
      */
     public static void clear() {
         ACTIVE_TRACKERS.clear();
+        TRACKERS_BY_SLOT.clear();
+        TRACKERS_BY_TARGET.clear();
     }
 }
@@ -162,8 +162,10 @@ public final class TrackingRequestManager {
     public void revokeTracker(Player target, Player tracker) {
         PlayerCache cache = PlayerCache.from(tracker);
         cache.removeTrackedPlayer(target.getUniqueId());
+        // A team tracker follows every member, so it stops tracking the team
+        cache.removeTrackedTeamsIf(team -> TargetChannel.isTeamMember(team, target));
         WaypointPacketSender.removeWaypoint(tracker,
-                WaypointPacketSender.generateWaypointId(tracker.getUniqueId(), target.getUniqueId()));
+                WaypointPacketSender.generateWaypointId(target.getUniqueId()));
 
         if (!cache.isTracking()) {
             TrackingRegistry.stopTracking(tracker.getUniqueId());
@@ -181,30 +183,25 @@ public final class TrackingRequestManager {
      * Cancel all tracking of a specific target player (by others tracking them).
      */
     public void cancelTracking(Player target) {
-        for (UUID trackerUUID : TrackingRegistry.getActiveTrackers()) {
-            Player tracker = Bukkit.getPlayer(trackerUUID);
-            if (tracker == null || !tracker.isOnline())
-                continue;
-
+        for (Player tracker : TrackingRegistry.getTrackersOf(target.getUniqueId())) {
+            UUID trackerUUID = tracker.getUniqueId();
             PlayerCache cache = PlayerCache.from(tracker);
-            TrackedTarget trackedTarget = cache.getTrackedTarget(target.getUniqueId());
-
-            if (trackedTarget != null) {
-                cache.removeTrackedPlayer(target.getUniqueId());
-                WaypointPacketSender.removeWaypoint(tracker,
-                        WaypointPacketSender.generateWaypointId(trackerUUID, target.getUniqueId()));
-
-                // If not tracking anything anymore, stop completely
-                if (!cache.isTracking()) {
-                    TrackingRegistry.stopTracking(trackerUUID);
-                    LocatorBarManager.disableReceive(tracker);
-                    LocatorBarManager.clearTarget(tracker);
-                    LocatorTask.cleanupPlayer(trackerUUID);
-                    WaypointPacketSender.clearWaypoint(tracker);
-                }
 
-                ColorUtil.sendMessage(tracker, "&c" + target.getName() + " &chas cancelled tracking.");
+            cache.removeTrackedPlayer(target.getUniqueId());
+            cache.removeTrackedTeamsIf(team -> TargetChannel.isTeamMember(team, target));
+            WaypointPacketSender.removeWaypoint(tracker,
+                    WaypointPacketSender.generateWaypointId(target.getUniqueId()));
+
+            // If not tracking anything anymore, stop completely
+            if (!cache.isTracking()) {
+                TrackingRegistry.stopTracking(trackerUUID);
+                LocatorBarManager.disableReceive(tracker);
+                LocatorBarManager.clearTarget(tracker);
+                LocatorTask.cleanupPlayer(trackerUUID);
+                WaypointPacketSender.clearWaypoint(tracker);
             }
+
+            ColorUtil.sendMessage(tracker, "&c" + target.getName() + " &chas cancelled tracking.");
         }
         ColorUtil.sendMessage(target, "&aYou have cancelled all tracking requests.");
     }
@@ -1,6 +1,5 @@
 package games.coob.smp.tracking;
 
-import games.coob.smp.PlayerCache;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
@@ -125,11 +124,14 @@ public final class WaypointColorManager {
         playerColor.clear();
     }
 
+    /**
+     * Whether the team is one of the teams this plugin colors waypoints with.
+     */
+    public static boolean isColorTeam(Team team) {
+        return team.getName().startsWith(TEAM_PREFIX);
+    }
+
     public static boolean isAnyoneTracking(UUID targetUUID) {
-        return Bukkit.getOnlinePlayers().stream()
-                .anyMatch(tracker -> {
-                    PlayerCache cache = PlayerCache.from(tracker);
-                    return cache.getTrackedTarget(targetUUID) != null;
-                });
+        return TrackingRegistry.getTrackerCount(targetUUID) > 0;
     }
 }
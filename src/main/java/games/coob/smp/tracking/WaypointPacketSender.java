@@ -5,17 +5,26 @@ import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 /**
  * Sends synthetic waypoint packets to players for per-player tracking.
- * Uses reflection to access NMS ClientboundTrackedWaypointPacket.
+ * Uses reflection to find NMS ClientboundTrackedWaypointPacket once, then calls
+ * it through method handles so the per-waypoint path does not box arguments or
+ * allocate varargs arrays. The connection of each player is looked up once.
  */
 public final class WaypointPacketSender {
 
@@ -27,6 +36,19 @@ public final class WaypointPacketSender {
     // Track active synthetic waypoints per player (tracker UUID -> waypoint IDs)
     private static final Map<UUID, Set<UUID>> ACTIVE_WAYPOINTS = new ConcurrentHashMap<>();
 
+    // Player connection per online player, dropped on quit
+    private static final Map<UUID, Object> CONNECTIONS = new ConcurrentHashMap<>();
+
+    // Packets held back per player while a batch is open, see beginBatch
+    private static final Map<UUID, List<Object>> BATCHES = new ConcurrentHashMap<>();
+
+    // Metrics
+    private static final AtomicLong sentPackets = new AtomicLong();
+    private static final AtomicLong connectionWrites = new AtomicLong();
+    private static final AtomicLong encodedPackets = new AtomicLong();
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
     // Reflection cache
     private static Class<?> packetClass;
     private static Class<?> waypointIconClass;
@@ -35,7 +57,23 @@ public final class WaypointPacketSender {
     private static Method addWaypointMethod;
     private static Method updateWaypointMethod;
     private static Method removeWaypointMethod;
-    private static Method sendPacketMethod;
+
+    // Resolved once from the reflection cache, (UUID, Object, Object)Object and (UUID)Object
+    private static MethodHandle addWaypointHandle;
+    private static MethodHandle updateWaypointHandle;
+    private static MethodHandle removeWaypointHandle;
+    private static MethodHandle vec3iHandle;
+
+    // ClientboundBundlePacket(Iterable), null if the server has no bundles
+    private static MethodHandle bundleHandle;
+
+    // Player connection access, resolved from the first player a packet is sent to
+    private static MethodHandle sendPacketHandle;
+    private static MethodHandle getHandleHandle;
+    private static MethodHandle connectionHandle;
+    private static MethodHandle sendHandle;
+    private static boolean connectionResolved = false;
+
     private static boolean initialized = false;
     private static boolean available = false;
 
@@ -116,6 +154,8 @@ public final class WaypointPacketSender {
 
             // Find Vec3i class
             vec3iClass = Class.forName("net.minecraft.core.Vec3i");
+            vec3iHandle = LOOKUP.unreflectConstructor(vec3iClass.getConstructor(int.class, int.class, int.class))
+                    .asType(MethodType.methodType(Object.class, int.class, int.class, int.class));
             debug("Found Vec3i class");
 
             // Find methods on packet class
@@ -145,10 +185,31 @@ public final class WaypointPacketSender {
                 return;
             }
 
+            MethodType positionType = MethodType.methodType(Object.class, UUID.class, Object.class, Object.class);
+            addWaypointHandle = LOOKUP.unreflect(addWaypointMethod).asType(positionType);
+            if (updateWaypointMethod != null) {
+                updateWaypointHandle = LOOKUP.unreflect(updateWaypointMethod).asType(positionType);
+            }
+            if (removeWaypointMethod != null) {
+                removeWaypointHandle = LOOKUP.unreflect(removeWaypointMethod)
+                        .asType(MethodType.methodType(Object.class, UUID.class));
+            }
+
+            // Bundles let several packets go out as one connection write
+            try {
+                Class<?> bundleClass = Class.forName("net.minecraft.network.protocol.game.ClientboundBundlePacket");
+                bundleHandle = LOOKUP.unreflectConstructor(bundleClass.getConstructor(Iterable.class))
+                        .asType(MethodType.methodType(Object.class, Iterable.class));
+                debug("Found bundle packet class");
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                debug("Bundle packet not found, batched packets are written one by one");
+            }
+
             // Find sendPacket method on player connection
             // Paper provides Player#sendPacket or we need to use CraftPlayer
             try {
-                sendPacketMethod = Player.class.getMethod("sendPacket", Object.class);
+                sendPacketHandle = LOOKUP.unreflect(Player.class.getMethod("sendPacket", Object.class))
+                        .asType(MethodType.methodType(void.class, Player.class, Object.class));
                 debug("Found Player.sendPacket method");
             } catch (NoSuchMethodException e) {
                 debug("Player.sendPacket not found, will try CraftPlayer connection");
@@ -173,14 +234,25 @@ public final class WaypointPacketSender {
     }
 
     /**
-     * Generate a deterministic waypoint id for a tracker-target pair.
+     * Generate a deterministic waypoint id for a target. Ids only have to be
+     * unique among the waypoints of one tracker, so they do not depend on the
+     * tracker and every tracker of a target can be sent the same packet.
      */
-    public static UUID generateWaypointId(UUID trackerUUID, UUID targetUUID) {
+    public static UUID generateWaypointId(UUID targetUUID) {
         return new UUID(
-                WAYPOINT_NAMESPACE.getMostSignificantBits() ^ trackerUUID.getMostSignificantBits(),
+                WAYPOINT_NAMESPACE.getMostSignificantBits() ^ targetUUID.getMostSignificantBits(),
                 WAYPOINT_NAMESPACE.getLeastSignificantBits() ^ targetUUID.getLeastSignificantBits());
     }
 
+    /**
+     * Encode a waypoint position once so it can be sent to several players,
+     * see {@link #sendWaypoint(Player, PreparedWaypoint)}. The location must
+     * not be changed afterwards.
+     */
+    public static PreparedWaypoint prepare(UUID waypointId, Location location) {
+        return new PreparedWaypoint(waypointId, location);
+    }
+
     /**
      * Send a waypoint at the specified location to the player.
      * Creates or updates the waypoint.
@@ -188,18 +260,23 @@ public final class WaypointPacketSender {
      * @return true if the waypoint was successfully sent, false otherwise
      */
     public static boolean sendWaypoint(Player player, Location location, UUID waypointId) {
+        return sendWaypoint(player, prepare(waypointId, location));
+    }
+
+    /**
+     * Send a prepared waypoint to the player, reusing the packets already
+     * created for other players.
+     *
+     * @return true if the waypoint was successfully sent, false otherwise
+     */
+    public static boolean sendWaypoint(Player player, PreparedWaypoint waypoint) {
         if (!isAvailable()) {
             debug("Waypoint packets not available, skipping sendWaypoint");
             return false;
         }
 
         try {
-            Object vec3i = createVec3i(location);
-            if (vec3i == null) {
-                debug("Failed to create Vec3i for location: " + location);
-                return false;
-            }
-
+            UUID waypointId = waypoint.getWaypointId();
             Set<UUID> active = ACTIVE_WAYPOINTS.computeIfAbsent(player.getUniqueId(),
                     k -> ConcurrentHashMap.newKeySet());
             boolean existing = active.contains(waypointId);
@@ -207,39 +284,59 @@ public final class WaypointPacketSender {
             Object packet;
             if (existing) {
                 // Update existing waypoint
-                if (updateWaypointMethod != null) {
-                    packet = updateWaypointMethod.invoke(null, waypointId, defaultIcon, vec3i);
-                    debug("Updating waypoint for " + player.getName() + " at " + formatLocation(location));
+                if (updateWaypointHandle != null) {
+                    packet = waypoint.getUpdatePacket();
+                    debug("Updating waypoint for " + player.getName() + " at " + formatLocation(waypoint.getLocation()));
                 } else {
                     // Fallback: remove and re-add this waypoint
-                    if (removeWaypointMethod != null) {
-                        Object removePacket = removeWaypointMethod.invoke(null, waypointId);
-                        sendPacket(player, removePacket);
+                    if (removeWaypointHandle != null) {
+                        sendPacket(player, (Object) removeWaypointHandle.invokeExact(waypointId));
                     }
-                    packet = addWaypointMethod.invoke(null, waypointId, defaultIcon, vec3i);
-                    debug("Re-adding waypoint for " + player.getName() + " at " + formatLocation(location));
+                    packet = waypoint.getAddPacket();
+                    debug("Re-adding waypoint for " + player.getName() + " at " + formatLocation(waypoint.getLocation()));
                 }
             } else {
                 // Add new waypoint
-                packet = addWaypointMethod.invoke(null, waypointId, defaultIcon, vec3i);
-                debug("Adding new waypoint for " + player.getName() + " at " + formatLocation(location));
+                packet = waypoint.getAddPacket();
+                debug("Adding new waypoint for " + player.getName() + " at " + formatLocation(waypoint.getLocation()));
             }
 
             sendPacket(player, packet);
             active.add(waypointId);
             return true;
 
-        } catch (Exception e) {
-            debug("Error sending waypoint: " + e.getMessage());
-            e.printStackTrace();
+        } catch (Throwable t) {
+            debug("Error sending waypoint: " + t.getMessage());
+            t.printStackTrace();
             return false;
         }
     }
 
+    /**
+     * Create the packet moving an existing waypoint, null if this server has no
+     * update packet.
+     */
+    public static Object createUpdatePacket(UUID waypointId, Location location) throws Throwable {
+        if (updateWaypointHandle == null) {
+            return null;
+        }
+        return (Object) updateWaypointHandle.invokeExact(waypointId, defaultIcon, createVec3i(location));
+    }
+
+    /**
+     * Check if the waypoint was sent to the player and not removed since.
+     */
+    public static boolean isActive(Player player, UUID waypointId) {
+        Set<UUID> active = ACTIVE_WAYPOINTS.get(player.getUniqueId());
+        return active != null && active.contains(waypointId);
+    }
+
     /**
      * Remove the waypoint from the player.
      */
     public static void removeWaypoint(Player player, UUID waypointId) {
+        WaypointUpdateFilter.forget(player.getUniqueId(), waypointId);
+
         Set<UUID> active = ACTIVE_WAYPOINTS.get(player.getUniqueId());
         if (active != null) {
             active.remove(waypointId);
@@ -248,17 +345,17 @@ public final class WaypointPacketSender {
             }
         }
 
-        if (!isAvailable() || removeWaypointMethod == null) {
+        if (!isAvailable() || removeWaypointHandle == null) {
             debug("Cannot remove waypoint - not available");
             return;
         }
 
         try {
-            Object packet = removeWaypointMethod.invoke(null, waypointId);
+            Object packet = (Object) removeWaypointHandle.invokeExact(waypointId);
             sendPacket(player, packet);
             debug("Removed waypoint for " + player.getName());
-        } catch (Exception e) {
-            debug("Error removing waypoint: " + e.getMessage());
+        } catch (Throwable t) {
+            debug("Error removing waypoint: " + t.getMessage());
         }
     }
 
@@ -266,19 +363,21 @@ public final class WaypointPacketSender {
      * Remove all active waypoints for the player.
      */
     public static void clearWaypoint(Player player) {
+        WaypointUpdateFilter.forgetTracker(player.getUniqueId());
+
         Set<UUID> active = ACTIVE_WAYPOINTS.remove(player.getUniqueId());
         if (active == null || active.isEmpty()) {
             return;
         }
-        if (!isAvailable() || removeWaypointMethod == null) {
+        if (!isAvailable() || removeWaypointHandle == null) {
             return;
         }
         for (UUID waypointId : new HashSet<>(active)) {
             try {
-                Object packet = removeWaypointMethod.invoke(null, waypointId);
+                Object packet = (Object) removeWaypointHandle.invokeExact(waypointId);
                 sendPacket(player, packet);
-            } catch (Exception e) {
-                debug("Error removing waypoint: " + e.getMessage());
+            } catch (Throwable t) {
+                debug("Error removing waypoint: " + t.getMessage());
             }
         }
     }
@@ -291,60 +390,257 @@ public final class WaypointPacketSender {
         return active != null && !active.isEmpty();
     }
 
+    /**
+     * Forget the waypoints and connection of a player (call on quit).
+     */
+    public static void cleanupPlayer(UUID playerUUID) {
+        ACTIVE_WAYPOINTS.remove(playerUUID);
+        BATCHES.remove(playerUUID);
+        CONNECTIONS.remove(playerUUID);
+        WaypointUpdateFilter.forgetTracker(playerUUID);
+    }
+
     /**
      * Clear all tracked waypoints (for plugin disable).
      */
     public static void clearAll() {
         ACTIVE_WAYPOINTS.clear();
+        BATCHES.clear();
+        CONNECTIONS.clear();
+        WaypointUpdateFilter.clear();
     }
 
-    private static Object createVec3i(Location location) {
+    private static Object createVec3i(Location location) throws Throwable {
+        return (Object) vec3iHandle.invokeExact(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    /**
+     * Hold back the waypoint packets for the player until {@link #flushBatch(Player)},
+     * so a whole locator update reaches them as one bundle.
+     */
+    public static void beginBatch(Player player) {
+        BATCHES.putIfAbsent(player.getUniqueId(), new ArrayList<>());
+    }
+
+    /**
+     * Send the packets held back since {@link #beginBatch(Player)} in one write.
+     */
+    public static void flushBatch(Player player) {
+        List<Object> packets = BATCHES.remove(player.getUniqueId());
+        if (packets == null || packets.isEmpty()) {
+            return;
+        }
+
+        if (packets.size() == 1 || bundleHandle == null) {
+            for (Object packet : packets) {
+                writePacket(player, packet);
+            }
+            return;
+        }
+
         try {
-            return vec3iClass.getConstructor(int.class, int.class, int.class)
-                    .newInstance(location.getBlockX(), location.getBlockY(), location.getBlockZ());
-        } catch (Exception e) {
-            debug("Error creating Vec3i: " + e.getMessage());
-            return null;
+            writePacket(player, (Object) bundleHandle.invokeExact((Iterable<?>) packets));
+        } catch (Throwable t) {
+            debug("Error bundling packets: " + t.getMessage());
+            for (Object packet : packets) {
+                writePacket(player, packet);
+            }
         }
     }
 
     private static void sendPacket(Player player, Object packet) {
+        sentPackets.incrementAndGet();
+
+        List<Object> batch = BATCHES.get(player.getUniqueId());
+        if (batch != null) {
+            batch.add(packet);
+        } else {
+            writePacket(player, packet);
+        }
+    }
+
+    private static void writePacket(Player player, Object packet) {
+        connectionWrites.incrementAndGet();
+
         try {
-            if (sendPacketMethod != null) {
-                sendPacketMethod.invoke(player, packet);
-            } else {
-                // Try using CraftPlayer
-                Object craftPlayer = player.getClass().getMethod("getHandle").invoke(player);
-                Object connection = craftPlayer.getClass().getField("connection").get(craftPlayer);
-
-                // Try different send method names
-                Method sendMethod = null;
-                for (String methodName : new String[] { "send", "sendPacket", "a" }) {
-                    try {
-                        for (Method m : connection.getClass().getMethods()) {
-                            if (m.getName().equals(methodName) && m.getParameterCount() == 1) {
-                                sendMethod = m;
-                                break;
-                            }
-                        }
-                        if (sendMethod != null)
-                            break;
-                    } catch (Exception ignored) {
+            if (sendPacketHandle != null) {
+                sendPacketHandle.invokeExact(player, packet);
+                return;
+            }
+
+            Object connection = getConnection(player);
+            if (connection != null) {
+                sendHandle.invokeExact(connection, packet);
+            }
+        } catch (Throwable t) {
+            debug("Error sending packet: " + t.getMessage());
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * Write any NMS packet to the player right away through their cached
+     * connection, for the other packet based features. Not batched and not
+     * counted in the waypoint metrics.
+     *
+     * @return false if the packet could not be sent
+     */
+    public static boolean sendRawPacket(Player player, Object packet) {
+        try {
+            Object connection = getConnection(player);
+            if (connection == null) {
+                return false;
+            }
+
+            sendHandle.invokeExact(connection, packet);
+            return true;
+        } catch (Throwable t) {
+            debug("Error sending packet: " + t.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Get the NMS connection of the player, cached until they quit.
+     */
+    public static Object getConnection(Player player) throws Throwable {
+        Object connection = CONNECTIONS.get(player.getUniqueId());
+        if (connection != null) {
+            return connection;
+        }
+
+        if (!connectionResolved) {
+            connectionResolved = true;
+            resolveConnectionHandles(player);
+        }
+        if (sendHandle == null) {
+            return null;
+        }
+
+        Object handle = (Object) getHandleHandle.invokeExact(player);
+        connection = (Object) connectionHandle.invokeExact(handle);
+        CONNECTIONS.put(player.getUniqueId(), connection);
+        return connection;
+    }
+
+    /**
+     * Find CraftPlayer#getHandle, ServerPlayer#connection and the send method
+     * of the connection, then turn them into method handles.
+     */
+    private static void resolveConnectionHandles(Player player) {
+        try {
+            Method getHandleMethod = player.getClass().getMethod("getHandle");
+            Object handle = getHandleMethod.invoke(player);
+            Field connectionField = handle.getClass().getField("connection");
+            Object connection = connectionField.get(handle);
+            // Any packet, not only waypoints, goes through the method found here
+            Class<?> anyPacketClass = Class.forName("net.minecraft.network.protocol.Packet");
+
+            // Try different send method names
+            Method sendMethod = null;
+            for (String methodName : new String[] { "send", "sendPacket", "a" }) {
+                for (Method m : connection.getClass().getMethods()) {
+                    if (m.getName().equals(methodName) && m.getParameterCount() == 1
+                            && m.getParameterTypes()[0].isAssignableFrom(anyPacketClass)) {
+                        sendMethod = m;
+                        break;
                     }
                 }
+                if (sendMethod != null)
+                    break;
+            }
 
-                if (sendMethod != null) {
-                    sendMethod.invoke(connection, packet);
-                } else {
-                    debug("Could not find send method on connection!");
-                }
+            if (sendMethod == null) {
+                debug("Could not find send method on connection!");
+                return;
             }
-        } catch (Exception e) {
-            debug("Error sending packet: " + e.getMessage());
+
+            getHandleHandle = LOOKUP.unreflect(getHandleMethod)
+                    .asType(MethodType.methodType(Object.class, Player.class));
+            connectionHandle = LOOKUP.unreflectGetter(connectionField)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            sendHandle = LOOKUP.unreflect(sendMethod)
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            debug("Resolved player connection through " + sendMethod.getName());
+
+        } catch (ReflectiveOperationException e) {
+            debug("Error resolving player connection: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Waypoint packets created, whether written alone or in a bundle.
+     */
+    public static long getSentPackets() {
+        return sentPackets.get();
+    }
+
+    /**
+     * Writes to player connections, a bundle counts as one.
+     */
+    public static long getConnectionWrites() {
+        return connectionWrites.get();
+    }
+
+    /**
+     * Add and update packets created for prepared waypoints, lower than the
+     * sent packets when one packet went to several trackers.
+     */
+    public static long getEncodedPackets() {
+        return encodedPackets.get();
+    }
+
+    /**
+     * A waypoint position whose add and update packets are created the first
+     * time a player needs them, then shared with every other player it is sent
+     * to. Packets are immutable, so one instance can go to many connections.
+     */
+    public static final class PreparedWaypoint {
+
+        private final UUID waypointId;
+        private final Location location;
+        private Object vec3i;
+        private Object addPacket;
+        private Object updatePacket;
+
+        private PreparedWaypoint(UUID waypointId, Location location) {
+            this.waypointId = waypointId;
+            this.location = location;
+        }
+
+        public UUID getWaypointId() {
+            return waypointId;
+        }
+
+        public Location getLocation() {
+            return location;
+        }
+
+        private Object getAddPacket() throws Throwable {
+            if (addPacket == null) {
+                addPacket = (Object) addWaypointHandle.invokeExact(waypointId, defaultIcon, getVec3i());
+                encodedPackets.incrementAndGet();
+            }
+            return addPacket;
+        }
+
+        private Object getUpdatePacket() throws Throwable {
+            if (updatePacket == null) {
+                updatePacket = (Object) updateWaypointHandle.invokeExact(waypointId, defaultIcon, getVec3i());
+                encodedPackets.incrementAndGet();
+            }
+            return updatePacket;
+        }
+
+        private Object getVec3i() throws Throwable {
+            if (vec3i == null) {
+                vec3i = createVec3i(location);
+            }
+            return vec3i;
+        }
+    }
+
     private static String formatLocation(Location loc) {
         if (loc == null)
             return "null";
@@ -0,0 +1,160 @@
+package games.coob.smp.tracking;
+
+import games.coob.smp.settings.Settings;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Decides whether a synthetic waypoint moved enough to be sent again.
+ * <p>
+ * For every (tracker, waypoint) pair it remembers the block position last sent
+ * and the target's velocity at that moment. A new position is sent when it is
+ * at least {@code Waypoint_Move_Threshold} blocks away from the one the client
+ * has, or when it drifts more than {@code Waypoint_Drift_Tolerance} blocks from
+ * where the target was heading (dead reckoning). The second rule catches stops
+ * and turns right away instead of leaving the waypoint up to a threshold behind.
+ */
+public final class WaypointUpdateFilter {
+
+    private static final Map<UUID, Map<UUID, WaypointState>> STATES = new HashMap<>();
+
+    private static long sentUpdates;
+    private static long suppressedUpdates;
+
+    private WaypointUpdateFilter() {
+    }
+
+    /**
+     * Record the current position of a waypoint target.
+     *
+     * @return true if the waypoint should be sent, it is then remembered as sent
+     */
+    public static boolean shouldSend(UUID trackerUUID, UUID waypointId, Location location, boolean active) {
+        long now = System.currentTimeMillis();
+        WaypointState state = STATES.computeIfAbsent(trackerUUID, k -> new HashMap<>())
+                .computeIfAbsent(waypointId, k -> new WaypointState());
+
+        state.sample(location, now);
+
+        boolean send = !active || state.world != location.getWorld() || state.exceedsThreshold(location)
+                || state.drifted(location, now);
+
+        if (send) {
+            state.markSent(location, now);
+            sentUpdates++;
+        } else {
+            suppressedUpdates++;
+        }
+
+        return send;
+    }
+
+    /**
+     * Forget a waypoint the tracker no longer has.
+     */
+    public static void forget(UUID trackerUUID, UUID waypointId) {
+        Map<UUID, WaypointState> states = STATES.get(trackerUUID);
+        if (states != null) {
+            states.remove(waypointId);
+            if (states.isEmpty()) {
+                STATES.remove(trackerUUID);
+            }
+        }
+    }
+
+    /**
+     * Forget every waypoint of the tracker.
+     */
+    public static void forgetTracker(UUID trackerUUID) {
+        STATES.remove(trackerUUID);
+    }
+
+    public static void clear() {
+        STATES.clear();
+    }
+
+    public static long getSentUpdates() {
+        return sentUpdates;
+    }
+
+    public static long getSuppressedUpdates() {
+        return suppressedUpdates;
+    }
+
+    private static final class WaypointState {
+
+        // Last sent, with the target's velocity at that moment in blocks per millisecond
+        private World world;
+        private int sentX;
+        private int sentY;
+        private int sentZ;
+        private long sentAt;
+        private double sentVelocityX;
+        private double sentVelocityY;
+        private double sentVelocityZ;
+
+        // Last observed, for the current velocity
+        private World lastWorld;
+        private double lastX;
+        private double lastY;
+        private double lastZ;
+        private long lastAt;
+        private double velocityX;
+        private double velocityY;
+        private double velocityZ;
+
+        private boolean exceedsThreshold(Location location) {
+            int threshold = Settings.LocatorSection.WAYPOINT_MOVE_THRESHOLD;
+
+            return distanceSquared(location.getBlockX() - sentX, location.getBlockY() - sentY, location.getBlockZ() - sentZ)
+                    >= threshold * threshold;
+        }
+
+        private boolean drifted(Location location, long now) {
+            long elapsed = now - sentAt;
+            double tolerance = Settings.LocatorSection.WAYPOINT_DRIFT_TOLERANCE;
+
+            return distanceSquared(
+                    location.getX() - (sentX + 0.5 + sentVelocityX * elapsed),
+                    location.getY() - (sentY + sentVelocityY * elapsed),
+                    location.getZ() - (sentZ + 0.5 + sentVelocityZ * elapsed)) > tolerance * tolerance;
+        }
+
+        private void sample(Location location, long now) {
+            long elapsed = now - lastAt;
+
+            if (lastWorld == location.getWorld() && elapsed > 0) {
+                velocityX = (location.getX() - lastX) / elapsed;
+                velocityY = (location.getY() - lastY) / elapsed;
+                velocityZ = (location.getZ() - lastZ) / elapsed;
+            } else {
+                velocityX = velocityY = velocityZ = 0;
+            }
+
+            lastWorld = location.getWorld();
+            lastX = location.getX();
+            lastY = location.getY();
+            lastZ = location.getZ();
+            lastAt = now;
+        }
+
+        private void markSent(Location location, long now) {
+            world = location.getWorld();
+            sentX = location.getBlockX();
+            sentY = location.getBlockY();
+            sentZ = location.getBlockZ();
+            sentAt = now;
+            sentVelocityX = velocityX;
+            sentVelocityY = velocityY;
+            sentVelocityZ = velocityZ;
+        }
+
+        private static double distanceSquared(double x, double y, double z) {
+            return x * x + y * y + z * z;
+        }
+    }
+}
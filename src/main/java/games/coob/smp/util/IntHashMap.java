@@ -0,0 +1,166 @@
+package games.coob.smp.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Hash map from int keys to non-null values, stored in two flat arrays with
+ * linear probing. Looking up, adding and removing a key neither box it nor
+ * allocate an entry, unlike a {@code HashMap<Integer, V>}.
+ * <p>
+ * Not thread-safe.
+ */
+public final class IntHashMap<V> {
+
+	private static final int MIN_CAPACITY = 4;
+
+	private int[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+
+	public IntHashMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize How many keys the map should hold before it grows
+	 */
+	public IntHashMap(final int expectedSize) {
+		allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1));
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(final int key) {
+		for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+			final Object value = values[slot];
+
+			if (value == null)
+				return null;
+
+			if (keys[slot] == key)
+				return (V) value;
+		}
+	}
+
+	public boolean containsKey(final int key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * @return The previous value of the key, or null if it had none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(final int key, final V value) {
+		Objects.requireNonNull(value, "IntHashMap does not hold null values");
+
+		if ((size + 1) * 2 > keys.length)
+			resize(keys.length * 2);
+
+		for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+			final Object previous = values[slot];
+
+			if (previous == null) {
+				keys[slot] = key;
+				values[slot] = value;
+				size++;
+				return null;
+			}
+
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return (V) previous;
+			}
+		}
+	}
+
+	/**
+	 * @return The value the key had, or null if it was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(final int key) {
+		int slot = slot(key);
+
+		while (values[slot] != null && keys[slot] != key)
+			slot = (slot + 1) & mask;
+
+		final Object removed = values[slot];
+		if (removed == null)
+			return null;
+
+		// Move later keys of the same probe run back into the gap, so lookups never stop early
+		int gap = slot;
+		values[gap] = null;
+
+		for (int next = (gap + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+			final int home = slot(keys[next]);
+
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				values[next] = null;
+				gap = next;
+			}
+		}
+
+		size--;
+		return (V) removed;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Copy the values into a new list, which may be iterated while the map changes
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		final List<V> result = new ArrayList<>(size);
+
+		for (final Object value : values)
+			if (value != null)
+				result.add((V) value);
+
+		return result;
+	}
+
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	private int slot(final int key) {
+		final int hash = key * 0x9E3779B9;
+
+		return (hash ^ hash >>> 16) & mask;
+	}
+
+	private void allocate(final int capacity) {
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	private void resize(final int capacity) {
+		final int[] oldKeys = keys;
+		final Object[] oldValues = values;
+
+		allocate(capacity);
+
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldValues[i] != null)
+				for (int slot = slot(oldKeys[i]); ; slot = (slot + 1) & mask)
+					if (values[slot] == null) {
+						keys[slot] = oldKeys[i];
+						values[slot] = oldValues[i];
+						break;
+					}
+	}
+}
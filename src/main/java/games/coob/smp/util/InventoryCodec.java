@@ -0,0 +1,175 @@
+package games.coob.smp.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact, versioned binary format for inventories.
+ * <p>
+ * Layout: magic, version, compression id, then the (optionally deflated) body:
+ * inventory size, number of non-empty slots, and for each of them the slot
+ * index followed by the item in Paper's {@link ItemStack#serializeAsBytes()}
+ * format. Empty slots are not written at all.
+ */
+public final class InventoryCodec {
+
+	/** "SMPI" */
+	private static final int MAGIC = 0x534D5049;
+
+	private static final int VERSION = 1;
+
+	/** Largest inventory Bukkit lets us create */
+	private static final int MAX_SIZE = 54;
+
+	private InventoryCodec() {
+	}
+
+	/**
+	 * Encode the given inventory
+	 *
+	 * @param inventory   The inventory to encode
+	 * @param compression How the body should be compressed
+	 * @return The encoded bytes
+	 */
+	public static byte[] encode(final Inventory inventory, final Compression compression) {
+		final ItemStack[] contents = inventory.getContents();
+		int count = 0;
+
+		for (final ItemStack item : contents)
+			if (!isEmpty(item))
+				count++;
+
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream header = new DataOutputStream(bytes);
+
+			header.writeInt(MAGIC);
+			header.writeByte(VERSION);
+			header.writeByte(compression.ordinal());
+
+			final OutputStream bodyStream = compression == Compression.DEFLATE ? new DeflaterOutputStream(bytes) : bytes;
+			final DataOutputStream body = new DataOutputStream(bodyStream);
+
+			writeVarInt(body, inventory.getSize());
+			writeVarInt(body, count);
+
+			for (int slot = 0; slot < contents.length; slot++) {
+				final ItemStack item = contents[slot];
+
+				if (isEmpty(item))
+					continue;
+
+				final byte[] itemBytes = item.serializeAsBytes();
+
+				writeVarInt(body, slot);
+				writeVarInt(body, itemBytes.length);
+				body.write(itemBytes);
+			}
+
+			body.close();
+			return bytes.toByteArray();
+
+		} catch (final IOException e) {
+			throw new IllegalStateException("Unable to encode inventory.", e);
+		}
+	}
+
+	/**
+	 * Decode an inventory previously written by {@link #encode(Inventory, Compression)}
+	 *
+	 * @param data The encoded bytes
+	 * @return A new inventory without holder
+	 * @throws IOException If the data is corrupted or of an unknown version
+	 */
+	public static Inventory decode(final byte[] data) throws IOException {
+		final ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+		final DataInputStream header = new DataInputStream(bytes);
+
+		if (header.readInt() != MAGIC)
+			throw new IOException("Not an encoded inventory.");
+
+		final int version = header.readUnsignedByte();
+
+		if (version > VERSION)
+			throw new IOException("Unsupported inventory format version " + version + ".");
+
+		final int compressionId = header.readUnsignedByte();
+
+		if (compressionId >= Compression.values().length)
+			throw new IOException("Unknown inventory compression " + compressionId + ".");
+
+		final InputStream bodyStream = Compression.values()[compressionId] == Compression.DEFLATE ? new InflaterInputStream(bytes) : bytes;
+
+		try (final DataInputStream body = new DataInputStream(bodyStream)) {
+			final int size = readVarInt(body);
+			final int count = readVarInt(body);
+
+			if (size <= 0 || size > MAX_SIZE || size % 9 != 0 || count > size)
+				throw new IOException("Invalid inventory size " + size + " with " + count + " items.");
+
+			final Inventory inventory = Bukkit.getServer().createInventory(null, size);
+
+			for (int i = 0; i < count; i++) {
+				final int slot = readVarInt(body);
+				final int length = readVarInt(body);
+
+				if (slot < 0 || slot >= size || length <= 0)
+					throw new IOException("Invalid item at slot " + slot + " (" + length + " bytes).");
+
+				final byte[] itemBytes = new byte[length];
+
+				body.readFully(itemBytes);
+				inventory.setItem(slot, ItemStack.deserializeBytes(itemBytes));
+			}
+
+			return inventory;
+		}
+	}
+
+	private static boolean isEmpty(final ItemStack item) {
+		return item == null || item.getType().isAir() || item.getAmount() <= 0;
+	}
+
+	private static void writeVarInt(final DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(final DataInputStream in) throws IOException {
+		int value = 0;
+
+		for (int shift = 0; shift < 35; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0)
+				return value;
+		}
+
+		throw new IOException("VarInt too big.");
+	}
+
+	/**
+	 * Compression applied to the body of an encoded inventory.
+	 * The ordinal is written to disk, only append new constants.
+	 */
+	public enum Compression {
+		NONE,
+		DEFLATE
+	}
+}
@@ -0,0 +1,267 @@
+package games.coob.smp.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Positions of all online players, captured once per tick into primitive
+ * arrays so the per-tick tasks and listeners read them without each asking
+ * every player for a new {@link Location}.
+ * <p>
+ * Players are also sorted by world and chunk into a spatial hash, so "who is
+ * within r blocks of this point" only looks at the players in the chunks the
+ * range covers. Positions are at most one tick old; players who joined since
+ * the last capture are not in it yet ({@link #indexOf(Player)} returns -1), so
+ * callers fall back to {@link Player#getLocation()} for them.
+ * <p>
+ * Main thread only.
+ */
+public final class PlayerPositions {
+
+	// Sort keys: 5 bits world, 22 bits chunk x, 22 bits chunk z, 14 bits player index
+	private static final int INDEX_BITS = 14;
+	private static final int MAX_PLAYERS = 1 << INDEX_BITS;
+	private static final int CHUNK_BITS = 22;
+	private static final int CHUNK_OFFSET = 1 << (CHUNK_BITS - 1);
+	private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+	private static final int MAX_WORLDS = 32;
+
+	private static final Location SCRATCH = new Location(null, 0, 0, 0);
+
+	private static final List<World> worlds = new ArrayList<>();
+	private static final Map<UUID, Integer> indexById = new HashMap<>();
+
+	private static Player[] players = new Player[64];
+	private static int[] worldIndexes = new int[64];
+	private static double[] xs = new double[64];
+	private static double[] ys = new double[64];
+	private static double[] zs = new double[64];
+	private static float[] yaws = new float[64];
+	private static long[] sortedKeys = new long[64];
+
+	private static int count;
+
+	private PlayerPositions() {
+	}
+
+	/**
+	 * Capture the positions every tick, before the tasks reading them are
+	 * scheduled (call on plugin enable)
+	 */
+	public static void start() {
+		SchedulerUtil.runTimer(1, PlayerPositions::capture);
+	}
+
+	/**
+	 * Take the snapshot of all online players
+	 */
+	public static void capture() {
+		final int online = Math.min(MAX_PLAYERS, Bukkit.getOnlinePlayers().size());
+
+		if (online > players.length)
+			grow(Math.max(online, players.length * 2));
+
+		Arrays.fill(players, 0, count, null);
+		indexById.clear();
+		worlds.clear();
+		count = 0;
+
+		for (final Player player : Bukkit.getOnlinePlayers()) {
+			if (count == online)
+				break;
+
+			final int worldIndex = worldIndexOf(player.getWorld());
+			if (worldIndex < 0)
+				continue;
+
+			player.getLocation(SCRATCH);
+
+			final int index = count++;
+			players[index] = player;
+			worldIndexes[index] = worldIndex;
+			xs[index] = SCRATCH.getX();
+			ys[index] = SCRATCH.getY();
+			zs[index] = SCRATCH.getZ();
+			yaws[index] = SCRATCH.getYaw();
+			indexById.put(player.getUniqueId(), index);
+
+			sortedKeys[index] = cellKey(worldIndex, SCRATCH.getBlockX() >> 4, SCRATCH.getBlockZ() >> 4) << INDEX_BITS | index;
+		}
+
+		SCRATCH.setWorld(null);
+		Arrays.sort(sortedKeys, 0, count);
+	}
+
+	// -------------------------------------------------------------------------
+	// Queries
+	// -------------------------------------------------------------------------
+
+	/**
+	 * Add the players within the radius of the point to the result list
+	 *
+	 * @return How many players were added
+	 */
+	public static int getPlayersWithin(final World world, final double x, final double y, final double z,
+			final double radius, final List<Player> result) {
+		final int worldIndex = worlds.indexOf(world);
+		if (worldIndex < 0)
+			return 0;
+
+		final double radiusSq = radius * radius;
+		final int minChunkZ = (int) Math.floor(z - radius) >> 4;
+		final int maxChunkZ = (int) Math.floor(z + radius) >> 4;
+		int added = 0;
+
+		for (int chunkX = (int) Math.floor(x - radius) >> 4; chunkX <= (int) Math.floor(x + radius) >> 4; chunkX++) {
+			// Chunks of one x column are next to each other in the sorted keys
+			final long endKey = cellKey(worldIndex, chunkX, maxChunkZ);
+
+			for (int i = lowerBound(cellKey(worldIndex, chunkX, minChunkZ) << INDEX_BITS); i < count; i++) {
+				if (sortedKeys[i] >>> INDEX_BITS > endKey)
+					break;
+
+				final int index = (int) (sortedKeys[i] & (MAX_PLAYERS - 1));
+				final double dx = xs[index] - x;
+				final double dy = ys[index] - y;
+				final double dz = zs[index] - z;
+
+				if (dx * dx + dy * dy + dz * dz <= radiusSq) {
+					result.add(players[index]);
+					added++;
+				}
+			}
+		}
+
+		return added;
+	}
+
+	/**
+	 * Index of the player in this tick's snapshot, or -1 if they were not captured
+	 */
+	public static int indexOf(final Player player) {
+		return indexOf(player.getUniqueId());
+	}
+
+	public static int indexOf(final UUID uniqueId) {
+		final Integer index = indexById.get(uniqueId);
+
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * X of the player this tick, read live for a player not captured yet
+	 */
+	public static double getX(final Player player) {
+		final int index = indexOf(player);
+
+		return index >= 0 ? xs[index] : player.getLocation().getX();
+	}
+
+	public static double getY(final Player player) {
+		final int index = indexOf(player);
+
+		return index >= 0 ? ys[index] : player.getLocation().getY();
+	}
+
+	public static double getZ(final Player player) {
+		final int index = indexOf(player);
+
+		return index >= 0 ? zs[index] : player.getLocation().getZ();
+	}
+
+	public static float getYaw(final Player player) {
+		final int index = indexOf(player);
+
+		return index >= 0 ? yaws[index] : player.getLocation().getYaw();
+	}
+
+	public static World getWorld(final int index) {
+		return worlds.get(worldIndexes[index]);
+	}
+
+	public static double getX(final int index) {
+		return xs[index];
+	}
+
+	public static double getY(final int index) {
+		return ys[index];
+	}
+
+	public static double getZ(final int index) {
+		return zs[index];
+	}
+
+	public static float getYaw(final int index) {
+		return yaws[index];
+	}
+
+	/**
+	 * Number of players in this tick's snapshot, indexes go from 0 to this value
+	 */
+	public static int size() {
+		return count;
+	}
+
+	public static Player getPlayer(final int index) {
+		return players[index];
+	}
+
+	// -------------------------------------------------------------------------
+	// Internal
+	// -------------------------------------------------------------------------
+
+	private static int worldIndexOf(final World world) {
+		int index = worlds.indexOf(world);
+
+		if (index < 0 && worlds.size() < MAX_WORLDS) {
+			worlds.add(world);
+			index = worlds.size() - 1;
+		}
+
+		return index;
+	}
+
+	private static long cellKey(final int worldIndex, final int chunkX, final int chunkZ) {
+		return (long) worldIndex << (2 * CHUNK_BITS)
+				| ((chunkX + CHUNK_OFFSET) & CHUNK_MASK) << CHUNK_BITS
+				| ((chunkZ + CHUNK_OFFSET) & CHUNK_MASK);
+	}
+
+	/**
+	 * First position in the sorted keys whose value is at least the given key
+	 */
+	private static int lowerBound(final long key) {
+		int low = 0;
+		int high = count;
+
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+
+			if (sortedKeys[middle] < key)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+
+		return low;
+	}
+
+	private static void grow(final int capacity) {
+		players = Arrays.copyOf(players, capacity);
+		worldIndexes = Arrays.copyOf(worldIndexes, capacity);
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+		zs = Arrays.copyOf(zs, capacity);
+		yaws = Arrays.copyOf(yaws, capacity);
+		sortedKeys = Arrays.copyOf(sortedKeys, capacity);
+	}
+}
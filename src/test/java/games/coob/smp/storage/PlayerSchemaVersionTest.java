@@ -0,0 +1,66 @@
+package games.coob.smp.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The player schema version survives closing and reopening each backend
+ */
+class PlayerSchemaVersionTest {
+
+	@TempDir
+	File dataFolder;
+
+	@Test
+	void yamlRoundTrip() throws IOException {
+		// Player files need no open(), which would load the duel and death chest files through the plugin
+		roundTrip(() -> new YamlStorageBackend(dataFolder));
+	}
+
+	@Test
+	void sqliteRoundTrip() throws IOException {
+		roundTrip(() -> {
+			final StorageBackend backend = new SqlStorageBackend(new File(dataFolder, "data.db"));
+
+			backend.open();
+			return backend;
+		});
+	}
+
+	private static void roundTrip(final BackendFactory factory) throws IOException {
+		StorageBackend backend = factory.create();
+
+		try {
+			assertEquals(0, backend.getPlayerSchemaVersion());
+
+			backend.setPlayerSchemaVersion(2);
+			assertEquals(2, backend.getPlayerSchemaVersion());
+
+			// Overwrites the existing row or file
+			backend.setPlayerSchemaVersion(3);
+			assertEquals(3, backend.getPlayerSchemaVersion());
+
+		} finally {
+			backend.close();
+		}
+
+		backend = factory.create();
+
+		try {
+			assertEquals(3, backend.getPlayerSchemaVersion());
+
+		} finally {
+			backend.close();
+		}
+	}
+
+	@FunctionalInterface
+	private interface BackendFactory {
+		StorageBackend create() throws IOException;
+	}
+}
@@ -0,0 +1,45 @@
+package games.coob.smp.tracking;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PortalRouterTest {
+
+    @Test
+    void candidatesFitWithManyPortals() {
+        PortalIndex index = new PortalIndex();
+
+        // Twelve portals in a row, far enough apart not to be merged
+        for (int i = 0; i < 12; i++) {
+            index.add(i * 100, 64, 0, 4);
+        }
+
+        long[] candidates = PortalRouter.findCandidates(index, 0, 64, 0, 1100, 64, 0);
+
+        assertEquals(8, candidates.length);
+        assertEquals(8, Arrays.stream(candidates).distinct().count());
+    }
+
+    @Test
+    void sharedCandidatesAreKeptOnce() {
+        PortalIndex index = new PortalIndex();
+
+        for (int i = 0; i < 12; i++) {
+            index.add(i * 100, 64, 0, 4);
+        }
+
+        // The tracker and the projected target are next to each other
+        long[] candidates = PortalRouter.findCandidates(index, 0, 64, 0, 10, 64, 0);
+
+        assertArrayEquals(new long[] {
+                PortalIndex.pack(0, 64, 0),
+                PortalIndex.pack(100, 64, 0),
+                PortalIndex.pack(200, 64, 0),
+                PortalIndex.pack(300, 64, 0)
+        }, candidates);
+    }
+}